@@ -0,0 +1,52 @@
+package nymble;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// JMH benchmarks for passenger membership in a travel package.
+// TravelPackage is not thread-safe, so these run on a single thread.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class MembershipBenchmarks {
+
+    @Param({"10", "1000", "100000"})
+    public int rosterSize;
+
+    private TravelPackage travelPackage;
+    private Passenger member;
+    private Passenger newcomer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        travelPackage = new TravelPackage("Trip to Bali", rosterSize + 1);
+        for (int i = 0; i < rosterSize; i++) {
+            travelPackage.addPassenger(new StandardPassenger("Passenger " + i, "P" + i, 500.0));
+        }
+        member = travelPackage.findPassenger("P" + (rosterSize / 2));
+        newcomer = new StandardPassenger("Newcomer", "N0", 500.0);
+    }
+
+    // Method to add a passenger and remove it again, so the roster size stays fixed.
+    @Benchmark
+    public boolean addPassenger() {
+        boolean added = travelPackage.addPassenger(newcomer);
+        travelPackage.removePassenger(newcomer);
+        return added;
+    }
+
+    @Benchmark
+    public boolean addDuplicatePassenger() {
+        return travelPackage.addPassenger(member);
+    }
+
+    @Benchmark
+    public boolean containsPassenger() {
+        return travelPackage.containsPassenger(member);
+    }
+}
@@ -0,0 +1,51 @@
+package nymble;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// JMH benchmark for printAvailableActivities; console output is discarded so only report rendering is measured.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class ReportBenchmarks {
+
+    @Param({"1", "10", "100"})
+    public int destinations;
+
+    @Param({"10"})
+    public int activitiesPerDestination;
+
+    private TravelPackage travelPackage;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        travelPackage = new TravelPackage("Trip to Bali", 10);
+        for (int d = 0; d < destinations; d++) {
+            Destination destination = new Destination("Destination " + d);
+            for (int a = 0; a < activitiesPerDestination; a++) {
+                destination.addActivity(new Activity("Activity " + a, "Description " + a, 100.0 + a, 20));
+            }
+            travelPackage.addDestination(destination);
+        }
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void printAvailableActivities() {
+        travelPackage.printAvailableActivities();
+    }
+}
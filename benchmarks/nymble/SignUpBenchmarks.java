@@ -0,0 +1,100 @@
+package nymble;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+// JMH benchmarks for Activity.signUp and the three tier signUpForActivity implementations.
+// Each operation signs a passenger up against an activity that already holds rosterSize passengers,
+// then undoes the sign-up so the roster size stays fixed for the whole run.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class SignUpBenchmarks {
+
+    @Param({"10", "1000", "100000"})
+    public int rosterSize;
+
+    // Runs with more than one thread always use the concurrent roster; the plain one is single-threaded only.
+    @Param({"false", "true"})
+    public boolean concurrent;
+
+    Activity activity;
+    private final AtomicInteger nextPassenger = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) {
+        boolean threadSafe = concurrent || params.getThreads() > 1;
+        activity = new Activity("Diving", "Scuba diving", 100.0, rosterSize + params.getThreads() * 4, threadSafe);
+        for (int i = 0; i < rosterSize; i++) {
+            activity.signUp(new PremiumPassenger("Passenger " + i, "R" + i));
+        }
+    }
+
+    // One passenger of each tier per benchmark thread.
+    @State(Scope.Thread)
+    public static class Passengers {
+        StandardPassenger standard;
+        GoldPassenger gold;
+        PremiumPassenger premium;
+
+        @Setup(Level.Trial)
+        public void setUp(SignUpBenchmarks benchmark) {
+            int n = benchmark.nextPassenger.getAndIncrement();
+            standard = new StandardPassenger("Standard " + n, "S" + n, 1_000_000_000.0);
+            gold = new GoldPassenger("Gold " + n, "G" + n, 1_000_000_000.0);
+            premium = new PremiumPassenger("Premium " + n, "P" + n);
+        }
+    }
+
+    @Benchmark
+    public boolean activitySignUp(Passengers passengers) {
+        boolean signedUp = activity.signUp(passengers.premium);
+        undo(passengers.premium);
+        return signedUp;
+    }
+
+    @Benchmark
+    public boolean standardSignUp(Passengers passengers) {
+        boolean signedUp = passengers.standard.signUpForActivity(activity);
+        undo(passengers.standard);
+        return signedUp;
+    }
+
+    @Benchmark
+    public boolean goldSignUp(Passengers passengers) {
+        boolean signedUp = passengers.gold.signUpForActivity(activity);
+        undo(passengers.gold);
+        return signedUp;
+    }
+
+    @Benchmark
+    public boolean premiumSignUp(Passengers passengers) {
+        boolean signedUp = passengers.premium.signUpForActivity(activity);
+        undo(passengers.premium);
+        return signedUp;
+    }
+
+    // Method to take back a sign-up: drop the roster entry, give the seat back and refund what was charged.
+    private void undo(Passenger passenger) {
+        if (activity.removeFromRoster(passenger)) {
+            activity.releaseSeat();
+            passenger.refund(passenger.priceFor(activity));
+        }
+    }
+
+    // The same benchmarks with several threads contending for one activity.
+    @Threads(4)
+    public static class FourThreads extends SignUpBenchmarks {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends SignUpBenchmarks {
+    }
+}
@@ -0,0 +1,11150 @@
+// Press Shift twice to open the Search Everywhere dialog and type `show whitespaces`,
+// then press Enter. You can now see whitespace characters in your code.
+package nymble;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.lang.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.*;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+
+// PassengerRoster keeps a set of passengers (an activity's sign-ups or a package's travellers), keyed by passenger number.
+// Lookup, add, remove and duplicate detection are single hash operations and iteration follows insertion order.
+// A passenger number appears at most once, whatever the tier: Passenger.equals also compares the class, so a
+// Standard and a Gold passenger sharing a number are different passengers, but only the first can be on a roster.
+class PassengerRoster implements Iterable<Passenger> {
+    private final Map<String, Passenger> passengersByNumber;
+    private List<Passenger> orderedView;  // Cached read-only copy, rebuilt lazily after a change.
+
+    // Constructor initializes an empty roster.
+    public PassengerRoster() {
+        this(new LinkedHashMap<>());
+    }
+
+    // Constructor for subclasses that supply their own backing map.
+    protected PassengerRoster(Map<String, Passenger> passengersByNumber) {
+        this.passengersByNumber = passengersByNumber;
+    }
+
+    // Method to add a passenger; returns false if a passenger with the same number is already on the roster.
+    public boolean add(Passenger passenger) {
+        if (passengersByNumber.putIfAbsent(passenger.getPassengerNumber(), passenger) != null) {
+            return false;
+        }
+        orderedView = null;
+        return true;
+    }
+
+    // Method to remove a passenger; returns false if the passenger was not on the roster.
+    public boolean remove(Passenger passenger) {
+        if (passengersByNumber.remove(passenger.getPassengerNumber(), passenger)) {
+            orderedView = null;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean contains(Passenger passenger) {
+        return passenger.equals(passengersByNumber.get(passenger.getPassengerNumber()));
+    }
+
+    public boolean containsNumber(String passengerNumber) {
+        return passengersByNumber.containsKey(passengerNumber);
+    }
+
+    public Passenger get(String passengerNumber) {
+        return passengersByNumber.get(passengerNumber);
+    }
+
+    public int size() {
+        return passengersByNumber.size();
+    }
+
+    public boolean isEmpty() {
+        return passengersByNumber.isEmpty();
+    }
+
+    // Method to get the passengers in sign-up order as a read-only list.
+    public List<Passenger> asList() {
+        List<Passenger> view = orderedView;
+        if (view == null) {
+            view = Collections.unmodifiableList(new ArrayList<>(passengersByNumber.values()));
+            orderedView = view;
+        }
+        return view;
+    }
+
+    @Override
+    public Iterator<Passenger> iterator() {
+        return asList().iterator();
+    }
+}
+
+// ConcurrentPassengerRoster is a PassengerRoster that many threads can sign passengers onto at once.
+// Membership lives in a ConcurrentHashMap; sign-up order is a skip list keyed by a sequence number taken at sign-up,
+// so removal is a keyed delete rather than a scan.
+class ConcurrentPassengerRoster extends PassengerRoster {
+    private final ConcurrentSkipListMap<Long, Passenger> signUpOrder = new ConcurrentSkipListMap<>();
+    private final Map<String, Long> sequences = new ConcurrentHashMap<>();  // Order key of each passenger number.
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    // Constructor initializes an empty concurrent roster.
+    public ConcurrentPassengerRoster() {
+        super(new ConcurrentHashMap<>());
+    }
+
+    // The order entry is made under the number's lock in sequences, and only while the passenger is still a member,
+    // so a removal racing this add can never leave an entry behind.
+    @Override
+    public boolean add(Passenger passenger) {
+        if (!super.add(passenger)) {
+            return false;
+        }
+        sequences.compute(passenger.getPassengerNumber(), (number, sequence) -> {
+            if (get(number) != passenger) {
+                return sequence;
+            }
+            long next = nextSequence.getAndIncrement();
+            signUpOrder.put(next, passenger);
+            return next;
+        });
+        return true;
+    }
+
+    @Override
+    public boolean remove(Passenger passenger) {
+        if (!super.remove(passenger)) {
+            return false;
+        }
+        sequences.computeIfPresent(passenger.getPassengerNumber(), (number, sequence) -> {
+            signUpOrder.remove(sequence);
+            return null;
+        });
+        return true;
+    }
+
+    // Builds a fresh copy on every call, since a cached view could not be invalidated safely across threads.
+    @Override
+    public List<Passenger> asList() {
+        return Collections.unmodifiableList(new ArrayList<>(signUpOrder.values()));
+    }
+}
+
+// ActivityListener is notified when an activity's seat count or capacity changes, and of each completed sign-up.
+interface ActivityListener {
+    default void seatsChanged(Activity activity) {
+    }
+
+    default void passengerSignedUp(Activity activity, Passenger passenger, long amountCharged) {
+    }
+
+    // amountRefunded is what was returned to the passenger's balance, in minor units.
+    default void passengerCancelled(Activity activity, Passenger passenger, long amountRefunded) {
+    }
+
+    default void costChanged(Activity activity) {
+    }
+
+    // Fired after the seatsChanged that a capacity change also causes.
+    default void capacityChanged(Activity activity) {
+    }
+
+    // The activity's name or description changed.
+    default void detailsChanged(Activity activity) {
+    }
+}
+
+// WaitlistOrder decides who is promoted first when a seat frees up on a full activity.
+enum WaitlistOrder {
+    FIFO,       // In the order passengers joined.
+    PRIORITY    // Premium, then Gold, then Standard; in the order they joined within a tier.
+}
+
+// Waitlist holds the passengers waiting for a seat on one activity. Entries sit in a priority queue, so taking
+// the head is O(log n); a passenger who leaves is only marked and skipped when they reach the head.
+// Callers synchronize on the waitlist.
+class Waitlist {
+    private PriorityQueue<Entry> queue;
+    private final Map<Passenger, Entry> entries = new HashMap<>();  // Passengers still waiting, for O(1) lookup.
+    private long nextSequence;
+
+    private static final class Entry {
+        final Passenger passenger;
+        final long sequence;
+        boolean left;
+
+        Entry(Passenger passenger, long sequence) {
+            this.passenger = passenger;
+            this.sequence = sequence;
+        }
+    }
+
+    private WaitlistOrder order;
+
+    // Constructor initializes an empty waitlist that promotes in the given order.
+    public Waitlist(WaitlistOrder order) {
+        setOrder(order);
+    }
+
+    public WaitlistOrder getOrder() {
+        return order;
+    }
+
+    // Method to change the promotion order; passengers already waiting keep their place in the join sequence.
+    public void setOrder(WaitlistOrder order) {
+        Comparator<Entry> bySequence = Comparator.comparingLong(entry -> entry.sequence);
+        PriorityQueue<Entry> reordered = new PriorityQueue<>(order == WaitlistOrder.PRIORITY
+                ? Comparator.<Entry>comparingInt(entry -> entry.passenger.getTier().ordinal()).thenComparing(bySequence)
+                : bySequence);
+        reordered.addAll(entries.values());
+        this.order = order;
+        this.queue = reordered;
+    }
+
+    // Method to add a passenger; returns false if they are already waiting.
+    public boolean add(Passenger passenger) {
+        if (entries.containsKey(passenger)) {
+            return false;
+        }
+        Entry entry = new Entry(passenger, nextSequence++);
+        entries.put(passenger, entry);
+        queue.add(entry);
+        return true;
+    }
+
+    public boolean remove(Passenger passenger) {
+        Entry entry = entries.remove(passenger);
+        if (entry == null) {
+            return false;
+        }
+        entry.left = true;
+        return true;
+    }
+
+    // Method to take the passenger at the head of the waitlist; returns null if nobody is waiting.
+    public Passenger poll() {
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            if (!entry.left) {
+                entries.remove(entry.passenger);
+                return entry.passenger;
+            }
+        }
+        return null;
+    }
+
+    public boolean contains(Passenger passenger) {
+        return entries.containsKey(passenger);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    // Passengers in promotion order; sorts a copy, so it is meant for reports rather than the sign-up path.
+    public List<Passenger> asList() {
+        List<Entry> waiting = new ArrayList<>(queue);
+        waiting.removeIf(entry -> entry.left);
+        waiting.sort(queue.comparator());
+        List<Passenger> passengers = new ArrayList<>(waiting.size());
+        for (Entry entry : waiting) {
+            passengers.add(entry.passenger);
+        }
+        return passengers;
+    }
+}
+
+// IdRegistry interns keys, such as the passenger numbers of a package's members, as dense int handles, so hot paths
+// can index them by int instead of hashing strings. A handle packs a slot index (low 24 bits) with the slot's
+// generation (next 7 bits). Indexes are dense and reused, which suits them to arrays and IntSet; the generation is
+// bumped when a key is released, so a handle kept past its release reads as stale instead of silently naming
+// whichever key reuses the slot. A slot whose generation is used up is retired rather than wrapped. A registry
+// belongs to an owner that releases its keys, see TravelPackage. Interning is synchronized; lookups take no lock.
+class IdRegistry<K> {
+    static final int NO_ID = -1;
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final int INDEX_BITS = 24;
+    private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+    private static final int GENERATION_MASK = 0x7F;  // Keeps handles non-negative, so NO_ID can never be issued.
+
+    private final Map<K, Integer> handles = new ConcurrentHashMap<>();
+    private volatile Object[] keys = new Object[64];  // Key in each slot; null once released.
+    private volatile int[] generations = new int[64];
+    private int[] free = new int[0];  // Released slots, reused last-in first-out.
+    private int freeCount;
+    private int slots;  // Slots ever handed out; every index is below this.
+
+    // Method to get the handle for a key, allocating one if the key is new.
+    public int intern(K key) {
+        Integer handle = handles.get(key);
+        return handle != null ? handle : allocate(key);
+    }
+
+    private synchronized int allocate(K key) {
+        Integer existing = handles.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        int index;
+        if (freeCount > 0) {
+            index = free[--freeCount];
+        } else {
+            if (slots > INDEX_MASK) {
+                throw new IllegalStateException("More than " + (INDEX_MASK + 1) + " ids in use");
+            }
+            index = slots++;
+            if (index == keys.length) {
+                // Generations are published before keys, so a reader that sees the new keys also sees them.
+                generations = Arrays.copyOf(generations, index * 2);
+                keys = Arrays.copyOf(keys, index * 2);
+            }
+        }
+        // Released last, so a lock-free reader that sees the key also sees the slot's generation.
+        KEYS.setRelease(keys, index, key);
+        int handle = generations[index] << INDEX_BITS | index;
+        handles.put(key, handle);
+        return handle;
+    }
+
+    // Method to look up a key's handle without allocating; returns NO_ID if the key is not interned.
+    public int find(K key) {
+        Integer handle = handles.get(key);
+        return handle != null ? handle : NO_ID;
+    }
+
+    // Method to get the key behind a handle; returns null if the handle has been released.
+    @SuppressWarnings("unchecked")
+    public K key(int handle) {
+        Object[] current = keys;
+        int index = index(handle);
+        if (handle < 0 || index >= current.length) {
+            return null;
+        }
+        // Key first: if it is a later key in the slot, its bumped generation is visible and rejects a stale handle.
+        K key = (K) KEYS.getAcquire(current, index);
+        return generations[index] == generation(handle) ? key : null;
+    }
+
+    public boolean isLive(int handle) {
+        return key(handle) != null;
+    }
+
+    // Method to retire a handle; its slot is reused with the next generation. Returns false if it was already stale.
+    public synchronized boolean release(int handle) {
+        K key = key(handle);
+        if (key == null) {
+            return false;
+        }
+        int index = index(handle);
+        handles.remove(key);
+        KEYS.setRelease(keys, index, null);
+        if (generations[index] == GENERATION_MASK) {
+            return true;  // Retired: reusing the slot would bring back the generation of an old handle.
+        }
+        generations[index]++;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.max(16, free.length * 2));
+        }
+        free[freeCount++] = index;
+        return true;
+    }
+
+    // Number of keys currently interned.
+    public int size() {
+        return handles.size();
+    }
+
+    // Upper bound on the indexes handed out so far, for sizing arrays indexed by them.
+    public synchronized int capacity() {
+        return slots;
+    }
+
+    public static int index(int handle) {
+        return handle & INDEX_MASK;
+    }
+
+    public static int generation(int handle) {
+        return handle >>> INDEX_BITS;
+    }
+}
+
+// IntSet is a set of small non-negative ints, such as IdRegistry indexes, kept as a bitmap: membership is one
+// array read and a mask, with no boxing and no hashing. Memory follows the largest value, so it suits dense ids.
+// Not thread-safe.
+class IntSet {
+    private long[] words;
+    private int size;
+
+    // Constructor initializes an empty set with room for values below the given bound.
+    public IntSet(int capacity) {
+        this.words = new long[Math.max(1, (capacity + 63) >>> 6)];
+    }
+
+    public IntSet() {
+        this(64);
+    }
+
+    // Method to add a value; returns false if it was already present.
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("IntSet only holds non-negative values: " + value);
+        }
+        int word = value >>> 6;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        long bit = 1L << value;
+        if ((words[word] & bit) != 0) {
+            return false;
+        }
+        words[word] |= bit;
+        size++;
+        return true;
+    }
+
+    // Method to remove a value; returns false if it was not present.
+    public boolean remove(int value) {
+        if (!contains(value)) {
+            return false;
+        }
+        words[value >>> 6] &= ~(1L << value);
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int word = value >>> 6;
+        return value >= 0 && word < words.length && (words[word] & (1L << value)) != 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+        size = 0;
+    }
+
+    // Method to visit the values in ascending order.
+    public void forEach(IntConsumer action) {
+        for (int word = 0; word < words.length; word++) {
+            long bits = words[word];
+            while (bits != 0) {
+                action.accept(word << 6 | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+    }
+
+    public int[] toArray() {
+        int[] values = new int[size];
+        int[] position = new int[1];
+        forEach(value -> values[position[0]++] = value);
+        return values;
+    }
+}
+
+// Activity class represents an activity available at a destination.
+class Activity {
+    private String name;
+    private String description;
+    private double cost;
+    // Capacity (high 32 bits) and seats taken (low 32 bits) in one word, so every seat change and every capacity
+    // change is a single compare-and-set against both: neither a sign-up nor a resize can overbook.
+    private final AtomicLong seats;
+
+    private PassengerRoster signedUpPassengers;  // Roster to keep track of passengers who have signed up for this activity.
+    private volatile Destination destination;  // Destination offering this activity, set by Destination.addActivity.
+    private volatile TimeSlot timeSlot;  // When the activity takes place; null if it is not scheduled.
+    private final Waitlist waitlist = new Waitlist(WaitlistOrder.PRIORITY);  // Guarded by its own monitor.
+    private volatile PricingEngine pricingEngine = PricingEngine.getDefault();
+    private volatile PricingEngine.PriceTable priceTable;  // Prices per tier, compiled by the pricing engine.
+    private volatile int costVersion;  // Bumped by setCost, so only this activity's price table goes stale.
+    private final List<ActivityListener> listeners = new CopyOnWriteArrayList<>();
+
+
+    // Constructor initializes the activity with its details and an empty roster for signed-up passengers.
+    public Activity(String name, String description, double cost, int capacity) {
+        this(name, description, cost, capacity, false);
+    }
+
+    // Constructor for an activity that accepts sign-ups from many threads at once when concurrent is true.
+    public Activity(String name, String description, double cost, int capacity, boolean concurrent) {
+        this.name = name;
+        this.description = description;
+        this.cost = cost;
+        this.seats = new AtomicLong(seats(capacity, 0));
+        this.signedUpPassengers = concurrent ? new ConcurrentPassengerRoster() : new PassengerRoster();
+    }
+
+    // Method to check if the activity is available for sign-ups.
+    public boolean isAvailable() {
+        long current = seats.get();
+        return taken(current) < capacity(current);
+    }
+
+    private static long seats(int capacity, int taken) {
+        return (long) capacity << 32 | (taken & 0xFFFFFFFFL);
+    }
+
+    private static int capacity(long seats) {
+        return (int) (seats >> 32);
+    }
+
+    private static int taken(long seats) {
+        return (int) seats;
+    }
+
+    public boolean isConcurrent() {
+        return signedUpPassengers instanceof ConcurrentPassengerRoster;
+    }
+
+    // Method to take one seat; the compare-and-set loop never lets the count pass capacity.
+    boolean tryReserveSeat() {
+        while (true) {
+            long current = seats.get();
+            if (taken(current) >= capacity(current)) {
+                return false;
+            }
+            if (seats.compareAndSet(current, seats(capacity(current), taken(current) + 1))) {
+                fireSeatsChanged();
+                return true;
+            }
+        }
+    }
+
+    // Method to give back a seat taken by tryReserveSeat.
+    void releaseSeat() {
+        releaseSeats(1);
+    }
+
+    // Method to take up to requested seats in one compare-and-set; returns how many were granted.
+    // When all is true the request is granted in full or not at all. Listeners are not told, so a batch can
+    // charge for the seats before anyone sees them; it calls announceSeats once it keeps them.
+    int holdSeats(int requested, boolean all) {
+        while (true) {
+            long current = seats.get();
+            int granted = Math.min(requested, capacity(current) - taken(current));
+            if (granted <= 0 || (all && granted < requested)) {
+                return 0;
+            }
+            if (seats.compareAndSet(current, seats(capacity(current), taken(current) + granted))) {
+                return granted;
+            }
+        }
+    }
+
+    void announceSeats() {
+        fireSeatsChanged();
+    }
+
+    // Method to give up a seat the caller holds. As on cancellation, it passes straight to the head of the
+    // waitlist, and is only freed if nobody waiting can take it.
+    void passOnSeat() {
+        synchronized (waitlist) {
+            if (!promoteFromWaitlist()) {
+                releaseSeat();
+            }
+        }
+    }
+
+    void releaseSeats(int count) {
+        long current;
+        do {
+            current = seats.get();
+        } while (!seats.compareAndSet(current, seats(capacity(current), taken(current) - count)));
+        fireSeatsChanged();
+    }
+
+    // Methods to register for seat changes, e.g. by a package's index of available activities.
+    public void addListener(ActivityListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ActivityListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireSeatsChanged() {
+        for (ActivityListener listener : listeners) {
+            listener.seatsChanged(this);
+        }
+    }
+
+    // Method to complete a sign-up once the passenger holds a roster entry and a seat: records the booking on the
+    // passenger and announces it. amountCharged is what the passenger paid, in minor units.
+    void confirmSignUp(Passenger passenger, long amountCharged) {
+        passenger.addBooking(new Booking(this, destination, amountCharged));
+        for (ActivityListener listener : listeners) {
+            listener.passengerSignedUp(this, passenger, amountCharged);
+        }
+    }
+
+    // Method to cancel a passenger's sign-up: their roster entry and booking are dropped and what they paid is refunded.
+    // The seat passes straight to the head of the waitlist, so a concurrent sign-up cannot take it first.
+    public boolean cancel(Passenger passenger) {
+        long start = BookingMetrics.startTimer();
+        Booking booking = passenger.getBooking(this);
+        if (!removeFromRoster(passenger)) {
+            return false;
+        }
+        long refunded = booking == null ? 0 : booking.getAmountPaid();
+        passenger.refund(refunded);
+        for (ActivityListener listener : listeners) {
+            listener.passengerCancelled(this, passenger, refunded);
+        }
+        passOnSeat();
+        BookingMetrics.recordCancel(passenger.getTier(), start);
+        return true;
+    }
+
+    // Method to wait for a seat; returns false if the passenger is already signed up or already waiting.
+    // A waiting passenger is charged when promoted, and is skipped if they can no longer pay.
+    public boolean joinWaitlist(Passenger passenger) {
+        synchronized (waitlist) {
+            if (signedUpPassengers.contains(passenger) || !waitlist.add(passenger)) {
+                return false;
+            }
+        }
+        fillFreeSeats();  // A seat may have come free since the caller found the activity full.
+        return true;
+    }
+
+    public boolean leaveWaitlist(Passenger passenger) {
+        synchronized (waitlist) {
+            return waitlist.remove(passenger);
+        }
+    }
+
+    public boolean isWaitlisted(Passenger passenger) {
+        synchronized (waitlist) {
+            return waitlist.contains(passenger);
+        }
+    }
+
+    public int getWaitlistSize() {
+        synchronized (waitlist) {
+            return waitlist.size();
+        }
+    }
+
+    // Waiting passengers in the order they would be promoted.
+    public List<Passenger> getWaitlist() {
+        synchronized (waitlist) {
+            return waitlist.asList();
+        }
+    }
+
+    public WaitlistOrder getWaitlistOrder() {
+        synchronized (waitlist) {
+            return waitlist.getOrder();
+        }
+    }
+
+    public void setWaitlistOrder(WaitlistOrder order) {
+        synchronized (waitlist) {
+            waitlist.setOrder(order);
+        }
+    }
+
+    // Method to hand free seats to waiting passengers, e.g. after the capacity is raised.
+    private void fillFreeSeats() {
+        synchronized (waitlist) {
+            while (!waitlist.isEmpty() && tryReserveSeat()) {
+                if (!promoteFromWaitlist()) {
+                    releaseSeat();
+                }
+            }
+        }
+    }
+
+    // Method to give a seat the caller already holds to the first waiting passenger who can still pay for it;
+    // returns false if nobody could take it. Must be called while holding the waitlist's monitor.
+    private boolean promoteFromWaitlist() {
+        Passenger next;
+        while ((next = waitlist.poll()) != null) {
+            long price = next.priceFor(this);
+            if (addToRoster(next) != SignupStatus.CONFIRMED) {
+                continue;  // Signed up directly, or booked something at the same time, while waiting.
+            }
+            if (!next.tryDebit(price)) {
+                removeFromRoster(next);
+                continue;
+            }
+            confirmSignUp(next, price);
+            BookingMetrics.countPromotion(next.getTier());
+            return true;
+        }
+        return false;
+    }
+
+    // Method to check, without enrolling, whether addToRoster would accept the passenger right now.
+    SignupStatus checkRoster(Passenger passenger) {
+        if (signedUpPassengers.containsNumber(passenger.getPassengerNumber())) {
+            return SignupStatus.ALREADY_SIGNED_UP;
+        }
+        TimeSlot slot = timeSlot;
+        if (slot != null && !passenger.getSchedule().isFree(slot)) {
+            return SignupStatus.SCHEDULE_CONFLICT;
+        }
+        return SignupStatus.CONFIRMED;
+    }
+
+    // Roster access for callers that manage seats themselves, such as batch sign-up. A passenger on the roster also
+    // holds the activity's time slot in their schedule; the status says which of the two refused them, if either did.
+    SignupStatus addToRoster(Passenger passenger) {
+        if (!signedUpPassengers.add(passenger)) {
+            return SignupStatus.ALREADY_SIGNED_UP;
+        }
+        if (!passenger.getSchedule().add(this)) {
+            signedUpPassengers.remove(passenger);
+            return SignupStatus.SCHEDULE_CONFLICT;
+        }
+        return SignupStatus.CONFIRMED;
+    }
+
+    // Removing a passenger from the roster also drops their booking and frees the slot in their schedule.
+    boolean removeFromRoster(Passenger passenger) {
+        if (signedUpPassengers.remove(passenger)) {
+            passenger.removeBooking(this);
+            passenger.getSchedule().remove(this);
+            return true;
+        }
+        return false;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    public PricingEngine getPricingEngine() {
+        return pricingEngine;
+    }
+
+    public void setPricingEngine(PricingEngine pricingEngine) {
+        this.pricingEngine = pricingEngine;
+        this.priceTable = null;
+    }
+
+    // Price table cache, managed by PricingEngine.
+    PricingEngine.PriceTable getPriceTable() {
+        return priceTable;
+    }
+
+    void setPriceTable(PricingEngine.PriceTable priceTable) {
+        this.priceTable = priceTable;
+    }
+
+    int getCostVersion() {
+        return costVersion;
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getCapacity() {
+        return capacity(seats.get());
+    }
+
+    public int getCurrentCount() {
+        return taken(seats.get());
+    }
+
+    // The destination offering this activity, or null if it has not been added to one.
+    public Destination getDestination() {
+        return destination;
+    }
+
+    // When the activity takes place, or null if it is not scheduled.
+    public TimeSlot getTimeSlot() {
+        return timeSlot;
+    }
+
+    // Passengers in the order they signed up.
+    public List<Passenger> getSignedUpPassengers() {
+        return signedUpPassengers.asList();
+    }
+
+    // Setters
+    public void setName(String name) {
+        this.name = name;
+        fireDetailsChanged();
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+        fireDetailsChanged();
+    }
+
+    private void fireDetailsChanged() {
+        for (ActivityListener listener : listeners) {
+            listener.detailsChanged(this);
+        }
+    }
+
+    public void setCost(double cost) {
+        if (cost < 0) {
+            throw new IllegalArgumentException("Cost cannot be negative");
+        }
+        this.cost = cost;
+        costVersion++;
+        priceTable = null;
+        for (ActivityListener listener : listeners) {
+            listener.costChanged(this);
+        }
+    }
+
+    public void setCapacity(int capacity) {
+        long current;
+        do {
+            current = seats.get();
+            if (capacity < taken(current)) {
+                throw new IllegalArgumentException("Capacity cannot be less than current count");
+            }
+        } while (!seats.compareAndSet(current, seats(capacity, taken(current))));
+        fireSeatsChanged();
+        for (ActivityListener listener : listeners) {
+            listener.capacityChanged(this);
+        }
+        fillFreeSeats();
+    }
+
+    void setDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    // Passengers' schedules are keyed on the slots they booked, so an activity cannot move once anyone is booked.
+    public void setTimeSlot(TimeSlot timeSlot) {
+        if (!signedUpPassengers.isEmpty()) {
+            throw new IllegalStateException("Cannot reschedule an activity with signed-up passengers");
+        }
+        this.timeSlot = timeSlot;
+        fireDetailsChanged();
+    }
+
+    public void setCurrentCount(int currentCount) {
+        long current;
+        do {
+            current = seats.get();
+            if (currentCount > capacity(current)) {
+                throw new IllegalArgumentException("Current count cannot exceed capacity");
+            }
+        } while (!seats.compareAndSet(current, seats(capacity(current), currentCount)));
+        fireSeatsChanged();
+        fillFreeSeats();
+    }
+
+    //Method to sign up a passenger for the activity, if the activity is available and the passenger is not already signed up.
+    // The passenger is put on the roster first, so a duplicate never holds a seat; the entry is rolled back if no seat is left.
+    public boolean signUp(Passenger passenger) {
+        return signUp(passenger, 0);
+    }
+
+    // Sign-up used by the passenger tiers, which pass along what they charged so listeners can record it.
+    boolean signUp(Passenger passenger, long amountCharged) {
+        long start = BookingMetrics.startTimer();
+        SignupStatus status = reserve(passenger, amountCharged);
+        BookingMetrics.recordSignUp(passenger.getTier(), status, start);
+        return status == SignupStatus.CONFIRMED;
+    }
+
+    private SignupStatus reserve(Passenger passenger, long amountCharged) {
+        if (!isAvailable()) {
+            return SignupStatus.ACTIVITY_FULL;
+        }
+        SignupStatus enrolled = addToRoster(passenger);
+        if (enrolled != SignupStatus.CONFIRMED) {
+            return enrolled;
+        }
+        if (!tryReserveSeat()) {
+            removeFromRoster(passenger);
+            return SignupStatus.ACTIVITY_FULL;
+        }
+        confirmSignUp(passenger, amountCharged);
+        return SignupStatus.CONFIRMED;
+    }
+
+    // Method to print details of the activity.
+    public void printActivityDetails() {
+        ReportWriter.printToConsole(out -> out.activityDetails(this));
+    }
+}
+
+// AppendOnlyList is a list that only grows, read without locking from other threads. Elements live in an array
+// that is replaced by a copy of twice the size when full, and the size is published after the element, so a reader
+// always sees a complete prefix. Adding is synchronized and amortized O(1), where CopyOnWriteArrayList copies the
+// whole array on every add. Iterators never fail and see elements added while they run.
+final class AppendOnlyList<E> extends AbstractList<E> implements RandomAccess {
+    private volatile Object[] elements = new Object[8];
+    private volatile int size;
+
+    @Override
+    public synchronized boolean add(E element) {
+        Object[] current = elements;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+            elements = current;
+        }
+        current[size] = element;
+        size = size + 1;
+        return true;
+    }
+
+    // The size is read first: the array read after it holds at least that many elements.
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) elements[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
+
+// DestinationListener is notified when an activity is added to a destination.
+interface DestinationListener {
+    void activityAdded(Destination destination, Activity activity);
+}
+
+// Destination class represents a destination in the travel package itinerary.
+class Destination {
+    private String name;
+    private List<Activity> activities;  // Append-only, so readers can iterate while activities are added.
+    private final List<DestinationListener> listeners = new CopyOnWriteArrayList<>();
+    private ActivityColumns columns;  // Created on first request, see getActivityColumns.
+
+    // Constructor initializes the destination with its name and an empty list for activities.
+    public Destination(String name) {
+        this.name = name;
+        this.activities = new AppendOnlyList<>();
+    }
+
+
+    // Method to add an activity to the destination.
+    public void addActivity(Activity activity) {
+        activities.add(activity);
+        activity.setDestination(this);
+        for (DestinationListener listener : listeners) {
+            listener.activityAdded(this, activity);
+        }
+    }
+
+    // Methods to register for new activities, e.g. by the packages whose itinerary includes this destination.
+    public void addListener(DestinationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DestinationListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    // Read-only view; iterating it never fails, but it sees later additions. See TravelPackage.getSnapshot.
+    public List<Activity> getActivities() {
+        return Collections.unmodifiableList(activities);
+    }
+
+    // Columnar copy of this destination's activities for fast scans; created on first use and kept in step after that.
+    public synchronized ActivityColumns getActivityColumns() {
+        if (columns == null) {
+            columns = new ActivityColumns();
+            addListener(columns);
+            for (Activity activity : activities) {
+                columns.activityAdded(this, activity);
+            }
+        }
+        return columns;
+    }
+
+    // Setters
+    public void setName(String name) {
+        this.name = name;
+    }
+
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Destination destination = (Destination) obj;
+        return Objects.equals(name, destination.name);
+    }
+
+
+    // The name's own hash, which String caches; Objects.hash would allocate a varargs array on every call.
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name);
+    }
+
+
+    // Method to print the itinerary of the destination, including details of all activities.
+    public void printItinerary() {
+        ReportWriter.printToConsole(out -> out.itinerary(this));
+    }
+
+}
+
+// PassengerTier names the kinds of passenger, in descending order of privilege.
+enum PassengerTier {
+    PREMIUM,
+    GOLD,
+    STANDARD;
+
+    // Method to create a passenger of this tier; the balance is ignored for tiers that do not carry one.
+    public Passenger newPassenger(String name, String passengerNumber, double balance) {
+        switch (this) {
+            case PREMIUM:
+                return new PremiumPassenger(name, passengerNumber);
+            case GOLD:
+                return new GoldPassenger(name, passengerNumber, balance);
+            default:
+                return new StandardPassenger(name, passengerNumber, balance);
+        }
+    }
+}
+
+// TimeSlot is the time an activity takes place, from start (inclusive) to end (exclusive).
+final class TimeSlot {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+
+    public TimeSlot(LocalDateTime start, LocalDateTime end) {
+        if (!end.isAfter(start)) {
+            throw new IllegalArgumentException("Time slot must end after it starts");
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    public static TimeSlot of(LocalDateTime start, Duration duration) {
+        return new TimeSlot(start, start.plus(duration));
+    }
+
+    public boolean overlaps(TimeSlot other) {
+        return start.isBefore(other.end) && other.start.isBefore(end);
+    }
+
+    // Whether the other slot lies entirely within this one.
+    public boolean contains(TimeSlot other) {
+        return !other.start.isBefore(start) && !other.end.isAfter(end);
+    }
+
+    // Getters
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        TimeSlot slot = (TimeSlot) obj;
+        return start.equals(slot.start) && end.equals(slot.end);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * start.hashCode() + end.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return start + " to " + end;
+    }
+}
+
+// PassengerSchedule holds the time slots of a passenger's bookings. Booked slots never overlap, so a map ordered by
+// start time is all the interval index needs: only the booking starting at or before a new slot and the first one
+// starting after it can overlap it, and each is one TreeMap lookup, so a clash is found in O(log n).
+class PassengerSchedule {
+    private final TreeMap<LocalDateTime, Activity> byStart = new TreeMap<>();
+
+    // Method to take an activity's slot; returns false if it overlaps a slot already taken.
+    // Activities without a slot never clash and are not recorded.
+    public synchronized boolean add(Activity activity) {
+        TimeSlot slot = activity.getTimeSlot();
+        if (slot == null) {
+            return true;
+        }
+        if (findConflict(slot) != null) {
+            return false;
+        }
+        byStart.put(slot.getStart(), activity);
+        return true;
+    }
+
+    public synchronized boolean remove(Activity activity) {
+        TimeSlot slot = activity.getTimeSlot();
+        return slot != null && byStart.remove(slot.getStart(), activity);
+    }
+
+    // Method to find the booked activity whose slot overlaps the given one; returns null if the slot is free.
+    public synchronized Activity findConflict(TimeSlot slot) {
+        Map.Entry<LocalDateTime, Activity> before = byStart.floorEntry(slot.getStart());
+        if (before != null && before.getValue().getTimeSlot().overlaps(slot)) {
+            return before.getValue();
+        }
+        Map.Entry<LocalDateTime, Activity> after = byStart.higherEntry(slot.getStart());
+        if (after != null && after.getValue().getTimeSlot().overlaps(slot)) {
+            return after.getValue();
+        }
+        return null;
+    }
+
+    public boolean isFree(TimeSlot slot) {
+        return findConflict(slot) == null;
+    }
+
+    // The booked activities starting within the window, in time order.
+    public synchronized List<Activity> getActivities(TimeSlot window) {
+        return new ArrayList<>(byStart.subMap(window.getStart(), true, window.getEnd(), false).values());
+    }
+
+    public synchronized List<Activity> getActivities() {
+        return new ArrayList<>(byStart.values());
+    }
+
+    public synchronized int size() {
+        return byStart.size();
+    }
+}
+
+// PassengerBookings is what a passenger has booked: their bookings in booking order and the schedule of their time
+// slots. Each passenger has their own, except off-heap registry views, which share their record's.
+final class PassengerBookings {
+    private final Map<Activity, Booking> bookings = new LinkedHashMap<>();
+    final PassengerSchedule schedule = new PassengerSchedule();
+
+    synchronized void add(Booking booking) {
+        bookings.put(booking.getActivity(), booking);
+    }
+
+    synchronized void remove(Activity activity) {
+        bookings.remove(activity);
+    }
+
+    synchronized Booking get(Activity activity) {
+        return bookings.get(activity);
+    }
+
+    synchronized List<Booking> list() {
+        return List.copyOf(bookings.values());
+    }
+}
+
+// Passenger class is an abstract class representing a passenger.
+abstract class Passenger {
+    private String name;
+    private String passengerNumber;
+    private final PassengerBookings bookings;  // Activities signed up for and their time slots.
+
+    // Constructor initializes the passenger with their name and passenger number.
+    public Passenger(String name, String passengerNumber) {
+        this(name, passengerNumber, new PassengerBookings());
+    }
+
+    // Constructor for a passenger whose bookings are shared with other views of the same passenger.
+    Passenger(String name, String passengerNumber, PassengerBookings bookings) {
+        this.name = name;
+        this.passengerNumber = passengerNumber;
+        this.bookings = bookings;
+    }
+
+
+    // Abstract method to sign up for an activity. This method will be implemented by subclasses.
+    public abstract boolean signUpForActivity(Activity activity);
+
+    // Method to cancel a sign-up; the passenger gets back what they paid and the seat goes to the activity's waitlist.
+    public boolean cancelActivity(Activity activity) {
+        return activity.cancel(this);
+    }
+
+    // Method to get the price this passenger pays for an activity, in minor units (cents), from the activity's pricing engine.
+    public long priceFor(Activity activity) {
+        return activity.getPricingEngine().priceFor(activity, getTier());
+    }
+
+    public abstract PassengerTier getTier();
+
+    // Method to take an amount from the passenger's balance. Passengers without a balance can only be charged nothing.
+    boolean tryDebit(long amount) {
+        return amount == 0;
+    }
+
+    // Method to check whether the balance currently covers an amount, without taking it.
+    boolean canAfford(long amount) {
+        return amount == 0;
+    }
+
+    // Method to return an amount taken by tryDebit.
+    void refund(long amount) {
+    }
+
+    // Bookings are recorded and dropped by Activity, alongside its roster of signed-up passengers.
+    void addBooking(Booking booking) {
+        bookings.add(booking);
+    }
+
+    void removeBooking(Activity activity) {
+        bookings.remove(activity);
+    }
+
+    // Method to look up this passenger's booking for an activity; returns null if they are not signed up for it.
+    public Booking getBooking(Activity activity) {
+        return bookings.get(activity);
+    }
+
+    // The passenger's bookings in the order they were made.
+    public List<Booking> getBookings() {
+        return bookings.list();
+    }
+
+    // The time slots of the passenger's bookings, for conflict checks.
+    public PassengerSchedule getSchedule() {
+        return bookings.schedule;
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public String getPassengerNumber() {
+        return passengerNumber;
+    }
+
+    // Setters
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setPassengerNumber(String passengerNumber) {
+        this.passengerNumber = passengerNumber;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        Passenger passenger = (Passenger) obj;
+        return Objects.equals(passengerNumber, passenger.passengerNumber);
+    }
+
+    // The number's own hash, which String caches; Objects.hash would allocate a varargs array on every call.
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(passengerNumber);
+    }
+
+
+    // The passenger's wallet, or null for tiers that do not carry a balance.
+    public Wallet getWallet() {
+        return null;
+    }
+
+    // Method to print details of the passenger, including the balance for tiers that have one.
+    public void printPassengerDetails() {
+        ReportWriter.printToConsole(out -> out.passengerDetails(this));
+    }
+
+}
+
+// Booking records one activity a passenger has signed up for, where it takes place and what they paid for it.
+class Booking {
+    private final Activity activity;
+    private final Destination destination;
+    private final long amountPaid;  // In minor units (cents).
+
+    // Constructor initializes the booking; destination may be null for an activity that is not part of a destination.
+    public Booking(Activity activity, Destination destination, long amountPaid) {
+        this.activity = activity;
+        this.destination = destination;
+        this.amountPaid = amountPaid;
+    }
+
+    // Getters
+    public Activity getActivity() {
+        return activity;
+    }
+
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public long getAmountPaid() {
+        return amountPaid;
+    }
+
+    public double getPricePaid() {
+        return Wallet.toAmount(amountPaid);
+    }
+}
+
+// Wallet holds a passenger's balance as a fixed-point count of minor units (cents).
+// Debits are a compare-and-set loop on a single long, so concurrent sign-ups can never overdraw it.
+class Wallet {
+    private static final double MINOR_UNITS_PER_UNIT = 100.0;
+
+    private final AtomicLong minorUnits;  // Null for wallets that keep the balance elsewhere and override the storage methods.
+
+    // Constructor initializes the wallet with an opening balance.
+    public Wallet(double balance) {
+        this.minorUnits = new AtomicLong(toMinorUnits(balance));
+    }
+
+    // Constructor for subclasses that store the balance themselves, such as OffHeapPassengerRegistry's wallets.
+    Wallet() {
+        this.minorUnits = null;
+    }
+
+    // Storage of the balance in minor units.
+    long load() {
+        return minorUnits.get();
+    }
+
+    void store(long value) {
+        minorUnits.set(value);
+    }
+
+    boolean compareAndSet(long expected, long value) {
+        return minorUnits.compareAndSet(expected, value);
+    }
+
+    void add(long delta) {
+        minorUnits.addAndGet(delta);
+    }
+
+    // Converts an amount such as 12.34 to minor units (1234), rounding to the nearest cent.
+    public static long toMinorUnits(double amount) {
+        return Math.round(amount * MINOR_UNITS_PER_UNIT);
+    }
+
+    public static double toAmount(long minorUnits) {
+        return minorUnits / MINOR_UNITS_PER_UNIT;
+    }
+
+    // Getters
+    public double getBalance() {
+        return toAmount(load());
+    }
+
+    public long getMinorUnits() {
+        return load();
+    }
+
+    // Setters
+    public void setBalance(double balance) {
+        if (balance < 0) {
+            throw new IllegalArgumentException("Balance cannot be negative");
+        }
+        store(toMinorUnits(balance));
+    }
+
+    // Method to take an amount out of the wallet; returns false and leaves the balance untouched if it would go negative.
+    public boolean tryDebit(long amount) {
+        while (true) {
+            long current = load();
+            if (current < amount) {
+                return false;
+            }
+            if (compareAndSet(current, current - amount)) {
+                return true;
+            }
+        }
+    }
+
+    // Method to put an amount back, e.g. when the seat reservation that followed a debit fails.
+    public void credit(long amount) {
+        add(amount);
+    }
+}
+
+// StandardPassenger class represents a standard passenger.
+class StandardPassenger extends Passenger {
+    private final Wallet wallet;
+
+    // Constructor initializes the standard passenger with their name, passenger number, and balance.
+    public StandardPassenger(String name, String passengerNumber, double balance) {
+        this(name, passengerNumber, new Wallet(balance), new PassengerBookings());
+    }
+
+    // Constructor for a view whose balance and bookings are shared, e.g. of an off-heap record.
+    StandardPassenger(String name, String passengerNumber, Wallet wallet, PassengerBookings bookings) {
+        super(name, passengerNumber, bookings);
+        this.wallet = wallet;
+    }
+
+    // Implementation of the abstract method to sign up for an activity.
+    @Override
+    // The cost is debited first and credited back if the seat cannot be taken, so both happen or neither does.
+    public boolean signUpForActivity(Activity activity) {
+        long cost = priceFor(activity);
+        if (!activity.isAvailable()) {
+            BookingMetrics.countSignUp(PassengerTier.STANDARD, SignupStatus.ACTIVITY_FULL);
+            return false;
+        }
+        if (!wallet.tryDebit(cost)) {
+            BookingMetrics.countSignUp(PassengerTier.STANDARD, SignupStatus.INSUFFICIENT_BALANCE);
+            return false;
+        }
+        if (!activity.signUp(this, cost)) {
+            wallet.credit(cost);
+            return false;
+        }
+        return true;
+    }
+
+    // Getters
+    public double getBalance() {
+        return wallet.getBalance();
+    }
+
+    @Override
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    @Override
+    public PassengerTier getTier() {
+        return PassengerTier.STANDARD;
+    }
+
+    @Override
+    boolean tryDebit(long amount) {
+        return wallet.tryDebit(amount);
+    }
+
+    @Override
+    boolean canAfford(long amount) {
+        return wallet.getMinorUnits() >= amount;
+    }
+
+    @Override
+    void refund(long amount) {
+        wallet.credit(amount);
+    }
+
+    // Setters
+    public void setBalance(double balance) {
+        wallet.setBalance(balance);
+    }
+
+}
+
+// GoldPassenger class represents a gold passenger.
+class GoldPassenger extends Passenger {
+    private final Wallet wallet;
+
+    // Constructor initializes the gold passenger with their name, passenger number, and balance.
+    public GoldPassenger(String name, String passengerNumber, double balance) {
+        this(name, passengerNumber, new Wallet(balance), new PassengerBookings());
+    }
+
+    // Constructor for a view whose balance and bookings are shared, e.g. of an off-heap record.
+    GoldPassenger(String name, String passengerNumber, Wallet wallet, PassengerBookings bookings) {
+        super(name, passengerNumber, bookings);
+        this.wallet = wallet;
+    }
+
+    // Implementation of the abstract method to sign up for an activity at the gold price (10% off under the standard rules).
+    @Override
+    // The discounted cost is debited first and credited back if the seat cannot be taken.
+    public boolean signUpForActivity(Activity activity) {
+        long discountedCost = priceFor(activity);
+        if (!activity.isAvailable()) {
+            BookingMetrics.countSignUp(PassengerTier.GOLD, SignupStatus.ACTIVITY_FULL);
+            return false;
+        }
+        if (!wallet.tryDebit(discountedCost)) {
+            BookingMetrics.countSignUp(PassengerTier.GOLD, SignupStatus.INSUFFICIENT_BALANCE);
+            return false;
+        }
+        if (!activity.signUp(this, discountedCost)) {
+            wallet.credit(discountedCost);
+            return false;
+        }
+        return true;
+    }
+
+    // Getters
+    public double getBalance() {
+        return wallet.getBalance();
+    }
+
+    @Override
+    public Wallet getWallet() {
+        return wallet;
+    }
+
+    @Override
+    public PassengerTier getTier() {
+        return PassengerTier.GOLD;
+    }
+
+    @Override
+    boolean tryDebit(long amount) {
+        return wallet.tryDebit(amount);
+    }
+
+    @Override
+    boolean canAfford(long amount) {
+        return wallet.getMinorUnits() >= amount;
+    }
+
+    @Override
+    void refund(long amount) {
+        wallet.credit(amount);
+    }
+
+    // Setters
+    public void setBalance(double balance) {
+        wallet.setBalance(balance);
+    }
+
+}
+
+// PremiumPassenger class represents a premium passenger.
+class PremiumPassenger extends Passenger {
+
+    // Constructor initializes the premium passenger with their name and passenger number.
+    public PremiumPassenger(String name, String passengerNumber) {
+        super(name, passengerNumber);
+    }
+
+    // Constructor for a view whose bookings are shared, e.g. of an off-heap record.
+    PremiumPassenger(String name, String passengerNumber, PassengerBookings bookings) {
+        super(name, passengerNumber, bookings);
+    }
+
+    // Implementation of the abstract method to sign up for an activity for free.
+    @Override
+    public boolean signUpForActivity(Activity activity) {
+        // Premium passengers carry no balance, so they can only take activities that are free for their tier
+        if (priceFor(activity) != 0) {
+            BookingMetrics.countSignUp(PassengerTier.PREMIUM, SignupStatus.INSUFFICIENT_BALANCE);
+            return false;
+        }
+        return activity.signUp(this);
+    }
+
+    @Override
+    public PassengerTier getTier() {
+        return PassengerTier.PREMIUM;
+    }
+
+}
+
+
+// PricingRule adjusts the price of an activity for one tier. Rules are applied in order, each to the price the
+// previous one produced, starting from the activity's cost; prices are in minor units (cents).
+interface PricingRule {
+    long apply(Activity activity, PassengerTier tier, long price);
+
+    // Rule that charges a tier the given percentage of the price so far, e.g. 90 for a 10% discount.
+    static PricingRule percentOf(PassengerTier tier, int percent) {
+        return (activity, forTier, price) -> forTier == tier ? percentOf(price, percent) : price;
+    }
+
+    // Rule that charges every tier the given percentage for matching activities, e.g. a seasonal promotion.
+    static PricingRule percentOf(Predicate<Activity> applies, int percent) {
+        return (activity, tier, price) -> applies.test(activity) ? percentOf(price, percent) : price;
+    }
+
+    static PricingRule free(PassengerTier tier) {
+        return percentOf(tier, 0);
+    }
+
+    // Rounds half up, like Wallet.toMinorUnits.
+    static long percentOf(long price, int percent) {
+        return Math.round(price * percent / 100.0);
+    }
+}
+
+// PricingEngine turns pricing rules into per-activity price tables: one long per tier, indexed by tier ordinal.
+// A table is compiled the first time an activity is priced and cached on the activity, so the sign-up path is
+// an array lookup. Changing an activity's cost makes only its own table stale; changing the rules makes every
+// table stale, and each is recompiled the next time its activity is priced.
+class PricingEngine {
+    private static final PricingEngine DEFAULT = standard();
+
+    private final List<PricingRule> rules = new CopyOnWriteArrayList<>();
+    private volatile long generation;  // Bumped whenever the rules change.
+    private volatile int groupMinimum = Integer.MAX_VALUE;
+    private volatile int groupPercent = 100;
+
+    // Compiled prices for one activity, with the rule generation and cost version they were compiled from.
+    static final class PriceTable {
+        final PricingEngine engine;
+        final long generation;
+        final int costVersion;
+        final long[] prices;
+
+        PriceTable(PricingEngine engine, long generation, int costVersion, long[] prices) {
+            this.engine = engine;
+            this.generation = generation;
+            this.costVersion = costVersion;
+            this.prices = prices;
+        }
+    }
+
+    // The engine activities use unless given another one.
+    public static PricingEngine getDefault() {
+        return DEFAULT;
+    }
+
+    // Method to create an engine with the standard tier prices: Standard pays full price, Gold 90%, Premium nothing.
+    public static PricingEngine standard() {
+        PricingEngine engine = new PricingEngine();
+        engine.addRule(PricingRule.percentOf(PassengerTier.GOLD, 90));
+        engine.addRule(PricingRule.free(PassengerTier.PREMIUM));
+        return engine;
+    }
+
+    // Methods to change the rules; every price table compiled from the old rules goes stale.
+    public synchronized void addRule(PricingRule rule) {
+        rules.add(rule);
+        generation++;
+    }
+
+    public synchronized boolean removeRule(PricingRule rule) {
+        if (rules.remove(rule)) {
+            generation++;
+            return true;
+        }
+        return false;
+    }
+
+    // Method to discount group bookings: groups of at least minimumSize pay the given percentage of each seat.
+    public void setGroupDiscount(int minimumSize, int percent) {
+        if (minimumSize < 1 || percent < 0) {
+            throw new IllegalArgumentException("Group size must be positive and percentage non-negative");
+        }
+        this.groupPercent = percent;
+        this.groupMinimum = minimumSize;
+    }
+
+    // Method to drop an activity's price table, e.g. when a rule depends on something other than its cost.
+    public void invalidate(Activity activity) {
+        activity.setPriceTable(null);
+    }
+
+    // Method to get the price a tier pays for an activity, in minor units.
+    public long priceFor(Activity activity, PassengerTier tier) {
+        PriceTable table = activity.getPriceTable();
+        if (table == null || table.engine != this || table.generation != generation ||
+                table.costVersion != activity.getCostVersion()) {
+            table = compile(activity);
+        }
+        return table.prices[tier.ordinal()];
+    }
+
+    // Price for one seat in a group booking of groupSize seats on the same activity.
+    public long priceFor(Activity activity, PassengerTier tier, int groupSize) {
+        long price = priceFor(activity, tier);
+        return groupSize >= groupMinimum ? PricingRule.percentOf(price, groupPercent) : price;
+    }
+
+    // The generation and cost version are read before the rules and cost, so a change made while compiling leaves
+    // the new table already stale rather than wrongly current.
+    private PriceTable compile(Activity activity) {
+        long compiledGeneration = generation;
+        int costVersion = activity.getCostVersion();
+        long base = Wallet.toMinorUnits(activity.getCost());
+        PassengerTier[] tiers = PassengerTier.values();
+        long[] prices = new long[tiers.length];
+        for (PassengerTier tier : tiers) {
+            long price = base;
+            for (PricingRule rule : rules) {
+                price = rule.apply(activity, tier, price);
+            }
+            prices[tier.ordinal()] = Math.max(0, price);
+        }
+        PriceTable table = new PriceTable(this, compiledGeneration, costVersion, prices);
+        activity.setPriceTable(table);
+        return table;
+    }
+}
+
+
+// OffHeapPassengerRegistry stores passengers outside the Java heap, so millions of them add nothing for the
+// garbage collector to trace. Each passenger is a fixed-width record in a direct buffer:
+//
+//   offset  0  long  balance in minor units (8-byte aligned, updated by compare-and-set)
+//   offset  8  int   hash of the passenger number
+//   offset 12  int   passenger number, as an offset into the string area
+//   offset 16  int   name, as an offset into the string area
+//   offset 20  byte  tier ordinal
+//   offset 21  byte  flags (REMOVED)
+//
+// Strings are stored once as a length-prefixed UTF-8 run in a separate off-heap string area. Records and strings
+// are allocated in fixed-size chunks that never move, and an open-addressing index (linear probing, also off-heap)
+// maps passenger numbers to record numbers. Adding and removing are synchronized; lookups and balance updates take
+// no lock. A removed passenger's record is flagged and its index slot left as a tombstone; neither is reused, and
+// the tombstones are dropped the next time the index is rebuilt.
+//
+// Passengers come back as flyweight views: an ordinary Standard, Gold or Premium passenger whose wallet reads and
+// writes the record and whose bookings and schedule are kept here by record number, so every view of a passenger
+// shares one balance and one schedule. Views are created on demand and not cached.
+class OffHeapPassengerRegistry {
+    private static final int RECORD_SIZE = 24;
+    private static final int BALANCE = 0;
+    private static final int NUMBER_HASH = 8;
+    private static final int NUMBER = 12;
+    private static final int NAME = 16;
+    private static final int TIER = 20;
+    private static final int FLAGS = 21;
+    private static final byte REMOVED = 1;
+    private static final int TOMBSTONE = -1;  // Index slot of a removed passenger; lookups probe past it.
+    private static final int RECORD_CHUNK_BITS = 16;  // 65,536 records (1.5 MB) per chunk.
+    private static final int RECORDS_PER_CHUNK = 1 << RECORD_CHUNK_BITS;
+    private static final int STRING_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private volatile ByteBuffer[] recordChunks = new ByteBuffer[0];
+    private volatile ByteBuffer[] stringChunks = new ByteBuffer[0];
+    private volatile ByteBuffer index = newIndex(1 << 10);  // Slot holds record number + 1; 0 is empty.
+    private volatile int records;  // Records ever added, removed ones included.
+    private volatile int size;     // Passengers currently registered.
+    private int tombstones;        // Index slots of removed passengers; guarded by this.
+    private final Map<Integer, PassengerBookings> bookings = new ConcurrentHashMap<>();  // By record, once viewed.
+    private int stringChunkUsed = STRING_CHUNK_SIZE;  // Bytes used in the last string chunk; full until one exists.
+
+    // Wallet whose balance is the balance field of one record.
+    private static final class RecordWallet extends Wallet {
+        private final ByteBuffer chunk;
+        private final int offset;
+
+        RecordWallet(ByteBuffer chunk, int offset) {
+            this.chunk = chunk;
+            this.offset = offset + BALANCE;
+        }
+
+        @Override
+        long load() {
+            return (long) LONGS.getVolatile(chunk, offset);
+        }
+
+        @Override
+        void store(long value) {
+            LONGS.setVolatile(chunk, offset, value);
+        }
+
+        @Override
+        boolean compareAndSet(long expected, long value) {
+            return LONGS.compareAndSet(chunk, offset, expected, value);
+        }
+
+        @Override
+        void add(long delta) {
+            LONGS.getAndAdd(chunk, offset, delta);
+        }
+    }
+
+    // Method to copy a passenger into the registry; returns its record number, or -1 if the number is already taken.
+    public int add(Passenger passenger) {
+        Wallet wallet = passenger.getWallet();
+        return add(passenger.getTier(), passenger.getName(), passenger.getPassengerNumber(),
+                wallet == null ? 0 : wallet.getMinorUnits());
+    }
+
+    public synchronized int add(PassengerTier tier, String name, String passengerNumber, long balance) {
+        int hash = spread(passengerNumber.hashCode());
+        if (find(passengerNumber, hash) >= 0) {
+            return -1;
+        }
+        int record = records;
+        ByteBuffer[] chunks = recordChunks;
+        if (record >>> RECORD_CHUNK_BITS == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE).order(ByteOrder.nativeOrder());
+            recordChunks = chunks;
+        }
+        ByteBuffer chunk = chunks[record >>> RECORD_CHUNK_BITS];
+        int offset = recordOffset(record);
+        chunk.putLong(offset + BALANCE, balance);
+        chunk.putInt(offset + NUMBER_HASH, hash);
+        chunk.putInt(offset + NUMBER, putString(passengerNumber));
+        chunk.putInt(offset + NAME, putString(name));
+        chunk.put(offset + TIER, (byte) tier.ordinal());
+        if ((size + tombstones + 1) * 2L > slotCount(index)) {
+            // Rebuilding drops the tombstones, so the index only grows if the live passengers need it to.
+            index = rehash((size + 1) * 4L > slotCount(index) ? slotCount(index) * 2 : slotCount(index), record);
+            tombstones = 0;
+        }
+        insert(index, hash, record);
+        records = record + 1;
+        size++;
+        return record;
+    }
+
+    // Method to remove a passenger; returns false if the number is not registered. Views already handed out keep
+    // their name and number, but the record's balance and bookings are no longer reachable through the registry.
+    public synchronized boolean remove(String passengerNumber) {
+        int hash = spread(passengerNumber.hashCode());
+        ByteBuffer slots = index;
+        int mask = slotCount(slots) - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = (int) INTS.getAcquire(slots, slot * 4);
+            if (entry == 0) {
+                return false;
+            }
+            if (entry != TOMBSTONE && matches(entry - 1, passengerNumber, hash)) {
+                int record = entry - 1;
+                recordChunks[record >>> RECORD_CHUNK_BITS].put(recordOffset(record) + FLAGS, REMOVED);
+                INTS.setRelease(slots, slot * 4, TOMBSTONE);
+                tombstones++;
+                size--;
+                bookings.remove(record);
+                return true;
+            }
+        }
+    }
+
+    // Method to find a passenger's record number; returns -1 if the number is not registered.
+    public int find(String passengerNumber) {
+        return find(passengerNumber, spread(passengerNumber.hashCode()));
+    }
+
+    // Method to get a view of a registered passenger; returns null if the number is not registered.
+    public Passenger get(String passengerNumber) {
+        int record = find(passengerNumber);
+        return record < 0 ? null : view(record);
+    }
+
+    public boolean contains(String passengerNumber) {
+        return find(passengerNumber) >= 0;
+    }
+
+    // Method to build a flyweight view of a record; its wallet reads and writes the record's balance, and it shares
+    // the record's bookings with every other view. Returns null if the passenger has been removed.
+    public Passenger view(int record) {
+        Objects.checkIndex(record, records);
+        ByteBuffer chunk = recordChunks[record >>> RECORD_CHUNK_BITS];
+        int offset = recordOffset(record);
+        if (isRemoved(chunk, offset)) {
+            return null;
+        }
+        String name = getString(chunk.getInt(offset + NAME));
+        String passengerNumber = getString(chunk.getInt(offset + NUMBER));
+        PassengerBookings shared = bookings.computeIfAbsent(record, r -> new PassengerBookings());
+        switch (PassengerTier.values()[chunk.get(offset + TIER)]) {
+            case PREMIUM:
+                return new PremiumPassenger(name, passengerNumber, shared);
+            case GOLD:
+                return new GoldPassenger(name, passengerNumber, new RecordWallet(chunk, offset), shared);
+            default:
+                return new StandardPassenger(name, passengerNumber, new RecordWallet(chunk, offset), shared);
+        }
+    }
+
+    // Balance access by record number, without building a view.
+    public long getBalance(int record) {
+        Objects.checkIndex(record, records);
+        return (long) LONGS.getVolatile(recordChunks[record >>> RECORD_CHUNK_BITS], recordOffset(record) + BALANCE);
+    }
+
+    public PassengerTier getTier(int record) {
+        Objects.checkIndex(record, records);
+        return PassengerTier.values()[recordChunks[record >>> RECORD_CHUNK_BITS].get(recordOffset(record) + TIER)];
+    }
+
+    // Number of passengers currently registered.
+    public int size() {
+        return size;
+    }
+
+    // Direct memory held by the registry, in bytes.
+    public long getOffHeapBytes() {
+        return (long) recordChunks.length * RECORDS_PER_CHUNK * RECORD_SIZE +
+                (long) stringChunks.length * STRING_CHUNK_SIZE + index.capacity();
+    }
+
+    // Index
+
+    private int find(String passengerNumber, int hash) {
+        ByteBuffer slots = index;
+        int mask = slotCount(slots) - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = (int) INTS.getAcquire(slots, slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            // A reader on an index that predates a removal can still see the slot, hence the flag check.
+            if (entry != TOMBSTONE && matches(entry - 1, passengerNumber, hash) &&
+                    !isRemoved(recordChunks[(entry - 1) >>> RECORD_CHUNK_BITS], recordOffset(entry - 1))) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private boolean matches(int record, String passengerNumber, int hash) {
+        ByteBuffer chunk = recordChunks[record >>> RECORD_CHUNK_BITS];
+        int offset = recordOffset(record);
+        return chunk.getInt(offset + NUMBER_HASH) == hash && stringEquals(chunk.getInt(offset + NUMBER), passengerNumber);
+    }
+
+    private static boolean isRemoved(ByteBuffer chunk, int offset) {
+        return (chunk.get(offset + FLAGS) & REMOVED) != 0;
+    }
+
+    // The slot is published with release semantics after the record is written, so a lookup that finds it sees the record.
+    private static void insert(ByteBuffer slots, int hash, int record) {
+        int mask = slotCount(slots) - 1;
+        int slot = hash & mask;
+        while ((int) INTS.getAcquire(slots, slot * 4) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        INTS.setRelease(slots, slot * 4, record + 1);
+    }
+
+    private ByteBuffer rehash(int slotCount, int records) {
+        ByteBuffer slots = newIndex(slotCount);
+        for (int record = 0; record < records; record++) {
+            ByteBuffer chunk = recordChunks[record >>> RECORD_CHUNK_BITS];
+            if (!isRemoved(chunk, recordOffset(record))) {
+                insert(slots, chunk.getInt(recordOffset(record) + NUMBER_HASH), record);
+            }
+        }
+        return slots;
+    }
+
+    private static ByteBuffer newIndex(int slotCount) {
+        return ByteBuffer.allocateDirect(slotCount * 4).order(ByteOrder.nativeOrder());
+    }
+
+    private static int slotCount(ByteBuffer slots) {
+        return slots.capacity() / 4;
+    }
+
+    private static int recordOffset(int record) {
+        return (record & (RECORDS_PER_CHUNK - 1)) * RECORD_SIZE;
+    }
+
+    // Spreads the high bits of String.hashCode into the low bits the index masks with.
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // String area: each string is a two-byte length followed by its UTF-8 bytes, addressed by chunk * size + position.
+
+    private int putString(String value) {
+        byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long for the passenger registry: " + value.length() + " characters");
+        }
+        ByteBuffer[] chunks = stringChunks;
+        if (stringChunkUsed + 2 + bytes.length > STRING_CHUNK_SIZE) {
+            chunks = Arrays.copyOf(chunks, chunks.length + 1);
+            chunks[chunks.length - 1] = ByteBuffer.allocateDirect(STRING_CHUNK_SIZE);
+            stringChunks = chunks;
+            stringChunkUsed = 0;
+        }
+        ByteBuffer chunk = chunks[chunks.length - 1];
+        int position = stringChunkUsed;
+        chunk.putShort(position, (short) bytes.length);
+        chunk.put(position + 2, bytes);
+        stringChunkUsed = position + 2 + bytes.length;
+        return (chunks.length - 1) * STRING_CHUNK_SIZE + position;
+    }
+
+    private String getString(int address) {
+        ByteBuffer chunk = stringChunks[address / STRING_CHUNK_SIZE];
+        int position = address % STRING_CHUNK_SIZE;
+        byte[] bytes = new byte[Short.toUnsignedInt(chunk.getShort(position))];
+        chunk.get(position + 2, bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    // Compares without decoding; passenger numbers are usually ASCII, so this is a byte-by-character loop.
+    private boolean stringEquals(int address, String value) {
+        ByteBuffer chunk = stringChunks[address / STRING_CHUNK_SIZE];
+        int position = address % STRING_CHUNK_SIZE;
+        int length = Short.toUnsignedInt(chunk.getShort(position));
+        if (length == value.length()) {
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                byte b = chunk.get(position + 2 + i);
+                if (b < 0) {
+                    ascii = false;
+                    break;
+                }
+                if (b != value.charAt(i)) {
+                    return false;
+                }
+            }
+            if (ascii) {
+                return true;
+            }
+        }
+        return getString(address).equals(value);
+    }
+}
+
+// ReportFormat selects how ReportWriter lays out a report.
+enum ReportFormat {
+    TEXT,   // The human-readable "Label: value" layout printed to the console.
+    CSV     // One header row per report, then one row per record.
+}
+
+// ReportWriter renders the package, destination, activity and passenger reports to any Appendable.
+// Text is copied straight into a reusable char buffer and numbers are formatted in place, so no per-line
+// strings are built; the buffer goes to the sink only when it fills up or on flush.
+class ReportWriter implements Flushable {
+    private static final int BUFFER_SIZE = 8192;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final ThreadLocal<ReportWriter> CONSOLE = ThreadLocal.withInitial(() -> new ReportWriter((Appendable) null, ReportFormat.TEXT));
+
+    private final Appendable sink;  // null means whatever System.out is at flush time.
+    private final ReportFormat format;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private boolean rowStarted;  // Whether the current CSV row already has a cell.
+
+    // Constructor initializes a writer that renders to the given Appendable (a Writer, StringBuilder, PrintStream, ...).
+    public ReportWriter(Appendable sink, ReportFormat format) {
+        this.sink = sink;
+        this.format = format;
+    }
+
+    // Constructor for byte sinks; text is encoded as UTF-8.
+    public ReportWriter(OutputStream sink, ReportFormat format) {
+        this(new OutputStreamWriter(sink, java.nio.charset.StandardCharsets.UTF_8), format);
+    }
+
+    // Method used by the print* methods: renders a report through this thread's console writer and flushes it.
+    static void printToConsole(Consumer<ReportWriter> report) {
+        ReportWriter out = CONSOLE.get();
+        report.accept(out);
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public ReportFormat getFormat() {
+        return format;
+    }
+
+    // Reports
+
+    public ReportWriter activityDetails(Activity activity) {
+        if (format == ReportFormat.CSV) {
+            header("Activity Name", "Description", "Cost", "Capacity", "Current Count");
+            activityColumns(activity);
+            endRow();
+            return this;
+        }
+        activityText(activity);
+        return this;
+    }
+
+    public ReportWriter itinerary(Destination destination) {
+        if (format == ReportFormat.CSV) {
+            header("Destination Name", "Activity Name", "Description", "Cost", "Capacity", "Current Count");
+            for (Activity activity : destination.getActivities()) {
+                field(destination.getName());
+                activityColumns(activity);
+                endRow();
+            }
+            return this;
+        }
+        line("Destination Name: ", destination.getName());
+        line("Activities:");
+        for (Activity activity : destination.getActivities()) {
+            activityText(activity);
+        }
+        return this;
+    }
+
+    public ReportWriter passengerList(TravelPackage travelPackage) {
+        List<Passenger> passengers = travelPackage.getPassengers();
+        if (format == ReportFormat.CSV) {
+            header("Travel Package Name", "Passenger Capacity", "Name", "Passenger Number");
+            for (Passenger passenger : passengers) {
+                field(travelPackage.getName());
+                field(travelPackage.getCapacity());
+                field(passenger.getName());
+                field(passenger.getPassengerNumber());
+                endRow();
+            }
+            return this;
+        }
+        line("Travel Package Name: ", travelPackage.getName());
+        append("Passenger Capacity: ").append(travelPackage.getCapacity()).newLine();
+        append("Number of Passengers: ").append(passengers.size()).newLine();
+        for (Passenger passenger : passengers) {
+            append("Name: ").append(passenger.getName())
+                    .append(", Passenger Number: ").append(passenger.getPassengerNumber()).newLine();
+        }
+        return this;
+    }
+
+    public ReportWriter availableActivities(TravelPackage travelPackage) {
+        if (format == ReportFormat.CSV) {
+            header("Destination", "Activity Name", "Description", "Cost", "Capacity", "Current Count", "Spaces Available");
+        }
+        for (Activity activity : travelPackage.getAvailableActivities()) {
+            Destination destination = travelPackage.getDestinationOf(activity);
+            int spaces = activity.getCapacity() - activity.getCurrentCount();
+            if (format == ReportFormat.CSV) {
+                field(destination.getName());
+                activityColumns(activity);
+                field(spaces);
+                endRow();
+            } else {
+                line("Destination: ", destination.getName());
+                activityText(activity);
+                append("Spaces Available: ").append(spaces).newLine();
+            }
+        }
+        return this;
+    }
+
+    // Passenger details include one line per booking, read from the passenger's own index rather than the itinerary.
+    public ReportWriter passengerDetails(Passenger passenger) {
+        Wallet wallet = passenger.getWallet();
+        List<Booking> bookings = passenger.getBookings();
+        if (format == ReportFormat.CSV) {
+            header("Name", "Passenger Number", "Balance", "Activity", "Destination", "Price Paid");
+            int rows = Math.max(1, bookings.size());
+            for (int i = 0; i < rows; i++) {
+                field(passenger.getName());
+                field(passenger.getPassengerNumber());
+                if (wallet != null) {
+                    field(wallet.getBalance());
+                } else {
+                    field("");
+                }
+                if (i < bookings.size()) {
+                    Booking booking = bookings.get(i);
+                    field(booking.getActivity().getName());
+                    field(booking.getDestination() == null ? "" : booking.getDestination().getName());
+                    field(booking.getPricePaid());
+                } else {
+                    field("");
+                    field("");
+                    field("");
+                }
+                endRow();
+            }
+            return this;
+        }
+        line("Name: ", passenger.getName());
+        line("Passenger Number: ", passenger.getPassengerNumber());
+        if (wallet != null) {
+            append("Balance: ").append(wallet.getBalance()).newLine();
+        }
+        for (Booking booking : bookings) {
+            append("Booked: ").append(booking.getActivity().getName());
+            if (booking.getDestination() != null) {
+                append(", Destination: ").append(booking.getDestination().getName());
+            }
+            append(", Price Paid: ").append(booking.getPricePaid()).newLine();
+        }
+        return this;
+    }
+
+    private void activityText(Activity activity) {
+        line("Activity Name: ", activity.getName());
+        line("Description: ", activity.getDescription());
+        append("Cost: ").append(activity.getCost()).newLine();
+        append("Capacity: ").append(activity.getCapacity()).newLine();
+        append("Current Count: ").append(activity.getCurrentCount()).newLine();
+    }
+
+    private void activityColumns(Activity activity) {
+        field(activity.getName());
+        field(activity.getDescription());
+        field(activity.getCost());
+        field(activity.getCapacity());
+        field(activity.getCurrentCount());
+    }
+
+    // CSV cells
+
+    private void header(String... columns) {
+        for (String column : columns) {
+            field(column);
+        }
+        endRow();
+    }
+
+    private void field(CharSequence value) {
+        separator();
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            append(value);
+            return;
+        }
+        append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                append('"');
+            }
+            append(c);
+        }
+        append('"');
+    }
+
+    private void field(long value) {
+        separator();
+        append(value);
+    }
+
+    private void field(double value) {
+        separator();
+        append(value);
+    }
+
+    private void separator() {
+        if (rowStarted) {
+            append(',');
+        }
+        rowStarted = true;
+    }
+
+    private void endRow() {
+        rowStarted = false;
+        newLine();
+    }
+
+    // Low-level output
+
+    private void line(CharSequence label, CharSequence value) {
+        append(label).append(value).newLine();
+    }
+
+    private void line(CharSequence text) {
+        append(text).newLine();
+    }
+
+    public ReportWriter newLine() {
+        return append(LINE_SEPARATOR);
+    }
+
+    public ReportWriter append(CharSequence text) {
+        if (text == null) {
+            text = "null";
+        }
+        int length = text.length();
+        int offset = 0;
+        while (offset < length) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int count = Math.min(length - offset, buffer.length - position);
+            if (text instanceof String) {
+                ((String) text).getChars(offset, offset + count, buffer, position);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[position + i] = text.charAt(offset + i);
+                }
+            }
+            position += count;
+            offset += count;
+        }
+        return this;
+    }
+
+    public ReportWriter append(char c) {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = c;
+        return this;
+    }
+
+    // Writes the decimal digits of value straight into the buffer.
+    public ReportWriter append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        if (position + 20 > buffer.length) {
+            drain();
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int end = position + digitCount(value);
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        position = end;
+        return this;
+    }
+
+    // Formats like Double.toString for whole-cent amounts (100.0, 12.5, 0.25) without allocating;
+    // other values fall back to Double.toString, as do amounts from 1e7 up, which it writes as 1.0E7.
+    public ReportWriter append(double value) {
+        double cents = Math.rint(value * 100);
+        if (Math.abs(value) >= 1e7 || cents / 100 != value || (value == 0 && 1 / value < 0)) {
+            return append(Double.toString(value));
+        }
+        long minorUnits = (long) cents;
+        if (minorUnits < 0) {
+            append('-');
+            minorUnits = -minorUnits;
+        }
+        append(minorUnits / 100).append('.');
+        long fraction = minorUnits % 100;
+        append((char) ('0' + fraction / 10));
+        if (fraction % 10 != 0) {
+            append((char) ('0' + fraction % 10));
+        }
+        return this;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    // Method to hand everything buffered so far to the sink and flush it.
+    @Override
+    public void flush() throws IOException {
+        write();
+        Appendable target = target();
+        if (target instanceof Flushable) {
+            ((Flushable) target).flush();
+        }
+    }
+
+    private Appendable target() {
+        return sink != null ? sink : System.out;
+    }
+
+    private void drain() {
+        try {
+            write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write() throws IOException {
+        if (position == 0) {
+            return;
+        }
+        Appendable target = target();
+        if (target instanceof Writer) {
+            ((Writer) target).write(buffer, 0, position);
+        } else if (target instanceof PrintStream) {
+            ((PrintStream) target).print(position == buffer.length ? buffer : Arrays.copyOf(buffer, position));
+        } else if (target instanceof StringBuilder) {
+            ((StringBuilder) target).append(buffer, 0, position);
+        } else {
+            target.append(java.nio.CharBuffer.wrap(buffer, 0, position));
+        }
+        position = 0;
+    }
+}
+
+// AvailabilityOrder selects how TravelPackage.getAvailableActivities sorts its result.
+enum AvailabilityOrder {
+    ITINERARY,      // Destination order, then the order activities were added.
+    MOST_SPACES,    // Most remaining spaces first.
+    LOWEST_COST     // Cheapest first.
+}
+
+// AvailableActivityIndex tracks which of a package's activities still have spaces.
+// The package feeds it every seat change in its itinerary, so availability is kept up to date rather than scanned for.
+class AvailableActivityIndex {
+    private final Map<Destination, Long> destinationOrder = new IdentityHashMap<>();
+    private final Map<Activity, Long> activityKeys = new ConcurrentHashMap<>();  // Itinerary position of each activity.
+    private final Map<Activity, Destination> activityDestinations = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Activity> available = new ConcurrentSkipListMap<>();
+    private long nextDestination;
+    private long nextActivity;
+
+    // Method to place a destination after those already in the index; returns false if it is already there.
+    public synchronized boolean addDestination(Destination destination) {
+        if (destinationOrder.containsKey(destination)) {
+            return false;
+        }
+        destinationOrder.put(destination, nextDestination++);
+        return true;
+    }
+
+    // Method to stop tracking a destination; returns the activities that were dropped with it.
+    public synchronized List<Activity> removeDestination(Destination destination) {
+        List<Activity> removed = new ArrayList<>();
+        if (destinationOrder.remove(destination) == null) {
+            return removed;
+        }
+        for (Activity activity : destination.getActivities()) {
+            if (activityDestinations.get(activity) == destination) {
+                activityDestinations.remove(activity);
+                available.remove(activityKeys.remove(activity));
+                removed.add(activity);
+            }
+        }
+        return removed;
+    }
+
+    // Method to start tracking an activity of an indexed destination; returns false if it is already tracked.
+    public synchronized boolean addActivity(Destination destination, Activity activity) {
+        Long destinationPosition = destinationOrder.get(destination);
+        if (destinationPosition == null || activityKeys.containsKey(activity)) {
+            return false;
+        }
+        activityKeys.put(activity, (destinationPosition << 32) | nextActivity++);
+        activityDestinations.put(activity, destination);
+        seatsChanged(activity);
+        return true;
+    }
+
+    // Called from whichever thread changed the seats. The availability is re-read after each update, so the last
+    // thread to touch an activity always leaves the index matching it.
+    public void seatsChanged(Activity activity) {
+        Long key = activityKeys.get(activity);
+        if (key == null) {
+            return;
+        }
+        boolean isAvailable;
+        do {
+            isAvailable = activity.isAvailable();
+            if (isAvailable) {
+                available.put(key, activity);
+            } else {
+                available.remove(key);
+            }
+        } while (isAvailable != activity.isAvailable());
+    }
+
+    public Destination getDestination(Activity activity) {
+        return activityDestinations.get(activity);
+    }
+
+    public int size() {
+        return available.size();
+    }
+
+    // Method to list the available activities; only activities with spaces are visited.
+    public List<Activity> getAvailableActivities(AvailabilityOrder order) {
+        List<Activity> result = new ArrayList<>(available.values());
+        if (order == AvailabilityOrder.MOST_SPACES) {
+            result.sort(Comparator.comparingInt((Activity activity) -> activity.getCapacity() - activity.getCurrentCount()).reversed());
+        } else if (order == AvailabilityOrder.LOWEST_COST) {
+            result.sort(Comparator.comparingDouble(Activity::getCost));
+        }
+        return result;
+    }
+}
+
+// ActivityColumns keeps a structure-of-arrays copy of a set of activities: capacity, seats taken and cost (in
+// minor units) each live in their own primitive array, indexed by the order activities were added. Scans for
+// availability or a price range walk those arrays sequentially instead of following a pointer per activity, and
+// the loops are simple enough for the JIT to vectorize. The Activity objects stay the source of truth and the
+// way to act on an activity; the columns follow them through listener callbacks.
+//
+// Column writes take no lock, so sign-ups are not serialized by the store: a writer stores the activity's
+// current values and repeats if they changed meanwhile. Growing the arrays is rare and is done under a lock,
+// followed by a refresh of every slot so no write made to the old arrays is lost.
+class ActivityColumns implements ActivityListener, DestinationListener {
+    private final Map<Activity, Integer> slots = new ConcurrentHashMap<>();
+    private volatile Columns columns = new Columns(8);
+    private volatile int size;
+
+    // One generation of the arrays; replaced as a whole when it fills up.
+    private static final class Columns {
+        final Activity[] activities;
+        final int[] capacities;
+        final int[] counts;
+        final long[] costs;
+
+        Columns(int length) {
+            activities = new Activity[length];
+            capacities = new int[length];
+            counts = new int[length];
+            costs = new long[length];
+        }
+    }
+
+    // Method to add an activity to the store; returns its index, or its existing index if it is already there.
+    public synchronized int add(Activity activity) {
+        Integer existing = slots.get(activity);
+        if (existing != null) {
+            return existing;
+        }
+        int index = size;
+        Columns current = columns;
+        if (index == current.activities.length) {
+            Columns grown = new Columns(index * 2);
+            System.arraycopy(current.activities, 0, grown.activities, 0, index);
+            columns = grown;
+            for (int i = 0; i < index; i++) {
+                refresh(grown.activities[i], i);
+            }
+            current = grown;
+        }
+        current.activities[index] = activity;
+        slots.put(activity, index);
+        activity.addListener(this);
+        refresh(activity, index);
+        size = index + 1;  // Publishes the new slot to scans.
+        return index;
+    }
+
+    @Override
+    public void activityAdded(Destination destination, Activity activity) {
+        add(activity);
+    }
+
+    @Override
+    public void seatsChanged(Activity activity) {
+        Integer index = slots.get(activity);
+        if (index != null) {
+            refresh(activity, index);
+        }
+    }
+
+    @Override
+    public void costChanged(Activity activity) {
+        seatsChanged(activity);
+    }
+
+    // Method to copy an activity's values into its slot, repeating until they are stable and land in the current arrays.
+    private void refresh(Activity activity, int index) {
+        while (true) {
+            Columns current = columns;
+            int capacity;
+            int count;
+            double cost;
+            do {
+                capacity = activity.getCapacity();
+                count = activity.getCurrentCount();
+                cost = activity.getCost();
+                current.capacities[index] = capacity;
+                current.counts[index] = count;
+                current.costs[index] = Wallet.toMinorUnits(cost);
+            } while (capacity != activity.getCapacity() || count != activity.getCurrentCount() || cost != activity.getCost());
+            VarHandle.releaseFence();
+            if (columns == current) {
+                return;
+            }
+        }
+    }
+
+    // Getters; index runs from 0 to size() - 1 in the order activities were added.
+    public int size() {
+        return size;
+    }
+
+    public Activity get(int index) {
+        Objects.checkIndex(index, size);
+        return columns.activities[index];
+    }
+
+    // Returns the activity's index, or -1 if it is not in the store.
+    public int indexOf(Activity activity) {
+        Integer index = slots.get(activity);
+        return index == null ? -1 : index;
+    }
+
+    public int getCapacity(int index) {
+        Objects.checkIndex(index, size);
+        VarHandle.acquireFence();
+        return columns.capacities[index];
+    }
+
+    public int getCurrentCount(int index) {
+        Objects.checkIndex(index, size);
+        VarHandle.acquireFence();
+        return columns.counts[index];
+    }
+
+    public long getCost(int index) {
+        Objects.checkIndex(index, size);
+        VarHandle.acquireFence();
+        return columns.costs[index];
+    }
+
+    // Scans. Each reads the size before the arrays, so it never runs past the slots that were fully added.
+
+    public int countAvailable() {
+        int n = size;
+        Columns c = columns;
+        VarHandle.acquireFence();
+        int available = 0;
+        for (int i = 0; i < n; i++) {
+            available += c.counts[i] < c.capacities[i] ? 1 : 0;
+        }
+        return available;
+    }
+
+    // Total seats still free across all activities.
+    public long freeSeats() {
+        int n = size;
+        Columns c = columns;
+        VarHandle.acquireFence();
+        long free = 0;
+        for (int i = 0; i < n; i++) {
+            free += Math.max(0, c.capacities[i] - c.counts[i]);
+        }
+        return free;
+    }
+
+    // Indices of activities that still have a seat.
+    public int[] availableIndices() {
+        return availableInPriceRange(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Indices of activities whose cost, in minor units, lies between minCost and maxCost inclusive.
+    public int[] indicesInPriceRange(long minCost, long maxCost) {
+        int n = size;
+        Columns c = columns;
+        VarHandle.acquireFence();
+        int[] matches = new int[n];
+        int found = 0;
+        for (int i = 0; i < n; i++) {
+            long cost = c.costs[i];
+            matches[found] = i;
+            found += cost >= minCost && cost <= maxCost ? 1 : 0;
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    // Indices of activities with a seat and a cost, in minor units, between minCost and maxCost inclusive.
+    public int[] availableInPriceRange(long minCost, long maxCost) {
+        int n = size;
+        Columns c = columns;
+        VarHandle.acquireFence();
+        int[] matches = new int[n];
+        int found = 0;
+        for (int i = 0; i < n; i++) {
+            long cost = c.costs[i];
+            matches[found] = i;
+            found += c.counts[i] < c.capacities[i] && cost >= minCost && cost <= maxCost ? 1 : 0;
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    // Method to turn scan results back into activities.
+    public List<Activity> activities(int[] indices) {
+        Columns c = columns;
+        List<Activity> result = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            result.add(c.activities[index]);
+        }
+        return result;
+    }
+}
+
+// ActivityQuery describes an activity search: a cost range, a minimum number of free seats, a destination name
+// and keywords that must all appear in the activity's name or description, plus the page of results wanted.
+// Every condition is optional; matches come back cheapest first.
+class ActivityQuery {
+    private double minCost = 0;
+    private double maxCost = Double.MAX_VALUE;
+    private int minFreeSeats = 0;
+    private String destination;  // Lower-cased, or null for any destination.
+    private final Set<String> keywords = new LinkedHashSet<>();
+    private int offset = 0;
+    private int limit = Integer.MAX_VALUE;
+
+    public ActivityQuery costBetween(double minCost, double maxCost) {
+        if (minCost < 0 || maxCost < minCost) {
+            throw new IllegalArgumentException("Invalid cost range");
+        }
+        this.minCost = minCost;
+        this.maxCost = maxCost;
+        return this;
+    }
+
+    public ActivityQuery withFreeSeats(int minFreeSeats) {
+        if (minFreeSeats < 0) {
+            throw new IllegalArgumentException("Free seats cannot be negative");
+        }
+        this.minFreeSeats = minFreeSeats;
+        return this;
+    }
+
+    // Destination names match ignoring case.
+    public ActivityQuery atDestination(String destination) {
+        this.destination = destination == null ? null : destination.toLowerCase(Locale.ROOT);
+        return this;
+    }
+
+    // Each word of the text must appear in the name or description, ignoring case.
+    public ActivityQuery withKeywords(String text) {
+        keywords.addAll(ActivityQueryEngine.tokens(text));
+        return this;
+    }
+
+    public ActivityQuery page(int offset, int limit) {
+        if (offset < 0 || limit <= 0) {
+            throw new IllegalArgumentException("Invalid page");
+        }
+        this.offset = offset;
+        this.limit = limit;
+        return this;
+    }
+
+    // Method to move on to the page after the current one.
+    public ActivityQuery nextPage() {
+        return page(offset + limit, limit);
+    }
+
+    // Getters
+    public double getMinCost() {
+        return minCost;
+    }
+
+    public double getMaxCost() {
+        return maxCost;
+    }
+
+    public int getMinFreeSeats() {
+        return minFreeSeats;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Set<String> getKeywords() {
+        return Collections.unmodifiableSet(keywords);
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
+
+// ActivityPage is one page of search results.
+class ActivityPage {
+    private final List<Activity> activities;
+    private final int offset;
+    private final boolean more;
+
+    ActivityPage(List<Activity> activities, int offset, boolean more) {
+        this.activities = Collections.unmodifiableList(activities);
+        this.offset = offset;
+        this.more = more;
+    }
+
+    public List<Activity> getActivities() {
+        return activities;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    // Whether at least one more match follows this page.
+    public boolean hasMore() {
+        return more;
+    }
+}
+
+// ActivityQueryEngine keeps secondary indexes over activities so searches need not walk every destination:
+// a sorted index on cost, an inverted index from each word of an activity's name and description to the
+// activities containing it, and a hash index on destination name. Free seats change on every sign-up, so they
+// are checked on the candidates rather than indexed.
+//
+// A search drives from the most selective index it can: the shortest word or destination posting list, or else
+// the cost range, which already yields activities in cost order. Every other condition is checked against the
+// activity's index entry. The indexes follow activity changes through listener callbacks; like
+// AvailableActivityIndex, updates are serialized on the engine while searches read the concurrent maps without
+// locking. While an activity is re-indexed it briefly has two entries, and searches skip the stale one.
+class ActivityQueryEngine implements BookingListener, ActivityListener {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Comparator<Entry> BY_COST = ActivityQueryEngine::compareByCost;
+
+    private final Map<Activity, Entry> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> byCost = new ConcurrentSkipListSet<>(BY_COST);
+    private final Map<String, Set<Entry>> byToken = new ConcurrentHashMap<>();
+    private final Map<String, Set<Entry>> byDestination = new ConcurrentHashMap<>();
+    private long nextSequence;  // Breaks ties between equal costs in the order activities were indexed.
+    private long nextId;  // Tells apart the old and new entries of an activity being re-indexed.
+
+    // Entry is what the indexes hold for one activity; an update replaces it rather than changing it.
+    private static final class Entry {
+        final Activity activity;
+        final Destination destination;
+        final String destinationKey;
+        final double cost;
+        final Set<String> tokens;
+        final long sequence;
+        final long id;
+
+        Entry(Activity activity, Destination destination, long sequence, long id) {
+            this.activity = activity;
+            this.destination = destination;
+            this.destinationKey = destination.getName().toLowerCase(Locale.ROOT);
+            this.cost = activity.getCost();
+            this.tokens = tokens(activity.getName() + " " + activity.getDescription());
+            this.sequence = sequence;
+            this.id = id;
+        }
+
+        // Sentinel used to bound cost range scans.
+        Entry(double cost, long bound) {
+            this.activity = null;
+            this.destination = null;
+            this.destinationKey = null;
+            this.cost = cost;
+            this.tokens = Set.of();
+            this.sequence = bound;
+            this.id = bound;
+        }
+    }
+
+    // Method to index an activity offered at a destination; returns false if it is already indexed.
+    public synchronized boolean add(Destination destination, Activity activity) {
+        if (entries.containsKey(activity)) {
+            return false;
+        }
+        index(new Entry(activity, destination, nextSequence++, nextId++));
+        activity.addListener(this);
+        return true;
+    }
+
+    // Method to stop indexing an activity; returns false if it was not indexed.
+    public synchronized boolean remove(Activity activity) {
+        Entry entry = entries.get(activity);
+        if (entry == null) {
+            return false;
+        }
+        unindex(entry);
+        activity.removeListener(this);
+        return true;
+    }
+
+    // Method to stop indexing every activity that was indexed under the destination.
+    public synchronized void removeDestination(Destination destination) {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (entry.destination == destination) {
+                remove(entry.activity);
+            }
+        }
+    }
+
+    public boolean contains(Activity activity) {
+        return entries.containsKey(activity);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Method to run a query, returning the requested page of matches in ascending cost order.
+    public ActivityPage search(ActivityQuery query) {
+        Set<Entry> smallest = null;
+        if (query.getDestination() != null) {
+            smallest = byDestination.getOrDefault(query.getDestination(), Set.of());
+        }
+        for (String keyword : query.getKeywords()) {
+            Set<Entry> postings = byToken.getOrDefault(keyword, Set.of());
+            if (smallest == null || postings.size() < smallest.size()) {
+                smallest = postings;
+            }
+        }
+        // A word that most activities share is a poor place to start when the cost range can narrow things instead.
+        boolean costBounded = query.getMinCost() > 0 || query.getMaxCost() < Double.MAX_VALUE;
+        if (smallest != null && costBounded && smallest.size() > entries.size() / 4) {
+            smallest = null;
+        }
+
+        Iterable<Entry> candidates;
+        if (smallest == null) {
+            candidates = byCost.subSet(new Entry(query.getMinCost(), Long.MIN_VALUE), true,
+                    new Entry(query.getMaxCost(), Long.MAX_VALUE), true);
+        } else {
+            // Filter before sorting, so only the matches are sorted.
+            List<Entry> matching = new ArrayList<>();
+            for (Entry entry : smallest) {
+                if (matches(entry, query)) {
+                    matching.add(entry);
+                }
+            }
+            matching.sort(BY_COST);
+            candidates = matching;
+        }
+
+        List<Activity> page = new ArrayList<>();
+        int skipped = 0;
+        for (Entry entry : candidates) {
+            if (entries.get(entry.activity) != entry || !matches(entry, query)) {
+                continue;  // Filtered out, or an old entry of an activity being re-indexed.
+            }
+            if (skipped < query.getOffset()) {
+                skipped++;
+            } else if (page.size() < query.getLimit()) {
+                page.add(entry.activity);
+            } else {
+                return new ActivityPage(page, query.getOffset(), true);
+            }
+        }
+        return new ActivityPage(page, query.getOffset(), false);
+    }
+
+    // Cost order, then indexing order; the id only separates two entries of one activity during a re-index.
+    private static int compareByCost(Entry a, Entry b) {
+        int byCost = Double.compare(a.cost, b.cost);
+        if (byCost != 0) {
+            return byCost;
+        }
+        int bySequence = Long.compare(a.sequence, b.sequence);
+        return bySequence != 0 ? bySequence : Long.compare(a.id, b.id);
+    }
+
+    private static boolean matches(Entry entry, ActivityQuery query) {
+        Activity activity = entry.activity;
+        return entry.cost >= query.getMinCost() && entry.cost <= query.getMaxCost() &&
+                (query.getDestination() == null || query.getDestination().equals(entry.destinationKey)) &&
+                entry.tokens.containsAll(query.getKeywords()) &&
+                activity.getCapacity() - activity.getCurrentCount() >= query.getMinFreeSeats();
+    }
+
+    // Method to split text into lower-case words, the keys of the token index.
+    static Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text != null) {
+            for (String token : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    // The new entry goes in before the old one comes out, so searches find the activity throughout an update;
+    // they skip whichever entry is not the current one.
+    private void index(Entry entry) {
+        Entry previous = entries.put(entry.activity, entry);
+        byCost.add(entry);
+        for (String token : entry.tokens) {
+            byToken.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(entry);
+        }
+        byDestination.computeIfAbsent(entry.destinationKey, key -> ConcurrentHashMap.newKeySet()).add(entry);
+        if (previous != null) {
+            removeEntries(previous);
+        }
+    }
+
+    private void unindex(Entry entry) {
+        entries.remove(entry.activity, entry);
+        removeEntries(entry);
+    }
+
+    private void removeEntries(Entry entry) {
+        byCost.remove(entry);
+        for (String token : entry.tokens) {
+            removePosting(byToken, token, entry);
+        }
+        removePosting(byDestination, entry.destinationKey, entry);
+    }
+
+    private static void removePosting(Map<String, Set<Entry>> index, String key, Entry entry) {
+        index.computeIfPresent(key, (k, postings) -> {
+            postings.remove(entry);
+            return postings.isEmpty() ? null : postings;
+        });
+    }
+
+    // Method to re-index an activity after its cost, name or description changed, keeping its place among equals.
+    private synchronized void reindex(Activity activity) {
+        Entry entry = entries.get(activity);
+        if (entry != null) {
+            index(new Entry(activity, entry.destination, entry.sequence, nextId++));
+        }
+    }
+
+    @Override
+    public void costChanged(Activity activity) {
+        reindex(activity);
+    }
+
+    @Override
+    public void detailsChanged(Activity activity) {
+        reindex(activity);
+    }
+
+    @Override
+    public void activityAdded(TravelPackage travelPackage, Destination destination, Activity activity) {
+        add(destination, activity);
+    }
+
+    @Override
+    public void destinationRemoved(TravelPackage travelPackage, Destination destination) {
+        removeDestination(destination);
+    }
+}
+
+// BookingOperation names the operations whose latency BookingMetrics records.
+enum BookingOperation {
+    SIGN_UP,
+    ADD_PASSENGER,
+    CANCEL
+}
+
+// LatencyHistogram counts values, in nanoseconds, in log-linear buckets in the style of HdrHistogram: each power
+// of two is split into 8 buckets, so any recorded value is known to within 12.5%, in a fixed 496 buckets covering
+// the whole long range. Buckets are LongAdders, so concurrent recording does not contend on one counter.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        long clamped = Math.max(0, value);
+        buckets[bucketOf(clamped)].increment();
+        total.add(clamped);
+        max.accumulate(clamped);
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    // Method to copy the current counts; recording can go on while the copy is taken.
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new HistogramSnapshot(counts, total.sum(), max.get());
+    }
+
+    // Values below 8 get a bucket each; above that, the top three bits after the leading one pick the sub-bucket.
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (1L << magnitude) | ((long) (bucket % SUB_BUCKETS) << (magnitude - SUB_BUCKET_BITS));
+    }
+
+    static long highestValue(int bucket) {
+        return bucket + 1 == BUCKETS ? Long.MAX_VALUE : lowestValue(bucket + 1) - 1;
+    }
+}
+
+// HistogramSnapshot is a copy of a LatencyHistogram's counts at one moment.
+class HistogramSnapshot {
+    private final long[] counts;
+    private final long count;
+    private final long total;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long total, long max) {
+        this.counts = counts;
+        this.count = Arrays.stream(counts).sum();
+        this.total = total;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    // The value below which the given percentage of recorded values fall, to within the bucket width.
+    public long getPercentile(double percentile) {
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(max, LatencyHistogram.highestValue(i));
+            }
+        }
+        return max;
+    }
+}
+
+// BookingMetrics instruments the booking hot paths: sign-up outcomes per tier and status, passenger additions,
+// cancellations and waitlist promotions as LongAdder counters; latency histograms per operation and tier; and
+// gauges, such as the capacity utilization of watched activities and destinations, read when a snapshot is taken.
+// Recording is off until enabled. When off, each instrumented call costs one volatile read; when on, a timed
+// operation adds two System.nanoTime calls and a few uncontended LongAdder increments.
+final class BookingMetrics {
+    private static volatile boolean enabled;
+
+    private static final LongAdder[][] signUps = adders(PassengerTier.values().length, SignupStatus.values().length);
+    private static final LongAdder[] passengersAdded = adders(1, PassengerTier.values().length)[0];
+    private static final LongAdder[] passengersRejected = adders(1, PassengerTier.values().length)[0];
+    private static final LongAdder[] cancellations = adders(1, PassengerTier.values().length)[0];
+    private static final LongAdder[] promotions = adders(1, PassengerTier.values().length)[0];
+    private static final LatencyHistogram[][] latencies = new LatencyHistogram[BookingOperation.values().length][PassengerTier.values().length];
+    private static final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    private static final Map<TravelPackage, PackageGauges> watched = new ConcurrentHashMap<>();
+
+    static {
+        for (LatencyHistogram[] byTier : latencies) {
+            for (int i = 0; i < byTier.length; i++) {
+                byTier[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    private BookingMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        BookingMetrics.enabled = enabled;
+    }
+
+    // Method to zero every counter and histogram; gauges stay registered.
+    public static void reset() {
+        for (LongAdder[] row : signUps) {
+            for (LongAdder adder : row) {
+                adder.reset();
+            }
+        }
+        for (LongAdder[] row : List.of(passengersAdded, passengersRejected, cancellations, promotions)) {
+            for (LongAdder adder : row) {
+                adder.reset();
+            }
+        }
+        for (LatencyHistogram[] byTier : latencies) {
+            for (LatencyHistogram histogram : byTier) {
+                histogram.reset();
+            }
+        }
+    }
+
+    // Recording, called from the instrumented operations.
+
+    // Returns the start time for a timed operation, or 0 when recording is off.
+    static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static void recordSignUp(PassengerTier tier, SignupStatus status, long start) {
+        if (enabled) {
+            signUps[tier.ordinal()][status.ordinal()].increment();
+            record(BookingOperation.SIGN_UP, tier, start);
+        }
+    }
+
+    static void countSignUp(PassengerTier tier, SignupStatus status) {
+        if (enabled) {
+            signUps[tier.ordinal()][status.ordinal()].increment();
+        }
+    }
+
+    static void recordAddPassenger(PassengerTier tier, boolean added, long start) {
+        if (enabled) {
+            (added ? passengersAdded : passengersRejected)[tier.ordinal()].increment();
+            record(BookingOperation.ADD_PASSENGER, tier, start);
+        }
+    }
+
+    static void recordCancel(PassengerTier tier, long start) {
+        if (enabled) {
+            cancellations[tier.ordinal()].increment();
+            record(BookingOperation.CANCEL, tier, start);
+        }
+    }
+
+    static void countPromotion(PassengerTier tier) {
+        if (enabled) {
+            promotions[tier.ordinal()].increment();
+        }
+    }
+
+    // A start of 0 means recording was off when the operation began.
+    private static void record(BookingOperation operation, PassengerTier tier, long start) {
+        if (start != 0) {
+            latencies[operation.ordinal()][tier.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    // Gauges
+
+    public static void registerGauge(String name, DoubleSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public static void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    // Registers a gauge under name, or under the first free "name #2", "name #3"...; returns the name used.
+    private static String registerUnique(String name, DoubleSupplier gauge) {
+        String candidate = name;
+        for (int n = 2; gauges.putIfAbsent(candidate, gauge) != null; n++) {
+            candidate = name + " #" + n;
+        }
+        return candidate;
+    }
+
+    // Methods to publish capacity utilization (seats taken / capacity) for a package: its passengers, and every
+    // destination and activity of its itinerary. The gauges follow the itinerary until unwatch, so those of a
+    // removed destination go with it. Names start with the package name and never replace another gauge.
+    public static void watch(TravelPackage travelPackage) {
+        PackageGauges watcher = new PackageGauges(travelPackage);
+        if (watched.putIfAbsent(travelPackage, watcher) == null) {
+            watcher.start();
+        }
+    }
+
+    public static void unwatch(TravelPackage travelPackage) {
+        PackageGauges watcher = watched.remove(travelPackage);
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    // PackageGauges keeps the gauges of one watched package in step with its itinerary.
+    private static final class PackageGauges implements BookingListener {
+        private final TravelPackage travelPackage;
+        private final String prefix;
+        private final Map<Object, String> names = new IdentityHashMap<>();  // Gauge of the package and of each destination and activity.
+
+        PackageGauges(TravelPackage travelPackage) {
+            this.travelPackage = travelPackage;
+            this.prefix = travelPackage.getName() + ": ";
+        }
+
+        synchronized void start() {
+            travelPackage.addBookingListener(this);
+            names.put(travelPackage, registerUnique(prefix + "passengers",
+                    () -> utilization(travelPackage.getPassengers().size(), travelPackage.getCapacity())));
+            for (Destination destination : travelPackage.getItinerary()) {
+                destinationAdded(travelPackage, destination);
+            }
+        }
+
+        synchronized void stop() {
+            travelPackage.removeBookingListener(this);
+            for (String name : names.values()) {
+                gauges.remove(name);
+            }
+            names.clear();
+        }
+
+        @Override
+        public synchronized void destinationAdded(TravelPackage travelPackage, Destination destination) {
+            if (names.containsKey(destination)) {
+                return;
+            }
+            names.put(destination, registerUnique(prefix + "utilization " + destination.getName(), () -> {
+                long taken = 0;
+                long capacity = 0;
+                for (Activity activity : destination.getActivities()) {
+                    taken += activity.getCurrentCount();
+                    capacity += activity.getCapacity();
+                }
+                return utilization(taken, capacity);
+            }));
+            for (Activity activity : destination.getActivities()) {
+                activityAdded(travelPackage, destination, activity);
+            }
+        }
+
+        @Override
+        public synchronized void activityAdded(TravelPackage travelPackage, Destination destination, Activity activity) {
+            if (!names.containsKey(activity)) {
+                names.put(activity, registerUnique(prefix + "utilization " + destination.getName() + " / " + activity.getName(),
+                        () -> utilization(activity.getCurrentCount(), activity.getCapacity())));
+            }
+        }
+
+        @Override
+        public synchronized void destinationRemoved(TravelPackage travelPackage, Destination destination) {
+            release(destination);
+            for (Activity activity : destination.getActivities()) {
+                release(activity);
+            }
+        }
+
+        private void release(Object owner) {
+            String name = names.remove(owner);
+            if (name != null) {
+                gauges.remove(name);
+            }
+        }
+    }
+
+    private static double utilization(long used, long capacity) {
+        return capacity == 0 ? 0 : (double) used / capacity;
+    }
+
+    // Snapshot
+
+    public static MetricsSnapshot snapshot() {
+        int tiers = PassengerTier.values().length;
+        long[][] signUpCounts = new long[tiers][SignupStatus.values().length];
+        long[][] tierCounts = new long[4][tiers];
+        HistogramSnapshot[][] histograms = new HistogramSnapshot[BookingOperation.values().length][tiers];
+        for (int t = 0; t < tiers; t++) {
+            for (int s = 0; s < signUpCounts[t].length; s++) {
+                signUpCounts[t][s] = signUps[t][s].sum();
+            }
+            tierCounts[0][t] = passengersAdded[t].sum();
+            tierCounts[1][t] = passengersRejected[t].sum();
+            tierCounts[2][t] = cancellations[t].sum();
+            tierCounts[3][t] = promotions[t].sum();
+            for (int o = 0; o < histograms.length; o++) {
+                histograms[o][t] = latencies[o][t].snapshot();
+            }
+        }
+        Map<String, Double> gaugeValues = new LinkedHashMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.getAsDouble()));
+        return new MetricsSnapshot(signUpCounts, tierCounts, histograms, gaugeValues);
+    }
+
+    private static LongAdder[][] adders(int rows, int columns) {
+        LongAdder[][] adders = new LongAdder[rows][columns];
+        for (LongAdder[] row : adders) {
+            for (int i = 0; i < columns; i++) {
+                row[i] = new LongAdder();
+            }
+        }
+        return adders;
+    }
+}
+
+// MetricsSnapshot holds the values of every booking metric at one moment.
+class MetricsSnapshot {
+    private final long[][] signUps;      // [tier][status]
+    private final long[][] tierCounts;   // [added, rejected, cancelled, promoted][tier]
+    private final HistogramSnapshot[][] latencies;  // [operation][tier]
+    private final Map<String, Double> gauges;
+
+    MetricsSnapshot(long[][] signUps, long[][] tierCounts, HistogramSnapshot[][] latencies, Map<String, Double> gauges) {
+        this.signUps = signUps;
+        this.tierCounts = tierCounts;
+        this.latencies = latencies;
+        this.gauges = Collections.unmodifiableMap(gauges);
+    }
+
+    public long getSignUps(PassengerTier tier, SignupStatus status) {
+        return signUps[tier.ordinal()][status.ordinal()];
+    }
+
+    // Sign-ups with the given outcome across all tiers.
+    public long getSignUps(SignupStatus status) {
+        long sum = 0;
+        for (long[] byStatus : signUps) {
+            sum += byStatus[status.ordinal()];
+        }
+        return sum;
+    }
+
+    public long getPassengersAdded(PassengerTier tier) {
+        return tierCounts[0][tier.ordinal()];
+    }
+
+    public long getPassengersRejected(PassengerTier tier) {
+        return tierCounts[1][tier.ordinal()];
+    }
+
+    public long getCancellations(PassengerTier tier) {
+        return tierCounts[2][tier.ordinal()];
+    }
+
+    public long getPromotions(PassengerTier tier) {
+        return tierCounts[3][tier.ordinal()];
+    }
+
+    public HistogramSnapshot getLatency(BookingOperation operation, PassengerTier tier) {
+        return latencies[operation.ordinal()][tier.ordinal()];
+    }
+
+    public Map<String, Double> getGauges() {
+        return gauges;
+    }
+
+    // Method to write the metrics as text, one line per non-zero counter, per histogram with data and per gauge.
+    public void dump(Appendable out) throws IOException {
+        String n = System.lineSeparator();
+        out.append("Sign-ups:").append(n);
+        for (PassengerTier tier : PassengerTier.values()) {
+            for (SignupStatus status : SignupStatus.values()) {
+                if (getSignUps(tier, status) != 0) {
+                    out.append("  ").append(tier.name()).append(' ').append(status.name()).append(": ")
+                            .append(Long.toString(getSignUps(tier, status))).append(n);
+                }
+            }
+        }
+        out.append("Passengers:").append(n);
+        String[] labels = {"added", "rejected", "cancelled", "promoted"};
+        for (PassengerTier tier : PassengerTier.values()) {
+            for (int i = 0; i < labels.length; i++) {
+                if (tierCounts[i][tier.ordinal()] != 0) {
+                    out.append("  ").append(tier.name()).append(' ').append(labels[i]).append(": ")
+                            .append(Long.toString(tierCounts[i][tier.ordinal()])).append(n);
+                }
+            }
+        }
+        out.append("Latency (ns):").append(n);
+        for (BookingOperation operation : BookingOperation.values()) {
+            for (PassengerTier tier : PassengerTier.values()) {
+                HistogramSnapshot histogram = getLatency(operation, tier);
+                if (histogram.getCount() != 0) {
+                    out.append("  ").append(operation.name()).append(' ').append(tier.name())
+                            .append(": count ").append(Long.toString(histogram.getCount()))
+                            .append(", p50 ").append(Long.toString(histogram.getPercentile(50)))
+                            .append(", p99 ").append(Long.toString(histogram.getPercentile(99)))
+                            .append(", max ").append(Long.toString(histogram.getMax())).append(n);
+                }
+            }
+        }
+        out.append("Gauges:").append(n);
+        for (Map.Entry<String, Double> gauge : gauges.entrySet()) {
+            out.append("  ").append(gauge.getKey()).append(": ").append(String.format(Locale.ROOT, "%.3f", gauge.getValue())).append(n);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        try {
+            dump(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return text.toString();
+    }
+}
+
+// BookingListener is notified of every change to a travel package: its passengers, its itinerary and the
+// sign-ups on its activities. Callbacks run on the thread that made the change, after the change is applied.
+interface BookingListener {
+    default void passengerAdded(TravelPackage travelPackage, Passenger passenger) {
+    }
+
+    default void passengerRemoved(TravelPackage travelPackage, Passenger passenger) {
+    }
+
+    default void destinationAdded(TravelPackage travelPackage, Destination destination) {
+    }
+
+    default void destinationRemoved(TravelPackage travelPackage, Destination destination) {
+    }
+
+    default void activityAdded(TravelPackage travelPackage, Destination destination, Activity activity) {
+    }
+
+    // An activity's cost, capacity, name or description changed.
+    default void activityUpdated(TravelPackage travelPackage, Activity activity) {
+    }
+
+    // amountCharged is what was debited from the passenger's balance, in minor units.
+    default void signedUp(TravelPackage travelPackage, Activity activity, Passenger passenger, long amountCharged) {
+    }
+
+    // amountRefunded is what was returned to the passenger's balance, in minor units.
+    default void cancelled(TravelPackage travelPackage, Activity activity, Passenger passenger, long amountRefunded) {
+    }
+}
+
+// SignupRequest pairs a passenger with the activity they want, for batch sign-up.
+class SignupRequest {
+    private final Passenger passenger;
+    private final Activity activity;
+
+    public SignupRequest(Passenger passenger, Activity activity) {
+        this.passenger = passenger;
+        this.activity = activity;
+    }
+
+    // Getters
+    public Passenger getPassenger() {
+        return passenger;
+    }
+
+    public Activity getActivity() {
+        return activity;
+    }
+}
+
+// SignupStatus is the outcome of one sign-up request.
+enum SignupStatus {
+    CONFIRMED,
+    NOT_IN_PACKAGE,
+    ALREADY_SIGNED_UP,
+    ACTIVITY_FULL,
+    INSUFFICIENT_BALANCE,
+    SCHEDULE_CONFLICT,   // The passenger is already booked on an activity at an overlapping time.
+    ROLLED_BACK          // Would have succeeded, but another request in an all-or-nothing batch failed.
+}
+
+// SignupResult reports what happened to a sign-up request and how much was charged for it.
+class SignupResult {
+    private final SignupRequest request;
+    private final SignupStatus status;
+    private final long amountCharged;  // In minor units; zero unless the request was confirmed.
+
+    public SignupResult(SignupRequest request, SignupStatus status, long amountCharged) {
+        this.request = request;
+        this.status = status;
+        this.amountCharged = amountCharged;
+    }
+
+    public boolean isConfirmed() {
+        return status == SignupStatus.CONFIRMED;
+    }
+
+    // Getters
+    public SignupRequest getRequest() {
+        return request;
+    }
+
+    public SignupStatus getStatus() {
+        return status;
+    }
+
+    public long getAmountCharged() {
+        return amountCharged;
+    }
+}
+
+// ActivitySnapshot is an activity's details at one moment. Seat counts change with every sign-up, so they are
+// read from the live activity instead of being copied in.
+final class ActivitySnapshot {
+    private final Activity activity;
+    private final String name;
+    private final String description;
+    private final double cost;
+
+    ActivitySnapshot(Activity activity) {
+        this.activity = activity;
+        this.name = activity.getName();
+        this.description = activity.getDescription();
+        this.cost = activity.getCost();
+    }
+
+    // Whether the live activity still matches this snapshot, so the snapshot can be reused.
+    boolean isCurrent() {
+        return cost == activity.getCost() && name.equals(activity.getName()) &&
+                Objects.equals(description, activity.getDescription());
+    }
+
+    public boolean isAvailable() {
+        return activity.isAvailable();
+    }
+
+    // Getters
+    public Activity getActivity() {
+        return activity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    // Live seat counts.
+    public int getCapacity() {
+        return activity.getCapacity();
+    }
+
+    public int getCurrentCount() {
+        return activity.getCurrentCount();
+    }
+}
+
+// DestinationSnapshot is a destination and the snapshots of its activities at one moment.
+final class DestinationSnapshot {
+    private final Destination destination;
+    private final String name;
+    private final List<ActivitySnapshot> activities;
+
+    private DestinationSnapshot(Destination destination, List<ActivitySnapshot> activities) {
+        this.destination = destination;
+        this.name = destination.getName();
+        this.activities = activities;
+    }
+
+    // Method to snapshot a destination, reusing the activity snapshots of previous (which may be null) that are
+    // still current; if all of them are, previous itself is returned. Activities are matched by position, which
+    // holds unless some moved; only then is an index of previous built. New ones at the end need neither.
+    static DestinationSnapshot of(Destination destination, DestinationSnapshot previous) {
+        List<Activity> live = destination.getActivities();
+        ActivitySnapshot[] activities = new ActivitySnapshot[live.size()];
+        List<ActivitySnapshot> old = previous == null ? List.of() : previous.activities;
+        boolean unchanged = previous != null && old.size() == activities.length &&
+                Objects.equals(previous.name, destination.getName());
+        Map<Activity, ActivitySnapshot> moved = null;
+        for (int i = 0; i < activities.length; i++) {
+            Activity activity = live.get(i);
+            ActivitySnapshot match = null;
+            if (i < old.size() && old.get(i).getActivity() == activity) {
+                match = old.get(i);
+            } else if (i < old.size() || moved != null) {
+                if (moved == null) {
+                    moved = new IdentityHashMap<>();
+                    for (ActivitySnapshot snapshot : old) {
+                        moved.putIfAbsent(snapshot.getActivity(), snapshot);
+                    }
+                }
+                match = moved.get(activity);
+            }
+            activities[i] = match != null && match.isCurrent() ? match : new ActivitySnapshot(activity);
+            unchanged = unchanged && activities[i] == old.get(i);
+        }
+        return unchanged ? previous : new DestinationSnapshot(destination, Collections.unmodifiableList(Arrays.asList(activities)));
+    }
+
+    // Method to snapshot activities added to the destination since, sharing the others; returns this if there are none.
+    DestinationSnapshot withNewActivities() {
+        List<Activity> live = destination.getActivities();
+        int count = live.size();
+        if (count <= activities.size()) {
+            return this;
+        }
+        ActivitySnapshot[] extended = activities.toArray(new ActivitySnapshot[count]);
+        for (int i = activities.size(); i < count; i++) {
+            extended[i] = new ActivitySnapshot(live.get(i));
+        }
+        return new DestinationSnapshot(destination, Collections.unmodifiableList(Arrays.asList(extended)));
+    }
+
+    // Method to refresh one activity's snapshot, sharing the others; returns this if nothing changed.
+    DestinationSnapshot withActivity(Activity activity) {
+        for (int i = 0; i < activities.size(); i++) {
+            if (activities.get(i).getActivity() == activity && !activities.get(i).isCurrent()) {
+                ActivitySnapshot[] copy = activities.toArray(new ActivitySnapshot[0]);
+                ActivitySnapshot refreshed = new ActivitySnapshot(activity);
+                for (int j = i; j < copy.length; j++) {
+                    if (copy[j].getActivity() == activity) {
+                        copy[j] = refreshed;
+                    }
+                }
+                return new DestinationSnapshot(destination, Collections.unmodifiableList(Arrays.asList(copy)));
+            }
+        }
+        return this;
+    }
+
+    // Getters
+    public Destination getDestination() {
+        return destination;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<ActivitySnapshot> getActivities() {
+        return activities;
+    }
+}
+
+// TravelPackageSnapshot is an immutable, point-in-time view of a travel package. Each update to the package
+// publishes a new snapshot that shares every part the update did not touch with the one before: a seat change
+// copies one destination's activity list and the itinerary list, a new passenger usually copies nothing.
+final class TravelPackageSnapshot {
+    private final long version;
+    private final String name;
+    private final int capacity;
+    private final List<DestinationSnapshot> itinerary;
+    private final PassengerLog passengers;
+
+    TravelPackageSnapshot(String name, int capacity) {
+        this(0, name, capacity, List.of(), PassengerLog.EMPTY);
+    }
+
+    private TravelPackageSnapshot(long version, String name, int capacity, List<DestinationSnapshot> itinerary, PassengerLog passengers) {
+        this.version = version;
+        this.name = name;
+        this.capacity = capacity;
+        this.itinerary = itinerary;
+        this.passengers = passengers;
+    }
+
+    // Updates, each returning a new snapshot with the next version.
+
+    TravelPackageSnapshot withName(String name) {
+        return new TravelPackageSnapshot(version + 1, name, capacity, itinerary, passengers);
+    }
+
+    TravelPackageSnapshot withCapacity(int capacity) {
+        return new TravelPackageSnapshot(version + 1, name, capacity, itinerary, passengers);
+    }
+
+    TravelPackageSnapshot withPassenger(Passenger passenger) {
+        return new TravelPackageSnapshot(version + 1, name, capacity, itinerary, passengers.append(passenger));
+    }
+
+    TravelPackageSnapshot withoutPassenger(Passenger passenger) {
+        return new TravelPackageSnapshot(version + 1, name, capacity, itinerary, passengers.remove(passenger));
+    }
+
+    // Method to follow the live itinerary, re-reading only the changed destination (null if none changed).
+    // Destinations are matched to their previous snapshots by position, which holds for all of them when one is
+    // appended or changed in place; an index of the previous itinerary is built only once a removal shifts them.
+    TravelPackageSnapshot withItinerary(List<Destination> destinations, Destination changed) {
+        Destination[] live = destinations.toArray(new Destination[0]);
+        DestinationSnapshot[] snapshots = new DestinationSnapshot[live.length];
+        DestinationSnapshot rebuilt = null;  // The changed destination's new snapshot, shared if it is listed twice.
+        Map<Destination, DestinationSnapshot> moved = null;
+        boolean unchanged = live.length == itinerary.size();
+        for (int i = 0; i < live.length; i++) {
+            Destination destination = live[i];
+            DestinationSnapshot previous;
+            if (i < itinerary.size() && itinerary.get(i).getDestination() == destination) {
+                previous = itinerary.get(i);
+            } else if (i >= itinerary.size() && moved == null) {
+                previous = null;  // Appended.
+            } else {
+                if (moved == null) {
+                    moved = new IdentityHashMap<>();
+                    for (DestinationSnapshot snapshot : itinerary) {
+                        moved.putIfAbsent(snapshot.getDestination(), snapshot);
+                    }
+                }
+                previous = moved.get(destination);
+            }
+            if (previous == null || destination == changed) {
+                if (rebuilt == null || rebuilt.getDestination() != destination) {
+                    rebuilt = DestinationSnapshot.of(destination, previous);
+                }
+                snapshots[i] = rebuilt;
+            } else {
+                snapshots[i] = previous;
+            }
+            unchanged = unchanged && snapshots[i] == itinerary.get(i);
+        }
+        return unchanged ? this : new TravelPackageSnapshot(version + 1, name, capacity,
+                Collections.unmodifiableList(Arrays.asList(snapshots)), passengers);
+    }
+
+    // Method to add a destination's new activities to its snapshot, without rechecking the others; returns this if
+    // the destination is not in the snapshot yet or has nothing new.
+    TravelPackageSnapshot withNewActivities(Destination destination) {
+        DestinationSnapshot[] snapshots = null;
+        DestinationSnapshot extended = null;
+        for (int i = 0; i < itinerary.size(); i++) {
+            DestinationSnapshot previous = itinerary.get(i);
+            if (previous.getDestination() == destination) {
+                extended = extended != null ? extended : previous.withNewActivities();
+                if (extended != previous) {
+                    if (snapshots == null) {
+                        snapshots = itinerary.toArray(new DestinationSnapshot[0]);
+                    }
+                    snapshots[i] = extended;
+                }
+            }
+        }
+        if (snapshots == null) {
+            return this;
+        }
+        return new TravelPackageSnapshot(version + 1, name, capacity, Collections.unmodifiableList(Arrays.asList(snapshots)), passengers);
+    }
+
+    // Method to refresh one activity of a destination in the itinerary; returns this if nothing changed.
+    TravelPackageSnapshot withActivity(Destination destination, Activity activity) {
+        DestinationSnapshot[] snapshots = null;
+        for (int i = 0; i < itinerary.size(); i++) {
+            DestinationSnapshot previous = itinerary.get(i);
+            if (previous.getDestination() == destination) {
+                DestinationSnapshot refreshed = previous.withActivity(activity);
+                if (refreshed != previous) {
+                    if (snapshots == null) {
+                        snapshots = itinerary.toArray(new DestinationSnapshot[0]);
+                    }
+                    snapshots[i] = refreshed;
+                }
+            }
+        }
+        if (snapshots == null) {
+            return this;
+        }
+        return new TravelPackageSnapshot(version + 1, name, capacity, Collections.unmodifiableList(Arrays.asList(snapshots)), passengers);
+    }
+
+    // Getters
+    // Increases by one with every published update.
+    public long getVersion() {
+        return version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public List<DestinationSnapshot> getItinerary() {
+        return itinerary;
+    }
+
+    // Passengers in the order they were added.
+    public List<Passenger> getPassengers() {
+        return passengers.asList();
+    }
+
+    public int getPassengerCount() {
+        return passengers.size;
+    }
+
+    // Activities of the itinerary that have spaces now, in itinerary order.
+    public List<ActivitySnapshot> getAvailableActivities() {
+        List<ActivitySnapshot> available = new ArrayList<>();
+        Set<Activity> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DestinationSnapshot destination : itinerary) {
+            for (ActivitySnapshot activity : destination.getActivities()) {
+                if (activity.isAvailable() && seen.add(activity.getActivity())) {
+                    available.add(activity);
+                }
+            }
+        }
+        return available;
+    }
+
+    // PassengerLog is an append-friendly immutable list. Snapshots share one backing array and each reads only its
+    // own prefix of it, so an append writes the next free slot and copies only when the array is full. A removal
+    // always copies, so an array is only ever appended to through the latest snapshot. Passengers are added and
+    // removed by one thread at a time, as TravelPackage requires.
+    private static final class PassengerLog {
+        static final PassengerLog EMPTY = new PassengerLog(new Passenger[0], 0);
+
+        final Passenger[] passengers;
+        final int size;
+
+        PassengerLog(Passenger[] passengers, int size) {
+            this.passengers = passengers;
+            this.size = size;
+        }
+
+        // A slot already holding this passenger is one a failed publish attempt wrote, so it may be reused.
+        PassengerLog append(Passenger passenger) {
+            if (size < passengers.length && (passengers[size] == null || passengers[size] == passenger)) {
+                passengers[size] = passenger;
+                return new PassengerLog(passengers, size + 1);
+            }
+            Passenger[] grown = Arrays.copyOf(passengers, Math.max(8, size * 2));
+            Arrays.fill(grown, size, grown.length, null);
+            grown[size] = passenger;
+            return new PassengerLog(grown, size + 1);
+        }
+
+        PassengerLog remove(Passenger passenger) {
+            Passenger[] copy = new Passenger[passengers.length];
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (passengers[i] != passenger) {
+                    copy[kept++] = passengers[i];
+                }
+            }
+            return new PassengerLog(copy, kept);
+        }
+
+        List<Passenger> asList() {
+            return Collections.unmodifiableList(Arrays.asList(passengers).subList(0, size));
+        }
+    }
+}
+
+// TravelPackage class represents a travel package.
+class TravelPackage {
+    private String name;
+    private int capacity;
+    private List<Destination> itinerary;   // Copy-on-write list of destinations in the travel package itinerary.
+    private PassengerRoster passengers;   // Passengers in the travel package, indexed by passenger number.
+    private final IdRegistry<String> memberIds = new IdRegistry<>();  // Numbers of the passengers, released on removal.
+    private final AvailableActivityIndex availableActivities = new AvailableActivityIndex();
+    private final ItineraryListener itineraryListener = new ItineraryListener();
+    private final List<BookingListener> bookingListeners = new CopyOnWriteArrayList<>();
+    private final AtomicReference<TravelPackageSnapshot> snapshot;  // Replaced, never changed, on every update.
+    private ActivityQueryEngine queryEngine;  // Created on first request, see getQueryEngine.
+
+
+    // Constructor initializes the travel package with its name, capacity, an empty itinerary and an empty passenger roster.
+    public TravelPackage(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        this.itinerary = new CopyOnWriteArrayList<>();
+        this.passengers = new PassengerRoster();
+        this.snapshot = new AtomicReference<>(new TravelPackageSnapshot(name, capacity));
+    }
+
+
+    // Methods to add a destination or a passenger to the travel package.
+    public void addDestination(Destination destination) {
+        itinerary.add(destination);
+        if (availableActivities.addDestination(destination)) {
+            for (BookingListener listener : bookingListeners) {
+                listener.destinationAdded(this, destination);
+            }
+            destination.addListener(itineraryListener);
+            for (Activity activity : destination.getActivities()) {
+                itineraryListener.indexActivity(destination, activity);
+            }
+        }
+        // Published once the listeners are in place, so no seat change can fall between the two.
+        publish(current -> current.withItinerary(itinerary, destination));
+    }
+
+    public boolean addPassenger(Passenger passenger) {
+        long start = BookingMetrics.startTimer();
+        boolean added = passengers.size() < capacity && passengers.add(passenger);
+        if (added) {
+            memberIds.intern(passenger.getPassengerNumber());
+            publish(current -> current.withPassenger(passenger));
+            for (BookingListener listener : bookingListeners) {
+                listener.passengerAdded(this, passenger);
+            }
+        }
+        BookingMetrics.recordAddPassenger(passenger.getTier(), added, start);
+        return added;
+    }
+
+    // Methods to observe every change made to the package, e.g. for persistence.
+    public void addBookingListener(BookingListener listener) {
+        bookingListeners.add(listener);
+    }
+
+    public void removeBookingListener(BookingListener listener) {
+        bookingListeners.remove(listener);
+    }
+
+    // Method to look up a passenger by passenger number; returns null if no such passenger is in the package.
+    public Passenger findPassenger(String passengerNumber) {
+        return passengers.get(passengerNumber);
+    }
+
+    public boolean containsPassenger(Passenger passenger) {
+        return passengers.contains(passenger);
+    }
+
+    // Handle of a passenger while they are in the package, NO_ID otherwise. Handles are dense, for IntSet and
+    // arrays, and go stale once the passenger is removed; see IdRegistry.
+    public int getMemberId(Passenger passenger) {
+        return passengers.contains(passenger) ? memberIds.find(passenger.getPassengerNumber()) : IdRegistry.NO_ID;
+    }
+
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // Read-only view of the live itinerary; use getSnapshot for a view that stays consistent with the passengers.
+    public List<Destination> getItinerary() {
+        return Collections.unmodifiableList(itinerary);
+    }
+
+    // Passengers in the order they were added, as a read-only list.
+    public List<Passenger> getPassengers() {
+        return passengers.asList();
+    }
+
+    // Search indexes over every activity in the itinerary; created on first use and kept in step after that.
+    public synchronized ActivityQueryEngine getQueryEngine() {
+        if (queryEngine == null) {
+            queryEngine = new ActivityQueryEngine();
+            addBookingListener(queryEngine);
+            for (Destination destination : itinerary) {
+                for (Activity activity : destination.getActivities()) {
+                    if (getDestinationOf(activity) == destination) {
+                        queryEngine.add(destination, activity);
+                    }
+                }
+            }
+        }
+        return queryEngine;
+    }
+
+    // The package as it stands after the latest completed update: itinerary, passengers and activity details.
+    // Seat counts are read live through the activity snapshots, so sign-ups do not publish a new snapshot.
+    // Readers on any thread can use it without locking and without holding up writers.
+    public TravelPackageSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    // Setters
+    public void setName(String name) {
+        this.name = name;
+        publish(current -> current.withName(name));
+    }
+
+    public void setCapacity(int capacity) {
+        if (capacity < passengers.size()) {
+            throw new IllegalArgumentException("Capacity cannot be less than the number of passengers");
+        }
+        this.capacity = capacity;
+        publish(current -> current.withCapacity(capacity));
+    }
+
+    // The itinerary may list a destination more than once; its activities stay indexed until the last copy goes.
+    public boolean removeDestination(Destination destination) {
+        int copies = 0;
+        int position = -1;
+        for (int i = 0; i < itinerary.size(); i++) {
+            if (itinerary.get(i) == destination) {
+                position = copies++ == 0 ? i : position;
+            }
+        }
+        if (position < 0) {
+            return false;
+        }
+        itinerary.remove(position);
+        publish(current -> current.withItinerary(itinerary, null));
+        if (copies > 1) {
+            return true;
+        }
+        destination.removeListener(itineraryListener);
+        for (Activity activity : availableActivities.removeDestination(destination)) {
+            activity.removeListener(itineraryListener);
+        }
+        for (BookingListener listener : bookingListeners) {
+            listener.destinationRemoved(this, destination);
+        }
+        return true;
+    }
+
+    public boolean removePassenger(Passenger passenger) {
+        if (passengers.remove(passenger)) {
+            memberIds.release(memberIds.find(passenger.getPassengerNumber()));
+            publish(current -> current.withoutPassenger(passenger));
+            for (BookingListener listener : bookingListeners) {
+                listener.passengerRemoved(this, passenger);
+            }
+            return true;
+        }
+        return false;
+    }
+
+
+    // Method to sign up a batch of passengers, e.g. a group booking, returning one result per request in request order.
+    public List<SignupResult> signUpAll(List<SignupRequest> requests) {
+        return signUpAll(requests, false);
+    }
+
+    // Requests are grouped by activity so each activity reserves its seats in one step, and each passenger is
+    // debited once for everything they booked. A passenger who cannot afford all of their seats gets none of them.
+    // Seats on one activity are priced as a group, so the pricing engine's group discount applies to large groups.
+    // With allOrNothing, any failed request rolls back the whole batch.
+    public List<SignupResult> signUpAll(List<SignupRequest> requests, boolean allOrNothing) {
+        SignupStatus[] statuses = new SignupStatus[requests.size()];
+        long[] prices = new long[requests.size()];
+
+        // Group by activity, keeping the order in which activities first appear.
+        Map<Activity, List<Integer>> byActivity = new LinkedHashMap<>();
+        int[] members = new int[requests.size()];
+        for (int i = 0; i < requests.size(); i++) {
+            SignupRequest request = requests.get(i);
+            members[i] = getMemberId(request.getPassenger());
+            if (members[i] == IdRegistry.NO_ID) {
+                statuses[i] = SignupStatus.NOT_IN_PACKAGE;
+            } else {
+                byActivity.computeIfAbsent(request.getActivity(), activity -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // Check each group against its activity's roster and the passengers' schedules, counting the slots this
+        // batch has already claimed, then hold the seats for the whole group at once. Nobody is on a roster yet.
+        Map<Activity, List<Integer>> held = new LinkedHashMap<>();
+        Map<Passenger, List<TimeSlot>> claimed = new IdentityHashMap<>();
+        IntSet seen = new IntSet(memberIds.capacity());  // Members already seen in the current group; emptied after each.
+        for (Map.Entry<Activity, List<Integer>> group : byActivity.entrySet()) {
+            Activity activity = group.getKey();
+            TimeSlot slot = activity.getTimeSlot();
+            List<Integer> eligible = new ArrayList<>();
+            for (int i : group.getValue()) {
+                Passenger passenger = requests.get(i).getPassenger();
+                SignupStatus status = seen.add(IdRegistry.index(members[i]))
+                        ? activity.checkRoster(passenger) : SignupStatus.ALREADY_SIGNED_UP;
+                if (status == SignupStatus.CONFIRMED && slot != null &&
+                        claimed.getOrDefault(passenger, List.of()).stream().anyMatch(slot::overlaps)) {
+                    status = SignupStatus.SCHEDULE_CONFLICT;
+                }
+                if (status == SignupStatus.CONFIRMED) {
+                    eligible.add(i);
+                } else {
+                    statuses[i] = status;
+                }
+            }
+            for (int i : group.getValue()) {
+                seen.remove(IdRegistry.index(members[i]));
+            }
+            int granted = activity.holdSeats(eligible.size(), allOrNothing);
+            for (int k = 0; k < eligible.size(); k++) {
+                int i = eligible.get(k);
+                if (k < granted) {
+                    statuses[i] = SignupStatus.CONFIRMED;
+                    held.computeIfAbsent(activity, a -> new ArrayList<>()).add(i);
+                    if (slot != null) {
+                        claimed.computeIfAbsent(requests.get(i).getPassenger(), p -> new ArrayList<>()).add(slot);
+                    }
+                } else {
+                    statuses[i] = SignupStatus.ACTIVITY_FULL;
+                }
+            }
+        }
+
+        Map<Passenger, Long> debited = chargeHeldSeats(requests, statuses, prices, held);
+        if (allOrNothing && Arrays.stream(statuses).anyMatch(status -> status != SignupStatus.CONFIRMED)) {
+            rollBack(requests, statuses, debited);
+        }
+
+        // Charged: put everyone on their rosters. A sign-up made elsewhere since the check can still refuse a
+        // passenger, in which case that seat is refunded and given up.
+        boolean refused = false;
+        for (Map.Entry<Activity, List<Integer>> group : held.entrySet()) {
+            for (int i : group.getValue()) {
+                if (statuses[i] == SignupStatus.CONFIRMED) {
+                    SignupStatus status = group.getKey().addToRoster(requests.get(i).getPassenger());
+                    if (status != SignupStatus.CONFIRMED) {
+                        if (!allOrNothing) {
+                            requests.get(i).getPassenger().refund(prices[i]);  // Otherwise rollBack refunds it all.
+                        }
+                        group.getKey().passOnSeat();
+                        statuses[i] = status;
+                        refused = true;
+                    }
+                }
+            }
+        }
+        if (allOrNothing && refused) {
+            for (int i = 0; i < statuses.length; i++) {
+                if (statuses[i] == SignupStatus.CONFIRMED) {
+                    requests.get(i).getActivity().removeFromRoster(requests.get(i).getPassenger());
+                }
+            }
+            rollBack(requests, statuses, debited);
+        }
+        for (Activity activity : held.keySet()) {
+            activity.announceSeats();
+        }
+
+        List<SignupResult> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < statuses.length; i++) {
+            long charged = statuses[i] == SignupStatus.CONFIRMED ? prices[i] : 0;
+            results.add(new SignupResult(requests.get(i), statuses[i], charged));
+            BookingMetrics.countSignUp(requests.get(i).getPassenger().getTier(), statuses[i]);
+            if (statuses[i] == SignupStatus.CONFIRMED) {
+                requests.get(i).getActivity().confirmSignUp(requests.get(i).getPassenger(), charged);
+            }
+        }
+        return results;
+    }
+
+    // Method to price the held seats and debit each passenger once for all of theirs. Seats are priced by the size
+    // of the group that is actually kept: a passenger who cannot pay gives back all their seats, which can shrink a
+    // group below its discount, so prices are worked out again until every remaining passenger can pay.
+    // Returns what each passenger was debited.
+    private Map<Passenger, Long> chargeHeldSeats(List<SignupRequest> requests, SignupStatus[] statuses, long[] prices,
+                                                 Map<Activity, List<Integer>> held) {
+        while (true) {
+            Map<Passenger, Long> totals = new LinkedHashMap<>();
+            for (Map.Entry<Activity, List<Integer>> group : held.entrySet()) {
+                Activity activity = group.getKey();
+                int kept = 0;
+                for (int i : group.getValue()) {
+                    kept += statuses[i] == SignupStatus.CONFIRMED ? 1 : 0;
+                }
+                for (int i : group.getValue()) {
+                    if (statuses[i] == SignupStatus.CONFIRMED) {
+                        Passenger passenger = requests.get(i).getPassenger();
+                        prices[i] = activity.getPricingEngine().priceFor(activity, passenger.getTier(), kept);
+                        totals.merge(passenger, prices[i], Long::sum);
+                    }
+                }
+            }
+            Set<Passenger> unable = new HashSet<>();
+            totals.forEach((passenger, total) -> {
+                if (!passenger.canAfford(total)) {
+                    unable.add(passenger);
+                }
+            });
+            if (unable.isEmpty()) {
+                Map<Passenger, Long> debited = new HashMap<>();
+                for (Map.Entry<Passenger, Long> total : totals.entrySet()) {
+                    if (!total.getKey().tryDebit(total.getValue())) {
+                        unable.add(total.getKey());  // Spent elsewhere since the check; price the rest again.
+                        break;
+                    }
+                    debited.put(total.getKey(), total.getValue());
+                }
+                if (unable.isEmpty()) {
+                    return debited;
+                }
+                debited.forEach(Passenger::refund);
+            }
+            for (Map.Entry<Activity, List<Integer>> group : held.entrySet()) {
+                for (int i : group.getValue()) {
+                    if (statuses[i] == SignupStatus.CONFIRMED && unable.contains(requests.get(i).getPassenger())) {
+                        group.getKey().passOnSeat();
+                        statuses[i] = SignupStatus.INSUFFICIENT_BALANCE;
+                        prices[i] = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    // Method to undo an all-or-nothing batch: refunds every debit and gives up every seat still held.
+    private void rollBack(List<SignupRequest> requests, SignupStatus[] statuses, Map<Passenger, Long> debited) {
+        debited.forEach(Passenger::refund);
+        debited.clear();
+        for (int i = 0; i < statuses.length; i++) {
+            if (statuses[i] == SignupStatus.CONFIRMED) {
+                requests.get(i).getActivity().passOnSeat();
+                statuses[i] = SignupStatus.ROLLED_BACK;
+            }
+        }
+    }
+
+    // Methods to print the passenger list and the details of all the activities that still have spaces available.
+    public void printPassengerList() {
+        ReportWriter.printToConsole(out -> out.passengerList(this));
+    }
+
+    // Activities that still have spaces, in itinerary order.
+    public List<Activity> getAvailableActivities() {
+        return availableActivities.getAvailableActivities(AvailabilityOrder.ITINERARY);
+    }
+
+    public List<Activity> getAvailableActivities(AvailabilityOrder order) {
+        return availableActivities.getAvailableActivities(order);
+    }
+
+    public void printAvailableActivities() {
+        ReportWriter.printToConsole(out -> out.availableActivities(this));
+    }
+
+    // Activities with spaces that take place within the window and fit around the passenger's existing bookings,
+    // in time order. Activities without a time slot are left out.
+    public List<Activity> getConflictFreeActivities(Passenger passenger, TimeSlot window) {
+        List<Activity> bookable = new ArrayList<>();
+        PassengerSchedule schedule = passenger.getSchedule();
+        for (Activity activity : getAvailableActivities()) {
+            TimeSlot slot = activity.getTimeSlot();
+            if (slot != null && window.contains(slot) && passenger.getBooking(activity) == null && schedule.isFree(slot)) {
+                bookable.add(activity);
+            }
+        }
+        bookable.sort(Comparator.comparing(activity -> activity.getTimeSlot().getStart()));
+        return bookable;
+    }
+
+    // The itinerary destination an activity belongs to, or null if it is not part of this package.
+    Destination getDestinationOf(Activity activity) {
+        return availableActivities.getDestination(activity);
+    }
+
+    // Method to replace the snapshot with an updated copy. Activity changes arrive on the threads that made them,
+    // so the update is retried against whatever snapshot won the race; an update that changes nothing is dropped.
+    private void publish(UnaryOperator<TravelPackageSnapshot> update) {
+        while (true) {
+            TravelPackageSnapshot current = snapshot.get();
+            TravelPackageSnapshot next = update.apply(current);
+            if (next == current || snapshot.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    // ItineraryListener is registered on every destination and activity in the itinerary. It keeps the
+    // available-activities index current and passes itinerary changes on to the booking listeners.
+    private final class ItineraryListener implements ActivityListener, DestinationListener {
+
+        @Override
+        public void activityAdded(Destination destination, Activity activity) {
+            indexActivity(destination, activity);
+            publish(current -> current.withNewActivities(destination));
+        }
+
+        void indexActivity(Destination destination, Activity activity) {
+            if (availableActivities.addActivity(destination, activity)) {
+                activity.addListener(this);
+                for (BookingListener listener : bookingListeners) {
+                    listener.activityAdded(TravelPackage.this, destination, activity);
+                }
+            }
+        }
+
+        @Override
+        public void seatsChanged(Activity activity) {
+            availableActivities.seatsChanged(activity);
+        }
+
+        @Override
+        public void costChanged(Activity activity) {
+            publish(current -> current.withActivity(getDestinationOf(activity), activity));
+            fireActivityUpdated(activity);
+        }
+
+        @Override
+        public void capacityChanged(Activity activity) {
+            fireActivityUpdated(activity);
+        }
+
+        @Override
+        public void detailsChanged(Activity activity) {
+            publish(current -> current.withActivity(getDestinationOf(activity), activity));
+            fireActivityUpdated(activity);
+        }
+
+        private void fireActivityUpdated(Activity activity) {
+            for (BookingListener listener : bookingListeners) {
+                listener.activityUpdated(TravelPackage.this, activity);
+            }
+        }
+
+        @Override
+        public void passengerSignedUp(Activity activity, Passenger passenger, long amountCharged) {
+            for (BookingListener listener : bookingListeners) {
+                listener.signedUp(TravelPackage.this, activity, passenger, amountCharged);
+            }
+        }
+
+        @Override
+        public void passengerCancelled(Activity activity, Passenger passenger, long amountRefunded) {
+            for (BookingListener listener : bookingListeners) {
+                listener.cancelled(TravelPackage.this, activity, passenger, amountRefunded);
+            }
+        }
+    }
+
+}
+
+// TravelCostMatrix holds the cost (distance, travel time, fare...) of getting from one destination to another.
+// Costs may differ by direction; setBoth records the same cost both ways.
+class TravelCostMatrix {
+    private final Map<Destination, Integer> indices = new HashMap<>();
+    private double[][] costs = new double[0][0];
+    private boolean[][] known = new boolean[0][0];
+
+    public synchronized void set(Destination from, Destination to, double cost) {
+        if (cost < 0 || Double.isNaN(cost) || Double.isInfinite(cost)) {
+            throw new IllegalArgumentException("Travel cost must be a finite, non-negative number");
+        }
+        int i = indexOf(from);
+        int j = indexOf(to);
+        costs[i][j] = cost;
+        known[i][j] = true;
+    }
+
+    public void setBoth(Destination a, Destination b, double cost) {
+        set(a, b, cost);
+        set(b, a, cost);
+    }
+
+    // Method to get the cost of travelling between two destinations; staying put costs nothing.
+    public synchronized double get(Destination from, Destination to) {
+        if (from.equals(to)) {
+            return 0;
+        }
+        Integer i = indices.get(from);
+        Integer j = indices.get(to);
+        if (i == null || j == null || !known[i][j]) {
+            throw new IllegalArgumentException("No travel cost from " + from.getName() + " to " + to.getName());
+        }
+        return costs[i][j];
+    }
+
+    // Method to check that the cost between every two of the given destinations is known, in both directions.
+    public synchronized boolean hasCosts(List<Destination> destinations) {
+        for (Destination from : destinations) {
+            Integer i = indices.get(from);
+            for (Destination to : destinations) {
+                if (from.equals(to)) {
+                    continue;
+                }
+                Integer j = indices.get(to);
+                if (i == null || j == null || !known[i][j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Method to copy the costs between the given destinations into a dense matrix, in list order.
+    synchronized double[][] toMatrix(List<Destination> destinations) {
+        int n = destinations.size();
+        double[][] matrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                matrix[i][j] = get(destinations.get(i), destinations.get(j));
+            }
+        }
+        return matrix;
+    }
+
+    private int indexOf(Destination destination) {
+        Integer index = indices.get(destination);
+        if (index == null) {
+            index = indices.size();
+            indices.put(destination, index);
+            if (index == costs.length) {
+                int size = Math.max(8, costs.length * 2);
+                double[][] grownCosts = new double[size][size];
+                boolean[][] grownKnown = new boolean[size][size];
+                for (int i = 0; i < costs.length; i++) {
+                    System.arraycopy(costs[i], 0, grownCosts[i], 0, costs.length);
+                    System.arraycopy(known[i], 0, grownKnown[i], 0, known.length);
+                }
+                costs = grownCosts;
+                known = grownKnown;
+            }
+        }
+        return index;
+    }
+}
+
+// ItineraryOptimizer orders destinations to keep total travel cost low. The first destination stays first (the
+// trip has to start where the travellers arrive) and the route does not return to it.
+//
+// Up to exactLimit destinations the order is optimal, from the Held-Karp dynamic program over subsets. Larger
+// itineraries start from a nearest-neighbour route and are improved by local search: 2-opt (reverse a stretch of
+// the route) and or-opt (move a run of up to three destinations elsewhere). Each round scans every move in
+// parallel on a fork-join pool and applies the best one, until no move helps. Prefix sums of the route's costs
+// in both directions make each move's gain an O(1) sum even when costs differ by direction.
+//
+// insert and remove adjust an existing route and continue the local search from it, which settles in a few
+// moves rather than re-solving the whole itinerary.
+class ItineraryOptimizer {
+    private static final double EPSILON = 1e-9;
+    private static final int MAX_RUN = 3;        // Longest run of destinations or-opt moves at once.
+    private static final int ROWS_PER_TASK = 16;
+
+    private final TravelCostMatrix costs;
+    private final ForkJoinPool pool;
+    private final int exactLimit;
+
+    // Constructor initializes an optimizer that solves up to 12 destinations exactly, on the common pool.
+    public ItineraryOptimizer(TravelCostMatrix costs) {
+        this(costs, ForkJoinPool.commonPool(), 12);
+    }
+
+    public ItineraryOptimizer(TravelCostMatrix costs, ForkJoinPool pool, int exactLimit) {
+        if (exactLimit < 1 || exactLimit > 20) {
+            throw new IllegalArgumentException("Exact limit must be between 1 and 20");
+        }
+        this.costs = costs;
+        this.pool = pool;
+        this.exactLimit = exactLimit;
+    }
+
+    // Method to find a low-cost order for the destinations, keeping the first one first.
+    public List<Destination> optimize(List<Destination> destinations) {
+        List<Destination> route = distinct(destinations);
+        if (route.size() <= 2) {
+            return route;
+        }
+        double[][] matrix = costs.toMatrix(route);
+        int[] order = route.size() <= exactLimit ? solveExactly(matrix) : improve(matrix, nearestNeighbour(matrix));
+        return reorder(route, order);
+    }
+
+    // Method to add a destination to an optimized route: cheapest insertion, then local search from there.
+    public List<Destination> insert(List<Destination> route, Destination destination) {
+        List<Destination> extended = distinct(route);
+        if (extended.contains(destination)) {
+            return extended;
+        }
+        extended.add(destination);
+        if (extended.size() <= exactLimit) {
+            return optimize(extended);
+        }
+        double[][] matrix = costs.toMatrix(extended);
+        int added = extended.size() - 1;
+        int bestPosition = added;  // Insert after this position; added means at the end.
+        double bestCost = matrix[added - 1][added];
+        for (int p = 0; p < added - 1; p++) {
+            double cost = matrix[p][added] + matrix[added][p + 1] - matrix[p][p + 1];
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestPosition = p;
+            }
+        }
+        int[] order = new int[extended.size()];
+        for (int i = 0, k = 0; i < added; i++) {
+            order[k++] = i;
+            if (i == bestPosition) {
+                order[k++] = added;
+            }
+        }
+        if (bestPosition == added) {
+            order[added] = added;
+        }
+        return reorder(extended, improve(matrix, order));
+    }
+
+    // Method to drop a destination from an optimized route and repair the rest with local search.
+    public List<Destination> remove(List<Destination> route, Destination destination) {
+        List<Destination> remaining = distinct(route);
+        if (!remaining.remove(destination)) {
+            return remaining;
+        }
+        if (remaining.size() <= exactLimit) {
+            return optimize(remaining);
+        }
+        double[][] matrix = costs.toMatrix(remaining);
+        int[] order = new int[remaining.size()];
+        Arrays.setAll(order, i -> i);
+        return reorder(remaining, improve(matrix, order));
+    }
+
+    // Whether every travel cost optimize, insert and remove would need for these destinations is known.
+    public boolean canPlan(List<Destination> destinations) {
+        return costs.hasCosts(distinct(destinations));
+    }
+
+    // Method to total the travel cost of visiting destinations in the given order.
+    public double cost(List<Destination> route) {
+        double total = 0;
+        for (int i = 1; i < route.size(); i++) {
+            total += costs.get(route.get(i - 1), route.get(i));
+        }
+        return total;
+    }
+
+    // Held-Karp over paths from destination 0: best[subset][last] is the cheapest way to visit subset ending at last.
+    static int[] solveExactly(double[][] matrix) {
+        int n = matrix.length;
+        int m = n - 1;  // Destinations after the start; bit k of a subset stands for destination k + 1.
+        int subsets = 1 << m;
+        double[][] best = new double[subsets][m];
+        int[][] previous = new int[subsets][m];
+        for (double[] row : best) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+        }
+        for (int k = 0; k < m; k++) {
+            best[1 << k][k] = matrix[0][k + 1];
+            previous[1 << k][k] = -1;
+        }
+        for (int subset = 1; subset < subsets; subset++) {
+            for (int last = 0; last < m; last++) {
+                double cost = best[subset][last];
+                if ((subset & (1 << last)) == 0 || cost == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                for (int next = 0; next < m; next++) {
+                    if ((subset & (1 << next)) == 0) {
+                        int extended = subset | (1 << next);
+                        double candidate = cost + matrix[last + 1][next + 1];
+                        if (candidate < best[extended][next]) {
+                            best[extended][next] = candidate;
+                            previous[extended][next] = last;
+                        }
+                    }
+                }
+            }
+        }
+        int all = subsets - 1;
+        int last = 0;
+        for (int k = 1; k < m; k++) {
+            if (best[all][k] < best[all][last]) {
+                last = k;
+            }
+        }
+        int[] order = new int[n];
+        for (int position = n - 1, subset = all; position > 0; position--) {
+            order[position] = last + 1;
+            int before = previous[subset][last];
+            subset &= ~(1 << last);
+            last = before;
+        }
+        return order;
+    }
+
+    static int[] nearestNeighbour(double[][] matrix) {
+        int n = matrix.length;
+        int[] order = new int[n];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        for (int position = 1; position < n; position++) {
+            int from = order[position - 1];
+            int nearest = -1;
+            for (int candidate = 1; candidate < n; candidate++) {
+                if (!visited[candidate] && (nearest < 0 || matrix[from][candidate] < matrix[from][nearest])) {
+                    nearest = candidate;
+                }
+            }
+            order[position] = nearest;
+            visited[nearest] = true;
+        }
+        return order;
+    }
+
+    // Method to apply the best 2-opt or or-opt move until none shortens the route.
+    int[] improve(double[][] matrix, int[] order) {
+        int[] route = order.clone();
+        while (true) {
+            Route current = new Route(matrix, route);
+            Move best = pool.invoke(new MoveSearch(current, 1, route.length));
+            if (best == null || best.gain <= EPSILON) {
+                return route;
+            }
+            route = best.apply(route);
+        }
+    }
+
+    private static List<Destination> distinct(List<Destination> destinations) {
+        return new ArrayList<>(new LinkedHashSet<>(destinations));
+    }
+
+    private static List<Destination> reorder(List<Destination> destinations, int[] order) {
+        List<Destination> route = new ArrayList<>(order.length);
+        for (int index : order) {
+            route.add(destinations.get(index));
+        }
+        return route;
+    }
+
+    // Route is a visiting order with the prefix sums that price moves on it.
+    private static final class Route {
+        final double[][] matrix;
+        final int[] order;
+        final double[] forward;   // forward[k]: cost of the route up to position k.
+        final double[] backward;  // backward[k]: the same stretch travelled in reverse.
+
+        Route(double[][] matrix, int[] order) {
+            this.matrix = matrix;
+            this.order = order;
+            this.forward = new double[order.length];
+            this.backward = new double[order.length];
+            for (int k = 1; k < order.length; k++) {
+                forward[k] = forward[k - 1] + matrix[order[k - 1]][order[k]];
+                backward[k] = backward[k - 1] + matrix[order[k]][order[k - 1]];
+            }
+        }
+
+        double cost(int fromPosition, int toPosition) {
+            return matrix[order[fromPosition]][order[toPosition]];
+        }
+
+        // Gain from reversing positions i..j; the stretch inside is then travelled backwards.
+        double reversalGain(int i, int j) {
+            int last = order.length - 1;
+            double before = cost(i - 1, i) + (forward[j] - forward[i]) + (j < last ? cost(j, j + 1) : 0);
+            double after = cost(i - 1, j) + (backward[j] - backward[i]) + (j < last ? cost(i, j + 1) : 0);
+            return before - after;
+        }
+
+        // Gain from moving positions i..end to just after position p.
+        double moveGain(int i, int end, int p) {
+            int last = order.length - 1;
+            double removed = cost(i - 1, i) + (end < last ? cost(end, end + 1) - cost(i - 1, end + 1) : 0);
+            double inserted = cost(p, i) + (p < last ? cost(end, p + 1) - cost(p, p + 1) : 0);
+            return removed - inserted;
+        }
+    }
+
+    // Move is a 2-opt reversal of positions i..j, or an or-opt move of positions i..j to just after position p.
+    private static final class Move {
+        final int i;
+        final int j;
+        final int p;  // -1 for a reversal.
+        final double gain;
+
+        Move(int i, int j, int p, double gain) {
+            this.i = i;
+            this.j = j;
+            this.p = p;
+            this.gain = gain;
+        }
+
+        static Move better(Move a, Move b) {
+            return a == null ? b : b == null || a.gain >= b.gain ? a : b;
+        }
+
+        int[] apply(int[] order) {
+            int[] result = order.clone();
+            if (p < 0) {
+                for (int left = i, right = j; left < right; left++, right--) {
+                    int swap = result[left];
+                    result[left] = result[right];
+                    result[right] = swap;
+                }
+                return result;
+            }
+            int k = 0;
+            for (int position = 0; position < order.length; position++) {
+                if (position >= i && position <= j) {
+                    continue;
+                }
+                result[k++] = order[position];
+                if (position == p) {
+                    for (int moved = i; moved <= j; moved++) {
+                        result[k++] = order[moved];
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    // MoveSearch finds the best move starting at positions from..to-1, splitting the range across the pool.
+    private static final class MoveSearch extends RecursiveTask<Move> {
+        private static final long serialVersionUID = 1L;
+
+        private final Route route;
+        private final int from;
+        private final int to;
+
+        MoveSearch(Route route, int from, int to) {
+            this.route = route;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Move compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                MoveSearch right = new MoveSearch(route, middle, to);
+                right.fork();
+                Move left = new MoveSearch(route, from, middle).compute();
+                return Move.better(left, right.join());
+            }
+            int n = route.order.length;
+            Move best = null;
+            double bestGain = EPSILON;
+            for (int i = from; i < to; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    double gain = route.reversalGain(i, j);
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        best = new Move(i, j, -1, gain);
+                    }
+                }
+                for (int end = i; end < Math.min(n, i + MAX_RUN); end++) {
+                    for (int p = 0; p < n; p++) {
+                        if (p >= i - 1 && p <= end) {
+                            continue;
+                        }
+                        double gain = route.moveGain(i, end, p);
+                        if (gain > bestGain) {
+                            bestGain = gain;
+                            best = new Move(i, end, p, gain);
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+    }
+}
+
+// ItineraryPlanner keeps a low-cost visiting order for a travel package's destinations. It follows the
+// package's itinerary, re-optimizing incrementally as destinations are added and removed; the package's own
+// itinerary keeps the order the destinations were booked in.
+//
+// A destination whose travel costs are not known yet is appended to the end of the route and planning is
+// deferred: the route is optimized as a whole on the next change, or on replan, once every cost is known.
+class ItineraryPlanner implements BookingListener {
+    private final ItineraryOptimizer optimizer;
+    private volatile List<Destination> route;
+    private volatile boolean deferred;  // Whether the route has destinations appended for want of travel costs.
+
+    // Constructor plans the package's current itinerary and follows its changes from then on.
+    public ItineraryPlanner(TravelPackage travelPackage, ItineraryOptimizer optimizer) {
+        this.optimizer = optimizer;
+        synchronized (this) {
+            travelPackage.addBookingListener(this);
+            this.route = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(travelPackage.getItinerary())));
+            this.deferred = true;
+            replan();
+        }
+    }
+
+    // The suggested visiting order.
+    public List<Destination> getRoute() {
+        return route;
+    }
+
+    // The route's travel cost; throws IllegalArgumentException while it is not planned, as a cost is missing.
+    public double getCost() {
+        return optimizer.cost(route);
+    }
+
+    // Whether the whole route has been optimized, rather than having destinations appended unplanned.
+    public boolean isPlanned() {
+        return !deferred;
+    }
+
+    // Method to optimize a route that had destinations appended unplanned, if their travel costs are known by
+    // now; returns whether the route is planned.
+    public synchronized boolean replan() {
+        if (deferred && optimizer.canPlan(route)) {
+            route = Collections.unmodifiableList(optimizer.optimize(route));
+            deferred = false;
+        }
+        return !deferred;
+    }
+
+    // Listener callbacks run inside TravelPackage updates, so they must not throw for a missing travel cost.
+
+    @Override
+    public synchronized void destinationAdded(TravelPackage travelPackage, Destination destination) {
+        if (route == null || route.contains(destination)) {
+            return;
+        }
+        List<Destination> extended = new ArrayList<>(route);
+        extended.add(destination);
+        if (!deferred && optimizer.canPlan(extended)) {
+            route = Collections.unmodifiableList(optimizer.insert(route, destination));
+        } else {
+            route = Collections.unmodifiableList(extended);
+            deferred = true;
+            replan();
+        }
+    }
+
+    @Override
+    public synchronized void destinationRemoved(TravelPackage travelPackage, Destination destination) {
+        if (route == null) {
+            return;
+        }
+        if (deferred) {
+            List<Destination> remaining = new ArrayList<>(route);
+            remaining.remove(destination);
+            route = Collections.unmodifiableList(remaining);
+            replan();
+        } else {
+            route = Collections.unmodifiableList(optimizer.remove(route, destination));
+        }
+    }
+}
+
+// GroupAssignment is the outcome of AssignmentSolver.solve: the activity each passenger was given, if any, and
+// where it stood in their ranking.
+class GroupAssignment {
+    private final Map<Passenger, Activity> assignments;
+    private final Map<Passenger, Integer> ranks;
+    private final List<Passenger> unplaced;
+
+    GroupAssignment(Map<Passenger, Activity> assignments, Map<Passenger, Integer> ranks, List<Passenger> unplaced) {
+        this.assignments = Collections.unmodifiableMap(assignments);
+        this.ranks = ranks;
+        this.unplaced = Collections.unmodifiableList(unplaced);
+    }
+
+    public Map<Passenger, Activity> getAssignments() {
+        return assignments;
+    }
+
+    // The activity a passenger was given, or null if none of their choices could be met.
+    public Activity getActivity(Passenger passenger) {
+        return assignments.get(passenger);
+    }
+
+    // Where the assigned activity stood in the passenger's ranking: 0 for their first choice, -1 if unplaced.
+    public int getRank(Passenger passenger) {
+        return ranks.getOrDefault(passenger, -1);
+    }
+
+    public List<Passenger> getUnplaced() {
+        return unplaced;
+    }
+
+    public int getPlacedCount() {
+        return assignments.size();
+    }
+
+    public int getFirstChoiceCount() {
+        int count = 0;
+        for (int rank : ranks.values()) {
+            count += rank == 0 ? 1 : 0;
+        }
+        return count;
+    }
+
+    // The assignment as sign-up requests, e.g. for TravelPackage.signUpAll.
+    public List<SignupRequest> toRequests() {
+        List<SignupRequest> requests = new ArrayList<>(assignments.size());
+        assignments.forEach((passenger, activity) -> requests.add(new SignupRequest(passenger, activity)));
+        return requests;
+    }
+}
+
+// AssignmentSolver places a group of passengers, each with a ranked list of activities, one activity each. It
+// places as many passengers as the free seats allow and, among all such placements, gives the best total of
+// rankings. A choice only counts if the passenger can pay their tier's price for it, is not already booked on it
+// and has no clash with it in their schedule.
+//
+// The problem is a min-cost max-flow: source -> passenger (one unit) -> activity (cost = rank) -> sink (free
+// seats). It is solved primal-dual: Dijkstra on reduced costs finds the shortest augmenting distance, then
+// Dinic-style blocking flows push every augmenting path of that length at once, so only a few shortest-path runs
+// are needed. Passengers and activities that share no choices cannot affect each other, so the preference graph
+// is split into connected components (typically one per destination) that are solved in parallel.
+class AssignmentSolver {
+    private final ForkJoinPool pool;
+
+    // Constructor initializes a solver that runs on the common fork-join pool.
+    public AssignmentSolver() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public AssignmentSolver(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // Method to assign activities given each passenger's choices, most wanted first.
+    public GroupAssignment solve(Map<Passenger, List<Activity>> preferences) {
+        List<Passenger> passengers = new ArrayList<>(preferences.keySet());
+        Map<Activity, Integer> activityIndex = new IdentityHashMap<>();
+        List<Activity> activities = new ArrayList<>();
+        List<int[]> choices = new ArrayList<>();  // {passenger, activity, rank}
+        for (int p = 0; p < passengers.size(); p++) {
+            Passenger passenger = passengers.get(p);
+            List<Activity> ranked = preferences.get(passenger);
+            for (int rank = 0; rank < ranked.size(); rank++) {
+                Activity activity = ranked.get(rank);
+                if (ranked.indexOf(activity) == rank && isEligible(passenger, activity)) {
+                    Integer a = activityIndex.get(activity);
+                    if (a == null) {
+                        a = activities.size();
+                        activityIndex.put(activity, a);
+                        activities.add(activity);
+                    }
+                    choices.add(new int[]{p, a, rank});
+                }
+            }
+        }
+
+        // Union-find over passengers (0..P-1) and activities (P..P+A-1) to split the choices into components.
+        int[] parent = new int[passengers.size() + activities.size()];
+        Arrays.setAll(parent, i -> i);
+        for (int[] choice : choices) {
+            parent[find(parent, choice[0])] = find(parent, passengers.size() + choice[1]);
+        }
+        Map<Integer, List<int[]>> components = new HashMap<>();
+        for (int[] choice : choices) {
+            components.computeIfAbsent(find(parent, choice[0]), root -> new ArrayList<>()).add(choice);
+        }
+
+        int[] seats = new int[activities.size()];
+        for (int a = 0; a < seats.length; a++) {
+            seats[a] = Math.max(0, activities.get(a).getCapacity() - activities.get(a).getCurrentCount());
+        }
+        List<Callable<List<int[]>>> tasks = new ArrayList<>();
+        for (List<int[]> component : components.values()) {
+            tasks.add(() -> solveComponent(component, seats));
+        }
+        int[] assignedActivity = new int[passengers.size()];
+        int[] assignedRank = new int[passengers.size()];
+        Arrays.fill(assignedActivity, -1);
+        for (Future<List<int[]>> result : pool.invokeAll(tasks)) {
+            try {
+                for (int[] choice : result.get()) {
+                    assignedActivity[choice[0]] = choice[1];
+                    assignedRank[choice[0]] = choice[2];
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while solving group assignment");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Group assignment failed", e.getCause());
+            }
+        }
+
+        Map<Passenger, Activity> assignments = new LinkedHashMap<>();
+        Map<Passenger, Integer> ranks = new HashMap<>();
+        List<Passenger> unplaced = new ArrayList<>();
+        for (int p = 0; p < passengers.size(); p++) {
+            if (assignedActivity[p] < 0) {
+                unplaced.add(passengers.get(p));
+            } else {
+                assignments.put(passengers.get(p), activities.get(assignedActivity[p]));
+                ranks.put(passengers.get(p), assignedRank[p]);
+            }
+        }
+        return new GroupAssignment(assignments, ranks, unplaced);
+    }
+
+    private static boolean isEligible(Passenger passenger, Activity activity) {
+        TimeSlot slot = activity.getTimeSlot();
+        return passenger.getBooking(activity) == null && passenger.canAfford(passenger.priceFor(activity)) &&
+                (slot == null || passenger.getSchedule().isFree(slot));
+    }
+
+    private static int find(int[] parent, int node) {
+        while (parent[node] != node) {
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    // Method to solve one component, returning the choices that were granted.
+    private static List<int[]> solveComponent(List<int[]> choices, int[] seats) {
+        // Node numbering: 0 source, 1 sink, then the component's passengers, then its activities.
+        Map<Integer, Integer> passengerNodes = new HashMap<>();
+        Map<Integer, Integer> activityNodes = new HashMap<>();
+        for (int[] choice : choices) {
+            passengerNodes.putIfAbsent(choice[0], 2 + passengerNodes.size());
+        }
+        for (int[] choice : choices) {
+            activityNodes.putIfAbsent(choice[1], 2 + passengerNodes.size() + activityNodes.size());
+        }
+        FlowNetwork network = new FlowNetwork(2 + passengerNodes.size() + activityNodes.size(), 2 * choices.size() + 4 * passengerNodes.size());
+        for (int node : passengerNodes.values()) {
+            network.addEdge(0, node, 1, 0);
+        }
+        activityNodes.forEach((activity, node) -> network.addEdge(node, 1, seats[activity], 0));
+        int[] choiceEdges = new int[choices.size()];
+        for (int i = 0; i < choices.size(); i++) {
+            int[] choice = choices.get(i);
+            choiceEdges[i] = network.addEdge(passengerNodes.get(choice[0]), activityNodes.get(choice[1]), 1, choice[2]);
+        }
+        network.minCostMaxFlow(0, 1);
+        List<int[]> granted = new ArrayList<>();
+        for (int i = 0; i < choices.size(); i++) {
+            if (network.flow(choiceEdges[i]) > 0) {
+                granted.add(choices.get(i));
+            }
+        }
+        return granted;
+    }
+
+    // FlowNetwork is a residual graph in flat arrays; edge e and its reverse e ^ 1 are stored side by side.
+    static final class FlowNetwork {
+        private static final int UNREACHED = Integer.MAX_VALUE;
+
+        private final int nodes;
+        private final int[] head;
+        private int[] next;
+        private int[] to;
+        private int[] capacity;
+        private int[] cost;
+        private int edges;
+        private final long[] potential;
+        private final int[] level;
+        private final int[] cursor;
+        private final int[] queue;  // Breadth-first queue of levelAdmissible.
+        private final int[] path;   // Edges of the path augment is extending, by depth.
+
+        FlowNetwork(int nodes, int expectedEdges) {
+            this.nodes = nodes;
+            this.head = new int[nodes];
+            Arrays.fill(head, -1);
+            int size = Math.max(4, 2 * expectedEdges);
+            this.next = new int[size];
+            this.to = new int[size];
+            this.capacity = new int[size];
+            this.cost = new int[size];
+            this.potential = new long[nodes];
+            this.level = new int[nodes];
+            this.cursor = new int[nodes];
+            this.queue = new int[nodes];
+            this.path = new int[nodes];
+        }
+
+        // Returns the index of the forward edge.
+        int addEdge(int from, int target, int edgeCapacity, int edgeCost) {
+            if (edges + 2 > to.length) {
+                int size = to.length * 2;
+                next = Arrays.copyOf(next, size);
+                to = Arrays.copyOf(to, size);
+                capacity = Arrays.copyOf(capacity, size);
+                cost = Arrays.copyOf(cost, size);
+            }
+            int forward = edges;
+            link(from, target, edgeCapacity, edgeCost);
+            link(target, from, 0, -edgeCost);
+            return forward;
+        }
+
+        private void link(int from, int target, int edgeCapacity, int edgeCost) {
+            to[edges] = target;
+            capacity[edges] = edgeCapacity;
+            cost[edges] = edgeCost;
+            next[edges] = head[from];
+            head[from] = edges++;
+        }
+
+        // Flow on a forward edge is the capacity its reverse edge has gained.
+        int flow(int edge) {
+            return capacity[edge ^ 1];
+        }
+
+        void minCostMaxFlow(int source, int sink) {
+            while (shortestDistances(source, sink)) {
+                while (levelAdmissible(source, sink)) {
+                    System.arraycopy(head, 0, cursor, 0, nodes);
+                    while (augment(source, sink)) {
+                        // Each call pushes one path; the cursors make the phase linear in the edges it visits.
+                    }
+                }
+            }
+        }
+
+        private long reducedCost(int from, int edge) {
+            return cost[edge] + potential[from] - potential[to[edge]];
+        }
+
+        // Dijkstra on reduced costs; folds the distances into the potentials. Returns false once the sink is cut off.
+        private boolean shortestDistances(int source, int sink) {
+            long[] distance = new long[nodes];
+            Arrays.fill(distance, Long.MAX_VALUE);
+            distance[source] = 0;
+            PriorityQueue<long[]> queue = new PriorityQueue<>(Comparator.comparingLong((long[] entry) -> entry[0]));
+            queue.add(new long[]{0, source});
+            while (!queue.isEmpty()) {
+                long[] entry = queue.poll();
+                int node = (int) entry[1];
+                if (entry[0] > distance[node]) {
+                    continue;
+                }
+                for (int edge = head[node]; edge >= 0; edge = next[edge]) {
+                    if (capacity[edge] > 0) {
+                        long candidate = distance[node] + reducedCost(node, edge);
+                        if (candidate < distance[to[edge]]) {
+                            distance[to[edge]] = candidate;
+                            queue.add(new long[]{candidate, to[edge]});
+                        }
+                    }
+                }
+            }
+            if (distance[sink] == Long.MAX_VALUE) {
+                return false;
+            }
+            // Nodes left unreached, or farther than the sink, move by the sink's distance. Skipping them would leave
+            // their edges into reached nodes with negative reduced costs, which Dijkstra cannot handle.
+            for (int node = 0; node < nodes; node++) {
+                potential[node] += Math.min(distance[node], distance[sink]);
+            }
+            return true;
+        }
+
+        // Whether every edge with spare capacity has a non-negative reduced cost, as shortestDistances needs.
+        boolean hasFeasiblePotentials() {
+            for (int edge = 0; edge < edges; edge++) {
+                if (capacity[edge] > 0 && reducedCost(to[edge ^ 1], edge) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Breadth-first levels over the admissible edges: spare capacity and zero reduced cost.
+        private boolean levelAdmissible(int source, int sink) {
+            Arrays.fill(level, UNREACHED);
+            level[source] = 0;
+            int tail = 0;
+            queue[tail++] = source;
+            for (int headIndex = 0; headIndex < tail; headIndex++) {
+                int node = queue[headIndex];
+                for (int edge = head[node]; edge >= 0; edge = next[edge]) {
+                    if (capacity[edge] > 0 && level[to[edge]] == UNREACHED && reducedCost(node, edge) == 0) {
+                        level[to[edge]] = level[node] + 1;
+                        queue[tail++] = to[edge];
+                    }
+                }
+            }
+            return level[sink] != UNREACHED;
+        }
+
+        // Iterative depth-first search for one path along increasing levels; dead ends are cut off as they are found.
+        private boolean augment(int source, int sink) {
+            int depth = 0;
+            int node = source;
+            while (true) {
+                if (node == sink) {
+                    int pushed = Integer.MAX_VALUE;
+                    for (int i = 0; i < depth; i++) {
+                        pushed = Math.min(pushed, capacity[path[i]]);
+                    }
+                    for (int i = 0; i < depth; i++) {
+                        capacity[path[i]] -= pushed;
+                        capacity[path[i] ^ 1] += pushed;
+                    }
+                    return true;
+                }
+                int edge = cursor[node];
+                while (edge >= 0 && !(capacity[edge] > 0 && level[to[edge]] == level[node] + 1 && reducedCost(node, edge) == 0)) {
+                    edge = next[edge];
+                }
+                cursor[node] = edge;
+                if (edge >= 0) {
+                    path[depth++] = edge;
+                    node = to[edge];
+                } else {
+                    level[node] = UNREACHED;
+                    if (depth == 0) {
+                        return false;
+                    }
+                    node = to[path[--depth] ^ 1];
+                    cursor[node] = next[cursor[node]];
+                }
+            }
+        }
+    }
+}
+
+// BookingService owns every travel package in the process and shards them across a fixed set of executor lanes.
+// Each lane is a single thread, and a package is only ever touched from the lane its name hashes to, so changes
+// to one package are serialized without locks while different lanes run in parallel. Every operation returns a
+// CompletableFuture that completes on the package's lane.
+class BookingService implements Closeable {
+    private final ExecutorService[] lanes;
+    private final Map<String, TravelPackage> packages = new ConcurrentHashMap<>();
+
+    // Constructor starts one lane per available processor.
+    public BookingService() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BookingService(int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("A booking service needs at least one lane");
+        }
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String threadName = "booking-lane-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Methods to hand a package to the service, or take it back; a package must not be changed directly while
+    // the service owns it. Packages are keyed by the name they have when added.
+    public boolean addPackage(TravelPackage travelPackage) {
+        return packages.putIfAbsent(travelPackage.getName(), travelPackage) == null;
+    }
+
+    public TravelPackage removePackage(String packageName) {
+        return packages.remove(packageName);
+    }
+
+    public Set<String> getPackageNames() {
+        return Collections.unmodifiableSet(packages.keySet());
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    // Method to run work against a package on its lane. The future fails with IllegalArgumentException for an
+    // unknown package and with RejectedExecutionException once the service is closed.
+    public <T> CompletableFuture<T> submit(String packageName, Function<TravelPackage, T> work) {
+        TravelPackage travelPackage = packages.get(packageName);
+        if (travelPackage == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No package named " + packageName));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> work.apply(travelPackage), laneFor(packageName));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Bookings
+
+    public CompletableFuture<SignupResult> signUp(String packageName, Passenger passenger, Activity activity) {
+        return submit(packageName, travelPackage -> travelPackage.signUpAll(List.of(new SignupRequest(passenger, activity))).get(0));
+    }
+
+    public CompletableFuture<List<SignupResult>> signUpAll(String packageName, List<SignupRequest> requests, boolean allOrNothing) {
+        return submit(packageName, travelPackage -> travelPackage.signUpAll(requests, allOrNothing));
+    }
+
+    public CompletableFuture<Boolean> cancel(String packageName, Passenger passenger, Activity activity) {
+        return submit(packageName, travelPackage -> travelPackage.containsPassenger(passenger) && activity.cancel(passenger));
+    }
+
+    public CompletableFuture<Boolean> addPassenger(String packageName, Passenger passenger) {
+        return submit(packageName, travelPackage -> travelPackage.addPassenger(passenger));
+    }
+
+    public CompletableFuture<Boolean> removePassenger(String packageName, Passenger passenger) {
+        return submit(packageName, travelPackage -> travelPackage.removePassenger(passenger));
+    }
+
+    public CompletableFuture<Void> addDestination(String packageName, Destination destination) {
+        return submit(packageName, travelPackage -> {
+            travelPackage.addDestination(destination);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Activity>> getAvailableActivities(String packageName) {
+        return submit(packageName, TravelPackage::getAvailableActivities);
+    }
+
+    private ExecutorService laneFor(String packageName) {
+        return lanes[Math.floorMod(packageName.hashCode(), lanes.length)];
+    }
+
+    // Method to stop the lanes; work already submitted still runs before this returns.
+    @Override
+    public void close() throws IOException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping the booking lanes");
+        }
+    }
+}
+
+// BookingServer serves a BookingService over HTTP. Requests are parsed on the request executor, the booking
+// work runs on the package's lane, and the response is written once the lane's future completes, so no thread
+// waits for a booking. The request executor is a small pool of platform threads, which is enough because
+// handlers never block.
+//
+// Endpoints (parameters go in the query string; reports accept format=csv):
+//   POST /packages?name=&capacity=                                        create a package
+//   POST /packages/{package}/activities?destination=&name=&description=&cost=&capacity=
+//   POST /packages/{package}/passengers?tier=&name=&number=&balance=      add a passenger
+//   POST /packages/{package}/signups?passenger=&destination=&activity=    sign a passenger up
+//   GET  /packages/{package}/passengers                                   passenger list report
+//   GET  /packages/{package}/available                                    available activities report
+class BookingServer implements Closeable {
+    private static final int BACKLOG = 16_384;  // Room for a burst of 10k+ clients connecting at once.
+
+    private final BookingService service;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+
+    // A response is a status code and a plain-text body.
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private BookingServer(BookingService service, HttpServer server, ExecutorService requestExecutor) {
+        this.service = service;
+        this.server = server;
+        this.requestExecutor = requestExecutor;
+    }
+
+    // Method to start serving; port 0 picks a free port, see getPort.
+    public static BookingServer start(BookingService service, int port) throws IOException {
+        // Headers and body go out in separate writes; without TCP_NODELAY each small response waits ~40 ms on
+        // Nagle's algorithm and the client's delayed ACK. The JDK server reads this property once, on first use.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        ExecutorService requestExecutor = newRequestExecutor();
+        BookingServer bookingServer = new BookingServer(service, server, requestExecutor);
+        server.createContext("/packages", bookingServer::handle);
+        server.setExecutor(requestExecutor);
+        server.start();
+        return bookingServer;
+    }
+
+    // Server mode: java nymble.Main serve [port]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        BookingServer server = start(new BookingService(), port);
+        System.out.println("Serving bookings on http://localhost:" + server.getPort() + "/packages");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public BookingService getService() {
+        return service;
+    }
+
+    // Method to stop accepting requests; the booking service stays open and belongs to the caller.
+    @Override
+    public void close() {
+        server.stop(0);
+        requestExecutor.shutdown();
+    }
+
+    // Handlers only parse and hand work to the booking service's lanes, so a small pool keeps up with many clients.
+    private static ExecutorService newRequestExecutor() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), task -> {
+            Thread thread = new Thread(task, "booking-http-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Request handling
+
+    // Every exchange is answered, whatever goes wrong: an exception left to the HttpServer would leave the client
+    // waiting on a connection nobody closes.
+    private void handle(HttpExchange exchange) {
+        CompletableFuture<Response> response;
+        try {
+            response = route(exchange);
+        } catch (IllegalArgumentException e) {  // Includes NumberFormatException from bad parameters.
+            response = CompletableFuture.completedFuture(new Response(400, e.getMessage()));
+        } catch (RuntimeException e) {
+            response = CompletableFuture.completedFuture(failure(e));
+        }
+        response.whenCompleteAsync((result, error) -> send(exchange, result != null ? result : failure(error)), this::sendOn);
+    }
+
+    // Once the server is closing the pool refuses work, so the response is sent on the completing thread instead.
+    private void sendOn(Runnable task) {
+        try {
+            requestExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private CompletableFuture<Response> route(HttpExchange exchange) {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getRawPath().split("/");  // "", "packages", package, resource
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        if (path.length == 2 && method.equals("POST")) {
+            return createPackage(query);
+        }
+        if (path.length != 4) {
+            return CompletableFuture.completedFuture(new Response(404, "Not found"));
+        }
+        String packageName = decode(path[2]);
+        switch (method + " " + path[3]) {
+            case "POST activities":
+                return addActivity(packageName, query);
+            case "POST passengers":
+                return addPassenger(packageName, query);
+            case "POST signups":
+                return signUp(packageName, query);
+            case "GET passengers":
+                return report(packageName, query, ReportWriter::passengerList);
+            case "GET available":
+                return report(packageName, query, ReportWriter::availableActivities);
+            default:
+                return CompletableFuture.completedFuture(new Response(404, "Not found"));
+        }
+    }
+
+    private CompletableFuture<Response> createPackage(Map<String, String> query) {
+        TravelPackage travelPackage = new TravelPackage(required(query, "name"), Integer.parseInt(required(query, "capacity")));
+        return CompletableFuture.completedFuture(service.addPackage(travelPackage)
+                ? new Response(201, "Created")
+                : new Response(409, "Package already exists"));
+    }
+
+    private CompletableFuture<Response> addActivity(String packageName, Map<String, String> query) {
+        String destinationName = required(query, "destination");
+        Activity activity = new Activity(required(query, "name"), query.getOrDefault("description", ""),
+                Double.parseDouble(required(query, "cost")), Integer.parseInt(required(query, "capacity")));
+        return service.submit(packageName, travelPackage -> {
+            Destination destination = findDestination(travelPackage, destinationName);
+            if (destination == null) {
+                destination = new Destination(destinationName);
+                travelPackage.addDestination(destination);
+            }
+            destination.addActivity(activity);
+            return new Response(201, "Created");
+        });
+    }
+
+    private CompletableFuture<Response> addPassenger(String packageName, Map<String, String> query) {
+        PassengerTier tier = PassengerTier.valueOf(query.getOrDefault("tier", "STANDARD").toUpperCase(Locale.ROOT));
+        Passenger passenger = tier.newPassenger(required(query, "name"), required(query, "number"),
+                Double.parseDouble(query.getOrDefault("balance", "0")));
+        return service.addPassenger(packageName, passenger)
+                .thenApply(added -> added ? new Response(201, "Created") : new Response(409, "Passenger not added"));
+    }
+
+    private CompletableFuture<Response> signUp(String packageName, Map<String, String> query) {
+        String passengerNumber = required(query, "passenger");
+        String destinationName = required(query, "destination");
+        String activityName = required(query, "activity");
+        return service.submit(packageName, travelPackage -> {
+            Passenger passenger = travelPackage.findPassenger(passengerNumber);
+            Activity activity = findActivity(findDestination(travelPackage, destinationName), activityName);
+            if (passenger == null || activity == null) {
+                return new Response(404, "No such passenger or activity");
+            }
+            SignupResult result = travelPackage.signUpAll(List.of(new SignupRequest(passenger, activity))).get(0);
+            return new Response(result.isConfirmed() ? 200 : 409,
+                    result.getStatus() + " " + Wallet.toAmount(result.getAmountCharged()));
+        });
+    }
+
+    // Reports are rendered on the package's lane, where its state is consistent, into a string sent afterwards.
+    private CompletableFuture<Response> report(String packageName, Map<String, String> query,
+                                               BiConsumer<ReportWriter, TravelPackage> report) {
+        ReportFormat format = "csv".equalsIgnoreCase(query.get("format")) ? ReportFormat.CSV : ReportFormat.TEXT;
+        return service.submit(packageName, travelPackage -> {
+            StringBuilder body = new StringBuilder();
+            ReportWriter writer = new ReportWriter(body, format);
+            report.accept(writer, travelPackage);
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new Response(200, body.toString());
+        });
+    }
+
+    private static Destination findDestination(TravelPackage travelPackage, String name) {
+        for (Destination destination : travelPackage.getItinerary()) {
+            if (destination.getName().equals(name)) {
+                return destination;
+            }
+        }
+        return null;
+    }
+
+    private static Activity findActivity(Destination destination, String name) {
+        if (destination != null) {
+            for (Activity activity : destination.getActivities()) {
+                if (activity.getName().equals(name)) {
+                    return activity;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Response failure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IllegalArgumentException) {
+            return new Response(404, cause.getMessage());
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return new Response(503, "Service closed");
+        }
+        return new Response(500, String.valueOf(cause));
+    }
+
+    private static void send(HttpExchange exchange, Response response) {
+        byte[] body = (response.body + "\n").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        try (exchange) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (IOException e) {
+            // The client went away; there is nobody left to tell.
+        }
+    }
+
+    // Query strings
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    query.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+                }
+            }
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, java.nio.charset.StandardCharsets.UTF_8);
+    }
+}
+
+// BookingEventType names the changes published on a BookingEventStream.
+enum BookingEventType {
+    PASSENGER_ADDED,
+    PASSENGER_REMOVED,
+    SIGNED_UP,      // The amount is what was debited from the passenger's balance.
+    CANCELLED       // The amount is what was refunded to the passenger's balance.
+}
+
+// BookingEvent is one slot of a BookingEventStream's ring. Slots are allocated once and reused, so a handler
+// must copy out anything it wants to keep before returning.
+final class BookingEvent {
+    private long sequence;
+    private long timestamp;  // Milliseconds since the epoch.
+    private BookingEventType type;
+    private TravelPackage travelPackage;
+    private Passenger passenger;
+    private Activity activity;  // Null for passenger events.
+    private long amount;        // In minor units.
+
+    void set(long sequence, BookingEventType type, TravelPackage travelPackage, Passenger passenger, Activity activity, long amount) {
+        this.sequence = sequence;
+        this.timestamp = System.currentTimeMillis();
+        this.type = type;
+        this.travelPackage = travelPackage;
+        this.passenger = passenger;
+        this.activity = activity;
+        this.amount = amount;
+    }
+
+    // Getters
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public BookingEventType getType() {
+        return type;
+    }
+
+    public TravelPackage getTravelPackage() {
+        return travelPackage;
+    }
+
+    public Passenger getPassenger() {
+        return passenger;
+    }
+
+    public Activity getActivity() {
+        return activity;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+}
+
+// BookingEventHandler consumes events on its own thread. endOfBatch marks the last event currently available,
+// the natural point to flush buffered output.
+interface BookingEventHandler {
+    void onEvent(BookingEvent event, boolean endOfBatch) throws Exception;
+
+    // Called on the same thread when onEvent throws; the consumer then moves on to the next event. The event's
+    // slot is reused once this returns, so copy anything needed later. By default the failure is logged.
+    default void onException(BookingEvent event, long sequence, Exception e) {
+        System.getLogger(BookingEventHandler.class.getName()).log(System.Logger.Level.WARNING,
+                "Booking event " + sequence + " (" + event.getType() + ") was not handled", e);
+    }
+}
+
+// BookingEventStream publishes every change to its registered packages into a ring of preallocated events, in
+// the style of the LMAX Disruptor, for downstream systems such as billing, CRM and analytics.
+//
+// Publishing claims the next sequence with one atomic increment, fills the slot and marks it published; sign-ups
+// reach the stream from many threads, so several producers may be claiming at once. Each consumer runs on its own
+// thread, tracks its own sequence and hands every published event to its handler in order, taking all events
+// available at once as a batch. The booking thread never waits for a handler; it only waits if the ring is
+// full, that is, the slowest consumer is a whole ring behind.
+class BookingEventStream implements BookingListener, Closeable {
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final BookingEvent[] ring;
+    private final int mask;
+    private final int shift;          // log2 of the ring size; sequence >>> shift is the lap a sequence is on.
+    private final int[] publishedLap;  // Per slot, the lap of the last event published into it.
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final List<EventConsumer> consumers = new CopyOnWriteArrayList<>();
+    private volatile boolean running = true;
+
+    private static final VarHandle LAPS = MethodHandles.arrayElementVarHandle(int[].class);
+
+    // Constructor initializes a ring with the given number of slots, a power of two.
+    public BookingEventStream(int size) {
+        if (size < 2 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Ring size must be a power of two");
+        }
+        this.ring = new BookingEvent[size];
+        for (int i = 0; i < size; i++) {
+            ring[i] = new BookingEvent();
+        }
+        this.mask = size - 1;
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.publishedLap = new int[size];
+        Arrays.fill(publishedLap, -1);
+    }
+
+    // Method to publish every change to a travel package from now on.
+    public void register(TravelPackage travelPackage) {
+        travelPackage.addBookingListener(this);
+    }
+
+    public void unregister(TravelPackage travelPackage) {
+        travelPackage.removeBookingListener(this);
+    }
+
+    // Method to start a consumer thread that sees every event published after this call.
+    public synchronized void addConsumer(String name, BookingEventHandler handler) {
+        if (!running) {
+            throw new IllegalStateException("Event stream is closed");
+        }
+        EventConsumer consumer = new EventConsumer(handler, claimed.get());
+        consumer.thread = new Thread(consumer, "booking-events-" + name);
+        consumer.thread.setDaemon(true);
+        consumers.add(consumer);
+        consumer.thread.start();
+    }
+
+    // Method to publish one event; returns its sequence number.
+    public long publish(BookingEventType type, TravelPackage travelPackage, Passenger passenger, Activity activity, long amount) {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - ring.length;
+        for (int idle = 0; wrapPoint > slowestConsumer(sequence); idle++) {
+            idle(idle);
+        }
+        ring[(int) sequence & mask].set(sequence, type, travelPackage, passenger, activity, amount);
+        LAPS.setRelease(publishedLap, (int) sequence & mask, (int) (sequence >>> shift));
+        return sequence;
+    }
+
+    // The highest sequence claimed so far, -1 before the first event.
+    public long getSequence() {
+        return claimed.get();
+    }
+
+    public int getSize() {
+        return ring.length;
+    }
+
+    // Method to stop the consumers once they have handled every event already published. Events published after
+    // that are dropped, and no longer wait for ring space.
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+        }
+        for (EventConsumer consumer : consumers) {
+            try {
+                consumer.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        consumers.clear();
+    }
+
+    private boolean isPublished(long sequence) {
+        return (int) LAPS.getAcquire(publishedLap, (int) sequence & mask) == (int) (sequence >>> shift);
+    }
+
+    private long slowestConsumer(long limit) {
+        long slowest = limit;
+        for (EventConsumer consumer : consumers) {
+            slowest = Math.min(slowest, consumer.sequence.get());
+        }
+        return slowest;
+    }
+
+    // Waiting backs off from spinning to yielding to short sleeps, so an idle consumer costs almost nothing.
+    private static void idle(int attempt) {
+        if (attempt < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (attempt < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    // EventConsumer hands published events to one handler, in sequence order.
+    private final class EventConsumer implements Runnable {
+        private final BookingEventHandler handler;
+        private final AtomicLong sequence;  // Last sequence handled; the slot after it may be reused once all pass it.
+        private Thread thread;
+
+        EventConsumer(BookingEventHandler handler, long start) {
+            this.handler = handler;
+            this.sequence = new AtomicLong(start);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence.get() + 1;
+            for (int idle = 0; ; idle++) {
+                boolean stopping = !running;
+                long last = next - 1;
+                long highest = claimed.get();
+                while (last < highest && isPublished(last + 1)) {
+                    last++;
+                }
+                if (last >= next) {
+                    for (long current = next; current <= last; current++) {
+                        BookingEvent event = ring[(int) current & mask];
+                        try {
+                            handler.onEvent(event, current == last);
+                        } catch (Exception e) {
+                            // A failing handler must not stall the stream for the other consumers.
+                            handler.onException(event, current, e);
+                        }
+                    }
+                    sequence.set(last);
+                    next = last + 1;
+                    idle = -1;
+                } else if (stopping) {
+                    return;
+                } else {
+                    idle(idle);
+                }
+            }
+        }
+    }
+
+    // BookingListener callbacks, on the booking thread.
+
+    @Override
+    public void passengerAdded(TravelPackage travelPackage, Passenger passenger) {
+        publish(BookingEventType.PASSENGER_ADDED, travelPackage, passenger, null, 0);
+    }
+
+    @Override
+    public void passengerRemoved(TravelPackage travelPackage, Passenger passenger) {
+        publish(BookingEventType.PASSENGER_REMOVED, travelPackage, passenger, null, 0);
+    }
+
+    @Override
+    public void signedUp(TravelPackage travelPackage, Activity activity, Passenger passenger, long amountCharged) {
+        publish(BookingEventType.SIGNED_UP, travelPackage, passenger, activity, amountCharged);
+    }
+
+    @Override
+    public void cancelled(TravelPackage travelPackage, Activity activity, Passenger passenger, long amountRefunded) {
+        publish(BookingEventType.CANCELLED, travelPackage, passenger, activity, amountRefunded);
+    }
+}
+
+// BookingEventFileSink appends each event to a text file as a comma-separated line:
+// sequence, timestamp, type, package, passenger number, activity, amount. Lines are flushed once per batch.
+class BookingEventFileSink implements BookingEventHandler, Closeable {
+    private final Writer out;
+
+    public BookingEventFileSink(Path file) throws IOException {
+        this.out = Files.newBufferedWriter(file, java.nio.charset.StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public void onEvent(BookingEvent event, boolean endOfBatch) throws IOException {
+        out.append(Long.toString(event.getSequence())).append(',')
+                .append(Long.toString(event.getTimestamp())).append(',')
+                .append(event.getType().name()).append(',')
+                .append(event.getTravelPackage() == null ? "" : event.getTravelPackage().getName()).append(',')
+                .append(event.getPassenger() == null ? "" : event.getPassenger().getPassengerNumber()).append(',')
+                .append(event.getActivity() == null ? "" : event.getActivity().getName()).append(',')
+                .append(Long.toString(event.getAmount())).append('\n');
+        if (endOfBatch) {
+            out.flush();
+        }
+    }
+
+    // Close the stream first, so the sink has handled every event before the file is closed.
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
+
+// BookingJournal makes travel packages durable. Every change to a registered package is appended to a
+// write-ahead log; a background writer batches the records and issues one fsync per batch (group commit).
+// Changes are logged from the package's listeners, on the thread that made them, so by default that thread does not
+// wait for the disk: callers that need a change to be durable before they go on, such as before acknowledging a
+// booking to a client, call sync.
+// The log is cut into numbered segments, and older segments are periodically folded into a compact binary
+// snapshot, so a restart only has to load the snapshot and replay the short tail written after it.
+//
+// Files in the journal directory:
+//   bookings.snapshot      state covering every segment numbered below the generation stored in it
+//   bookings-<n>.log       log segment n; the highest-numbered segment is the one being appended to
+class BookingJournal implements BookingListener, Closeable {
+
+    // Durability controls whether a change waits for its record to reach disk.
+    enum Durability {
+        // The changing thread waits for the fsync of the batch that carries its record. Sign-ups pay for the disk,
+        // and a write failure is thrown from the change after it has been applied in memory.
+        GROUP_COMMIT,
+        ASYNC           // Records are written and fsynced in the background; a crash can lose the latest batch.
+    }
+
+    private static final String SNAPSHOT_FILE = "bookings.snapshot";
+    private static final String SEGMENT_PREFIX = "bookings-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int SEGMENT_MAGIC = 0x4E594A4C;
+    private static final int SNAPSHOT_MAGIC = 0x4E594A53;
+    private static final int SEGMENT_HEADER_SIZE = 12;
+
+    private static final byte CREATE_PACKAGE = 1;
+    private static final byte ADD_DESTINATION = 2;
+    private static final byte REMOVE_DESTINATION = 3;
+    private static final byte ADD_ACTIVITY = 4;
+    private static final byte ADD_PASSENGER = 5;
+    private static final byte REMOVE_PASSENGER = 6;
+    private static final byte SIGN_UP = 7;
+    private static final byte BOOKED = 8;  // A sign-up whose charge is already reflected in the logged balance.
+    private static final byte CANCEL = 9;
+    private static final byte UPDATE_ACTIVITY = 10;
+
+    private static final System.Logger LOG = System.getLogger(BookingJournal.class.getName());
+
+    private final Path directory;
+    private final Durability durability;
+    private final long recordsPerSegment;
+    private final Map<String, TravelPackage> packages = new ConcurrentHashMap<>();
+    private final Map<Activity, Integer> activityPositions = new ConcurrentHashMap<>();  // Index within its destination.
+
+    private final BlockingQueue<Object> pending = new LinkedBlockingQueue<>();  // byte[] records and checkpoint requests.
+    private final Object commitLock = new Object();
+    private long enqueued;     // Guarded by commitLock.
+    private long durable;      // Guarded by commitLock.
+    private boolean closed;    // Set once close is called; guarded by commitLock.
+    private IOException failure;  // Why the writer stopped, if it failed; guarded by commitLock.
+
+    private final Thread writer;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "booking-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel segment;
+    private long generation;
+    private long recordsInSegment;
+
+    private BookingJournal(Path directory, Durability durability, long recordsPerSegment) {
+        this.directory = directory;
+        this.durability = durability;
+        this.recordsPerSegment = recordsPerSegment;
+        this.writer = new Thread(this::writeLoop, "booking-journal-writer");
+        this.writer.setDaemon(true);
+    }
+
+    // Method to open (or create) the journal in a directory, logging asynchronously with a new segment every million records.
+    public static BookingJournal open(Path directory) throws IOException {
+        return open(directory, Durability.ASYNC, 1_000_000);
+    }
+
+    // Method to open the journal and recover every package it holds; the recovered packages are already registered.
+    public static BookingJournal open(Path directory, Durability durability, long recordsPerSegment) throws IOException {
+        if (recordsPerSegment <= 0) {
+            throw new IllegalArgumentException("Records per segment must be positive");
+        }
+        Files.createDirectories(directory);
+        BookingJournal journal = new BookingJournal(directory, durability, recordsPerSegment);
+        journal.recover();
+        journal.writer.start();
+        return journal;
+    }
+
+    // Getters
+    public Map<String, TravelPackage> getPackages() {
+        return Collections.unmodifiableMap(packages);
+    }
+
+    public TravelPackage getPackage(String name) {
+        return packages.get(name);
+    }
+
+    // Method to start journaling a package. Its current contents are logged first, so register a package
+    // before other threads start changing it. Returns once they are on disk.
+    public void register(TravelPackage travelPackage) throws IOException {
+        if (packages.putIfAbsent(travelPackage.getName(), travelPackage) != null) {
+            throw new IllegalArgumentException("A package named " + travelPackage.getName() + " is already journaled");
+        }
+        enqueue(record(CREATE_PACKAGE, travelPackage, out -> out.writeInt(travelPackage.getCapacity())));
+        for (Passenger passenger : travelPackage.getPassengers()) {
+            passengerAdded(travelPackage, passenger);
+        }
+        for (Destination destination : travelPackage.getItinerary()) {
+            destinationAdded(travelPackage, destination);
+            for (Activity activity : destination.getActivities()) {
+                activityAdded(travelPackage, destination, activity);
+            }
+        }
+        for (Destination destination : travelPackage.getItinerary()) {
+            for (Activity activity : destination.getActivities()) {
+                for (Passenger passenger : activity.getSignedUpPassengers()) {
+                    Booking booking = passenger.getBooking(activity);
+                    logBooking(BOOKED, travelPackage, activity, passenger, booking == null ? 0 : booking.getAmountPaid());
+                }
+            }
+        }
+        travelPackage.addBookingListener(this);
+        sync();
+    }
+
+    // Method to wait until every change logged so far is on disk.
+    public void sync() throws IOException {
+        long sequence;
+        synchronized (commitLock) {
+            if (failure != null) {
+                throw failure;  // Records appended since were dropped, so none of them are durable.
+            }
+            sequence = enqueued;
+        }
+        try {
+            awaitDurable(sequence);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Method to cut the log and fold everything written so far into the snapshot; returns once the snapshot is on disk.
+    public void checkpoint() throws IOException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        enqueue(done);
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for checkpoint");
+        } catch (ExecutionException e) {
+            throw new IOException("Checkpoint failed", e.getCause());
+        }
+    }
+
+    // Method to flush outstanding records, stop the writer and close the log. If the writer had already stopped on
+    // a write failure, the log is still closed and that failure is thrown.
+    @Override
+    public void close() throws IOException {
+        for (TravelPackage travelPackage : packages.values()) {
+            travelPackage.removeBookingListener(this);
+        }
+        synchronized (commitLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        pending.add(this);  // Wakes the writer up so it can notice the close.
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);  // Let a running compaction finish its files.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segment.close();
+        synchronized (commitLock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    // BookingListener
+
+    @Override
+    public void passengerAdded(TravelPackage travelPackage, Passenger passenger) {
+        Wallet wallet = passenger.getWallet();
+        append(record(ADD_PASSENGER, travelPackage, out -> {
+            out.writeByte(passenger.getTier().ordinal());
+            out.writeUTF(passenger.getName());
+            out.writeUTF(passenger.getPassengerNumber());
+            out.writeLong(wallet == null ? 0 : wallet.getMinorUnits());
+        }));
+    }
+
+    @Override
+    public void passengerRemoved(TravelPackage travelPackage, Passenger passenger) {
+        append(record(REMOVE_PASSENGER, travelPackage, out -> out.writeUTF(passenger.getPassengerNumber())));
+    }
+
+    @Override
+    public void destinationAdded(TravelPackage travelPackage, Destination destination) {
+        List<Activity> activities = destination.getActivities();
+        for (int i = 0; i < activities.size(); i++) {
+            activityPositions.put(activities.get(i), i);
+        }
+        append(record(ADD_DESTINATION, travelPackage, out -> out.writeUTF(destination.getName())));
+    }
+
+    @Override
+    public void destinationRemoved(TravelPackage travelPackage, Destination destination) {
+        for (Activity activity : destination.getActivities()) {
+            activityPositions.remove(activity);
+        }
+        append(record(REMOVE_DESTINATION, travelPackage, out -> out.writeUTF(destination.getName())));
+    }
+
+    @Override
+    public void activityAdded(TravelPackage travelPackage, Destination destination, Activity activity) {
+        activityPositions.computeIfAbsent(activity, a -> destination.getActivities().lastIndexOf(a));
+        append(record(ADD_ACTIVITY, travelPackage, out -> {
+            out.writeUTF(destination.getName());
+            out.writeUTF(activity.getName());
+            out.writeUTF(activity.getDescription());
+            out.writeDouble(activity.getCost());
+            out.writeInt(activity.getCapacity());
+            out.writeBoolean(activity.isConcurrent());
+            out.writeInt(Math.max(0, activity.getCurrentCount() - activity.getSignedUpPassengers().size()));  // Seats held without a sign-up.
+            writeTimeSlot(out, activity.getTimeSlot());
+        }));
+    }
+
+    @Override
+    public void signedUp(TravelPackage travelPackage, Activity activity, Passenger passenger, long amountCharged) {
+        logBooking(SIGN_UP, travelPackage, activity, passenger, amountCharged);
+    }
+
+    // A seat handed to a waiting passenger is logged as that passenger's own sign-up, right after the cancellation.
+    @Override
+    public void cancelled(TravelPackage travelPackage, Activity activity, Passenger passenger, long amountRefunded) {
+        logBooking(CANCEL, travelPackage, activity, passenger, amountRefunded);
+    }
+
+    @Override
+    public void activityUpdated(TravelPackage travelPackage, Activity activity) {
+        Destination destination = travelPackage.getDestinationOf(activity);
+        Integer position = activityPositions.get(activity);
+        if (destination == null || position == null) {
+            LOG.log(System.Logger.Level.WARNING, "Change to activity {0} not journaled: it is not in the itinerary of {1}",
+                    activity.getName(), travelPackage.getName());
+            return;
+        }
+        append(record(UPDATE_ACTIVITY, travelPackage, out -> {
+            out.writeUTF(destination.getName());
+            out.writeInt(position);
+            out.writeUTF(activity.getName());
+            out.writeUTF(activity.getDescription());
+            out.writeDouble(activity.getCost());
+            out.writeInt(activity.getCapacity());
+            writeTimeSlot(out, activity.getTimeSlot());
+        }));
+    }
+
+    // A time slot is a scheduled flag followed by start and end, each a UTC epoch second and nanoseconds, as in
+    // MappedCatalog. Sign-ups are checked against it, so a replay without it would let clashing bookings through.
+    private static void writeTimeSlot(DataOutputStream out, TimeSlot slot) throws IOException {
+        out.writeBoolean(slot != null);
+        if (slot != null) {
+            writeTime(out, slot.getStart());
+            writeTime(out, slot.getEnd());
+        }
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static TimeSlot readTimeSlot(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new TimeSlot(readTime(in), readTime(in)) : null;
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+
+    // Bookings are addressed by destination and position, so one on an activity outside the package's itinerary
+    // cannot be replayed. The booking has already happened and the caller cannot be told, so it is reported here.
+    private void logBooking(byte type, TravelPackage travelPackage, Activity activity, Passenger passenger, long amount) {
+        Destination destination = travelPackage.getDestinationOf(activity);
+        Integer position = activityPositions.get(activity);
+        if (destination == null || position == null) {
+            LOG.log(System.Logger.Level.WARNING, "Booking of {0} on {1} not journaled: the activity is not in the itinerary of {2}",
+                    passenger.getPassengerNumber(), activity.getName(), travelPackage.getName());
+            return;
+        }
+        append(record(type, travelPackage, out -> {
+            out.writeUTF(destination.getName());
+            out.writeInt(position);
+            out.writeUTF(passenger.getPassengerNumber());
+            out.writeLong(amount);
+        }));
+    }
+
+    // Appending and group commit
+
+    private interface RecordBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static byte[] record(byte type, TravelPackage travelPackage, RecordBody body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            out.writeUTF(travelPackage.getName());
+            body.write(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Appends from the listeners run inside changes that have already happened, so they never throw in ASYNC mode:
+    // after a write failure the record is dropped and the failure is reported by sync and close instead.
+    private void append(byte[] record) {
+        long sequence;
+        synchronized (commitLock) {
+            if (failure != null || closed) {
+                return;
+            }
+            pending.add(record);
+            sequence = ++enqueued;
+        }
+        if (durability == Durability.GROUP_COMMIT) {
+            awaitDurable(sequence);
+        }
+    }
+
+    private long enqueue(Object entry) {
+        synchronized (commitLock) {
+            if (failure != null) {
+                throw new UncheckedIOException("Booking journal has failed", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Booking journal is closed");
+            }
+            pending.add(entry);
+            return ++enqueued;
+        }
+    }
+
+    private void awaitDurable(long sequence) {
+        boolean interrupted = false;
+        synchronized (commitLock) {
+            while (durable < sequence && failure == null) {
+                try {
+                    commitLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durable < sequence) {
+                throw new UncheckedIOException("Booking journal has failed", failure);
+            }
+        }
+    }
+
+    // The writer drains whatever has queued up, writes it with one write call and one fsync, and then releases
+    // every thread waiting on that batch.
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        CRC32 crc = new CRC32();
+        try {
+            while (true) {
+                Object first = pending.take();
+                batch.add(first);
+                pending.drainTo(batch);
+                int written = 0;
+                for (Object entry : batch) {
+                    if (entry instanceof byte[]) {
+                        byte[] record = (byte[]) entry;
+                        if (buffer.remaining() < record.length + 8) {
+                            writeFully(buffer);
+                            if (buffer.capacity() < record.length + 8) {
+                                buffer = ByteBuffer.allocateDirect(record.length + 8);
+                            }
+                        }
+                        crc.reset();
+                        crc.update(record);
+                        buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+                        written++;
+                    } else if (entry instanceof CompletableFuture) {
+                        writeFully(buffer);
+                        segment.force(false);
+                        rotate((CompletableFuture<?>) entry);
+                    }
+                }
+                writeFully(buffer);
+                segment.force(false);
+                recordsInSegment += written;
+                int committed = 0;
+                for (Object entry : batch) {
+                    if (entry != this) {
+                        committed++;
+                    }
+                }
+                synchronized (commitLock) {
+                    durable += committed;
+                    commitLock.notifyAll();
+                }
+                boolean closing = batch.contains(this);
+                batch.clear();
+                if (closing) {
+                    return;
+                }
+                if (recordsInSegment >= recordsPerSegment) {
+                    rotate(new CompletableFuture<>());
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            IOException failed = e instanceof IOException ? (IOException) e : new InterruptedIOException("Journal writer interrupted");
+            synchronized (commitLock) {
+                failure = failed;
+                commitLock.notifyAll();
+            }
+            // Nothing is enqueued once failure is set, so this reaches every checkpoint still waiting on the writer.
+            pending.drainTo(batch);
+            for (Object entry : batch) {
+                if (entry instanceof CompletableFuture) {
+                    ((CompletableFuture<?>) entry).completeExceptionally(failed);
+                }
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Method to seal the current segment, start the next one, and hand the sealed segment to the compactor.
+    private void rotate(CompletableFuture<?> done) throws IOException {
+        long sealed = generation;
+        segment.close();
+        generation++;
+        segment = createSegment(generation);
+        recordsInSegment = 0;
+        compactor.execute(() -> {
+            try {
+                compact(sealed);
+                done.complete(null);
+            } catch (IOException | RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        });
+    }
+
+    // Compaction rebuilds the state covered by the snapshot plus every segment up to and including lastSealed into
+    // private objects, writes it as the new snapshot, and only then deletes the segments it replaced.
+    private void compact(long lastSealed) throws IOException {
+        Replay replay = new Replay();
+        long from = replay.loadSnapshot(directory.resolve(SNAPSHOT_FILE));
+        for (long segmentGeneration : segmentGenerations()) {
+            if (segmentGeneration >= from && segmentGeneration <= lastSealed) {
+                replay.replaySegment(segmentPath(segmentGeneration), false);
+            }
+        }
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        writeSnapshot(replay.packages, lastSealed + 1, temporary);
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long segmentGeneration : segmentGenerations()) {
+            if (segmentGeneration <= lastSealed) {
+                Files.deleteIfExists(segmentPath(segmentGeneration));
+            }
+        }
+    }
+
+    // Recovery
+
+    private void recover() throws IOException {
+        Replay replay = new Replay();
+        long from = replay.loadSnapshot(directory.resolve(SNAPSHOT_FILE));
+        List<Long> generations = segmentGenerations();
+        long active = from;
+        for (int i = 0; i < generations.size(); i++) {
+            long segmentGeneration = generations.get(i);
+            if (segmentGeneration >= from) {
+                replay.replaySegment(segmentPath(segmentGeneration), i == generations.size() - 1);
+                active = segmentGeneration;
+            } else {
+                Files.delete(segmentPath(segmentGeneration));  // Already in the snapshot; left over from an interrupted compaction.
+            }
+        }
+        generation = active;
+        Path activePath = segmentPath(active);
+        if (Files.exists(activePath) && Files.size(activePath) >= SEGMENT_HEADER_SIZE) {
+            segment = FileChannel.open(activePath, StandardOpenOption.WRITE);
+            segment.position(segment.size());
+        } else {
+            segment = createSegment(active);
+        }
+        for (TravelPackage travelPackage : replay.packages.values()) {
+            packages.put(travelPackage.getName(), travelPackage);
+            for (Destination destination : travelPackage.getItinerary()) {
+                List<Activity> activities = destination.getActivities();
+                for (int i = 0; i < activities.size(); i++) {
+                    activityPositions.put(activities.get(i), i);
+                }
+            }
+            travelPackage.addBookingListener(this);
+        }
+    }
+
+    private FileChannel createSegment(long segmentGeneration) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(segmentGeneration),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).putInt(SEGMENT_MAGIC).putLong(segmentGeneration);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        return channel;
+    }
+
+    private Path segmentPath(long segmentGeneration) {
+        return directory.resolve(SEGMENT_PREFIX + segmentGeneration + SEGMENT_SUFFIX);
+    }
+
+    private List<Long> segmentGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    generations.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours.
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static void writeSnapshot(Map<String, TravelPackage> packages, long nextGeneration, Path path) throws IOException {
+        try (FileOutputStream file = new FileOutputStream(path.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(nextGeneration);
+            out.writeInt(packages.size());
+            for (TravelPackage travelPackage : packages.values()) {
+                out.writeUTF(travelPackage.getName());
+                out.writeInt(travelPackage.getCapacity());
+                List<Passenger> passengers = travelPackage.getPassengers();
+                out.writeInt(passengers.size());
+                for (Passenger passenger : passengers) {
+                    Wallet wallet = passenger.getWallet();
+                    out.writeByte(passenger.getTier().ordinal());
+                    out.writeUTF(passenger.getName());
+                    out.writeUTF(passenger.getPassengerNumber());
+                    out.writeLong(wallet == null ? 0 : wallet.getMinorUnits());
+                }
+                out.writeInt(travelPackage.getItinerary().size());
+                for (Destination destination : travelPackage.getItinerary()) {
+                    out.writeUTF(destination.getName());
+                    out.writeInt(destination.getActivities().size());
+                    for (Activity activity : destination.getActivities()) {
+                        out.writeUTF(activity.getName());
+                        out.writeUTF(activity.getDescription());
+                        out.writeDouble(activity.getCost());
+                        out.writeInt(activity.getCapacity());
+                        out.writeBoolean(activity.isConcurrent());
+                        out.writeInt(activity.getCurrentCount());
+                        writeTimeSlot(out, activity.getTimeSlot());
+                        List<Passenger> signedUp = activity.getSignedUpPassengers();
+                        out.writeInt(signedUp.size());
+                        for (Passenger passenger : signedUp) {
+                            Booking booking = passenger.getBooking(activity);
+                            out.writeUTF(passenger.getPassengerNumber());
+                            out.writeLong(booking == null ? 0 : booking.getAmountPaid());
+                        }
+                    }
+                }
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    // Replay rebuilds packages from a snapshot and log segments, without any listeners attached.
+    private static final class Replay {
+        private final Map<String, TravelPackage> packages = new LinkedHashMap<>();
+        private final Map<String, Map<String, Destination>> destinations = new HashMap<>();
+
+        // Returns the first segment generation the snapshot does not cover (0 when there is no snapshot).
+        long loadSnapshot(Path path) throws IOException {
+            if (!Files.exists(path)) {
+                return 0;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                if (in.readInt() != SNAPSHOT_MAGIC) {
+                    throw new IOException("Not a booking snapshot: " + path);
+                }
+                long nextGeneration = in.readLong();
+                int packageCount = in.readInt();
+                for (int p = 0; p < packageCount; p++) {
+                    TravelPackage travelPackage = createPackage(in.readUTF(), in.readInt());
+                    int passengerCount = in.readInt();
+                    for (int i = 0; i < passengerCount; i++) {
+                        addPassenger(travelPackage, in.readByte(), in.readUTF(), in.readUTF(), in.readLong());
+                    }
+                    int destinationCount = in.readInt();
+                    for (int d = 0; d < destinationCount; d++) {
+                        Destination destination = addDestination(travelPackage, in.readUTF());
+                        int activityCount = in.readInt();
+                        for (int a = 0; a < activityCount; a++) {
+                            Activity activity = new Activity(in.readUTF(), in.readUTF(), in.readDouble(), in.readInt(), in.readBoolean());
+                            int currentCount = in.readInt();
+                            activity.setTimeSlot(readTimeSlot(in));
+                            int signedUpCount = in.readInt();
+                            for (int i = 0; i < signedUpCount; i++) {
+                                Passenger passenger = travelPackage.findPassenger(in.readUTF());
+                                long amountPaid = in.readLong();
+                                if (passenger != null && activity.addToRoster(passenger) == SignupStatus.CONFIRMED) {
+                                    passenger.addBooking(new Booking(activity, destination, amountPaid));
+                                }
+                            }
+                            activity.setCurrentCount(currentCount);
+                            destination.addActivity(activity);
+                        }
+                    }
+                }
+                return nextGeneration;
+            }
+        }
+
+        // Applies every intact record in a segment. A torn record at the end of the newest segment is cut off.
+        void replaySegment(Path path, boolean truncateTornTail) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = channel.size();
+                if (size < SEGMENT_HEADER_SIZE) {
+                    return;
+                }
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (data.getInt() != SEGMENT_MAGIC) {
+                    throw new IOException("Not a booking log segment: " + path);
+                }
+                data.getLong();
+                CRC32 crc = new CRC32();
+                long valid = data.position();
+                while (data.remaining() >= 8) {
+                    int length = data.getInt();
+                    int checksum = data.getInt();
+                    if (length <= 0 || length > data.remaining()) {
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    data.get(record);
+                    crc.reset();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    apply(new DataInputStream(new ByteArrayInputStream(record)));
+                    valid = data.position();
+                }
+                if (truncateTornTail && valid < size) {
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+            }
+        }
+
+        private void apply(DataInputStream in) throws IOException {
+            byte type = in.readByte();
+            String packageName = in.readUTF();
+            if (type == CREATE_PACKAGE) {
+                createPackage(packageName, in.readInt());
+                return;
+            }
+            TravelPackage travelPackage = packages.get(packageName);
+            if (travelPackage == null) {
+                return;
+            }
+            switch (type) {
+                case ADD_DESTINATION:
+                    addDestination(travelPackage, in.readUTF());
+                    break;
+                case REMOVE_DESTINATION: {
+                    Destination destination = destinations.get(packageName).remove(in.readUTF());
+                    if (destination != null) {
+                        travelPackage.removeDestination(destination);
+                    }
+                    break;
+                }
+                case ADD_ACTIVITY: {
+                    Destination destination = destinations.get(packageName).get(in.readUTF());
+                    Activity activity = new Activity(in.readUTF(), in.readUTF(), in.readDouble(), in.readInt(), in.readBoolean());
+                    activity.setCurrentCount(in.readInt());
+                    activity.setTimeSlot(readTimeSlot(in));
+                    if (destination != null) {
+                        destination.addActivity(activity);
+                    }
+                    break;
+                }
+                case ADD_PASSENGER:
+                    addPassenger(travelPackage, in.readByte(), in.readUTF(), in.readUTF(), in.readLong());
+                    break;
+                case UPDATE_ACTIVITY: {
+                    Destination destination = destinations.get(packageName).get(in.readUTF());
+                    int position = in.readInt();
+                    String name = in.readUTF();
+                    String description = in.readUTF();
+                    double cost = in.readDouble();
+                    int capacity = in.readInt();
+                    TimeSlot slot = readTimeSlot(in);
+                    if (destination == null || position >= destination.getActivities().size()) {
+                        break;
+                    }
+                    Activity activity = destination.getActivities().get(position);
+                    // Only an activity nobody has booked can be rescheduled, so a booked one still has this slot.
+                    if (!Objects.equals(slot, activity.getTimeSlot())) {
+                        activity.setTimeSlot(slot);
+                    }
+                    activity.setName(name);
+                    activity.setDescription(description);
+                    activity.setCost(cost);
+                    // A sign-up logged just after a shrink may have taken its seat just before it.
+                    activity.setCapacity(Math.max(capacity, activity.getCurrentCount()));
+                    break;
+                }
+                case REMOVE_PASSENGER: {
+                    Passenger passenger = travelPackage.findPassenger(in.readUTF());
+                    if (passenger != null) {
+                        travelPackage.removePassenger(passenger);
+                    }
+                    break;
+                }
+                case SIGN_UP:
+                case BOOKED:
+                case CANCEL: {
+                    Destination destination = destinations.get(packageName).get(in.readUTF());
+                    int position = in.readInt();
+                    Passenger passenger = travelPackage.findPassenger(in.readUTF());
+                    long amountCharged = in.readLong();
+                    if (destination == null || position >= destination.getActivities().size()) {
+                        break;
+                    }
+                    Activity activity = destination.getActivities().get(position);
+                    if (type == CANCEL) {
+                        if (passenger != null && activity.removeFromRoster(passenger)) {
+                            passenger.refund(amountCharged);
+                            activity.releaseSeat();
+                        }
+                    } else if (passenger == null) {
+                        activity.tryReserveSeat();
+                    } else if (activity.addToRoster(passenger) == SignupStatus.CONFIRMED) {
+                        activity.tryReserveSeat();
+                        if (type == SIGN_UP) {
+                            passenger.tryDebit(amountCharged);
+                        }
+                        activity.confirmSignUp(passenger, amountCharged);
+                    }
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown booking record type " + type);
+            }
+        }
+
+        private TravelPackage createPackage(String name, int capacity) {
+            TravelPackage travelPackage = new TravelPackage(name, capacity);
+            packages.put(name, travelPackage);
+            destinations.put(name, new HashMap<>());
+            return travelPackage;
+        }
+
+        private Destination addDestination(TravelPackage travelPackage, String name) {
+            Destination destination = new Destination(name);
+            travelPackage.addDestination(destination);
+            destinations.get(travelPackage.getName()).put(name, destination);
+            return destination;
+        }
+
+        private static void addPassenger(TravelPackage travelPackage, byte tier, String name, String passengerNumber, long balance) {
+            travelPackage.addPassenger(PassengerTier.values()[tier].newPassenger(name, passengerNumber, Wallet.toAmount(balance)));
+        }
+    }
+}
+
+// MappedCatalog reads a travel package catalog (destinations and their activities) from a compact binary file
+// through a memory-mapped buffer. Opening it only checks the header. Each Activity is decoded the first time
+// it is asked for, so startup does not depend on catalog size and the heap only holds what was actually used.
+//
+// File layout (big-endian):
+//   header        magic, version, destination count, activity count, package name offset, package capacity
+//   destinations  per destination: name offset, index of its first activity, activity count     (12 bytes each)
+//   activities    per activity: cost (double), capacity, name offset, description offset, flags,
+//                 time slot start and end (UTC epoch second as a long, then nanoseconds as an int)  (48 bytes each)
+//   strings       per string: length (int) followed by UTF-8 bytes; offsets above point here
+//
+// Version 1 files, whose activity records stop after the description offset (20 bytes), are still read.
+class MappedCatalog {
+    private static final int MAGIC = 0x4E594341;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int DESTINATION_SIZE = 12;
+    private static final int ACTIVITY_SIZE = 48;
+    private static final int ACTIVITY_SIZE_V1 = 20;
+    private static final int CONCURRENT = 1;  // Activity flags.
+    private static final int SCHEDULED = 2;
+
+    private final ByteBuffer data;
+    private final int destinationCount;
+    private final int activityCount;
+    private final int destinationsStart;
+    private final int activitiesStart;
+    private final int activitySize;
+    private final Map<Integer, Activity> decodedActivities = new ConcurrentHashMap<>();
+    private final Map<Integer, Destination> decodedDestinations = new ConcurrentHashMap<>();
+
+    private MappedCatalog(ByteBuffer data) throws IOException {
+        this.data = data;
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a travel catalog file");
+        }
+        if (data.getInt(4) != VERSION && data.getInt(4) != 1) {
+            throw new IOException("Unsupported travel catalog version " + data.getInt(4));
+        }
+        this.activitySize = data.getInt(4) == 1 ? ACTIVITY_SIZE_V1 : ACTIVITY_SIZE;
+        this.destinationCount = data.getInt(8);
+        this.activityCount = data.getInt(12);
+        this.destinationsStart = HEADER_SIZE;
+        this.activitiesStart = HEADER_SIZE + destinationCount * DESTINATION_SIZE;
+    }
+
+    // Method to map a catalog file. The mapping stays valid after the channel is closed.
+    public static MappedCatalog open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Method to write the itinerary of a package as a catalog file. Sign-ups and passengers are not part of a catalog.
+    public static void write(TravelPackage travelPackage, Path path) throws IOException {
+        List<Destination> itinerary = travelPackage.getItinerary();
+        int activities = 0;
+        for (Destination destination : itinerary) {
+            activities += destination.getActivities().size();
+        }
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        Map<String, Integer> stringOffsets = new HashMap<>();
+        int stringsStart = HEADER_SIZE + itinerary.size() * DESTINATION_SIZE + activities * ACTIVITY_SIZE;
+
+        ByteBuffer tables = ByteBuffer.allocate(stringsStart);
+        tables.putInt(MAGIC).putInt(VERSION).putInt(itinerary.size()).putInt(activities)
+                .putInt(stringsStart + intern(travelPackage.getName(), strings, stringOffsets))
+                .putInt(travelPackage.getCapacity());
+        int firstActivity = 0;
+        for (Destination destination : itinerary) {
+            tables.putInt(stringsStart + intern(destination.getName(), strings, stringOffsets))
+                    .putInt(firstActivity)
+                    .putInt(destination.getActivities().size());
+            firstActivity += destination.getActivities().size();
+        }
+        for (Destination destination : itinerary) {
+            for (Activity activity : destination.getActivities()) {
+                TimeSlot slot = activity.getTimeSlot();
+                tables.putDouble(activity.getCost())
+                        .putInt(activity.getCapacity())
+                        .putInt(stringsStart + intern(activity.getName(), strings, stringOffsets))
+                        .putInt(stringsStart + intern(activity.getDescription(), strings, stringOffsets))
+                        .putInt((activity.isConcurrent() ? CONCURRENT : 0) | (slot != null ? SCHEDULED : 0));
+                putTime(tables, slot == null ? null : slot.getStart());
+                putTime(tables, slot == null ? null : slot.getEnd());
+            }
+        }
+        if ((long) stringsStart + strings.size() > Integer.MAX_VALUE) {
+            throw new IOException("Catalog is too large for a single file");
+        }
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            out.write(tables.array());
+            strings.writeTo(out);
+        }
+    }
+
+    private static void putTime(ByteBuffer tables, LocalDateTime time) {
+        tables.putLong(time == null ? 0 : time.toEpochSecond(ZoneOffset.UTC)).putInt(time == null ? 0 : time.getNano());
+    }
+
+    // Returns the offset of the string within the string area, adding it on first use.
+    private static int intern(String value, ByteArrayOutputStream strings, Map<String, Integer> offsets) {
+        Integer offset = offsets.get(value);
+        if (offset == null) {
+            offset = strings.size();
+            byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            strings.write(bytes.length >>> 24);
+            strings.write(bytes.length >>> 16);
+            strings.write(bytes.length >>> 8);
+            strings.write(bytes.length);
+            strings.write(bytes, 0, bytes.length);
+            offsets.put(value, offset);
+        }
+        return offset;
+    }
+
+    // Getters
+    public String getPackageName() {
+        return readString(data.getInt(16));
+    }
+
+    public int getPackageCapacity() {
+        return data.getInt(20);
+    }
+
+    public int getDestinationCount() {
+        return destinationCount;
+    }
+
+    public int getActivityCount() {
+        return activityCount;
+    }
+
+    // Number of activities decoded into objects so far.
+    public int getDecodedActivityCount() {
+        return decodedActivities.size();
+    }
+
+    public String getDestinationName(int destination) {
+        return readString(data.getInt(destinationRecord(destination)));
+    }
+
+    public int getActivityCount(int destination) {
+        return data.getInt(destinationRecord(destination) + 8);
+    }
+
+    // Method to get an activity of a destination, decoding it on first access.
+    public Activity getActivity(int destination, int index) {
+        if (index < 0 || index >= getActivityCount(destination)) {
+            throw new IndexOutOfBoundsException("Activity " + index + " of destination " + destination);
+        }
+        return getActivity(data.getInt(destinationRecord(destination) + 4) + index);
+    }
+
+    // Method to get an activity by its position in the whole catalog, decoding it on first access.
+    public Activity getActivity(int activity) {
+        Objects.checkIndex(activity, activityCount);
+        return decodedActivities.computeIfAbsent(activity, this::decodeActivity);
+    }
+
+    // Cost and capacity straight from the file, for filtering without decoding whole activities.
+    public double getActivityCost(int activity) {
+        return data.getDouble(activityRecord(activity));
+    }
+
+    public int getActivityCapacity(int activity) {
+        return data.getInt(activityRecord(activity) + 8);
+    }
+
+    // Method to get a destination with all of its activities; only that destination's activities are decoded.
+    public Destination getDestination(int destination) {
+        Objects.checkIndex(destination, destinationCount);
+        return decodedDestinations.computeIfAbsent(destination, d -> {
+            Destination result = new Destination(getDestinationName(d));
+            for (int i = 0; i < getActivityCount(d); i++) {
+                result.addActivity(getActivity(d, i));
+            }
+            return result;
+        });
+    }
+
+    // Method to build a full TravelPackage from the catalog. This decodes everything, so it is meant for small catalogs.
+    public TravelPackage toTravelPackage() {
+        TravelPackage travelPackage = new TravelPackage(getPackageName(), getPackageCapacity());
+        for (int d = 0; d < destinationCount; d++) {
+            travelPackage.addDestination(getDestination(d));
+        }
+        return travelPackage;
+    }
+
+    private Activity decodeActivity(int activity) {
+        int record = activityRecord(activity);
+        int flags = activitySize == ACTIVITY_SIZE ? data.getInt(record + 20) : 0;
+        Activity decoded = new Activity(readString(data.getInt(record + 12)), readString(data.getInt(record + 16)),
+                data.getDouble(record), data.getInt(record + 8), (flags & CONCURRENT) != 0);
+        if ((flags & SCHEDULED) != 0) {
+            decoded.setTimeSlot(new TimeSlot(readTime(record + 24), readTime(record + 36)));
+        }
+        return decoded;
+    }
+
+    private LocalDateTime readTime(int offset) {
+        return LocalDateTime.ofEpochSecond(data.getLong(offset), data.getInt(offset + 8), ZoneOffset.UTC);
+    }
+
+    private int destinationRecord(int destination) {
+        Objects.checkIndex(destination, destinationCount);
+        return destinationsStart + destination * DESTINATION_SIZE;
+    }
+
+    private int activityRecord(int activity) {
+        Objects.checkIndex(activity, activityCount);
+        return activitiesStart + activity * activitySize;
+    }
+
+    private String readString(int offset) {
+        int length = data.getInt(offset);
+        byte[] bytes = new byte[length];
+        data.get(offset + 4, bytes);
+        return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);
+    }
+}
+
+// Main class to demonstrate the functionalities with dummy data.
+public class Main {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("serve")) {
+            BookingServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // Create dummy data for travel packages, destinations, activities, and passengers.
+
+        // Create Travel Package 1
+        TravelPackage travelPackage1 = new TravelPackage("Trip to Bali", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving at the Great Barrier Reef", 100.0, 5);
+        Activity surfing = new Activity("Surfing", "Surfing at Bali's beaches", 50.0, 10);
+        bali.addActivity(diving);
+        bali.addActivity(surfing);
+        travelPackage1.addDestination(bali);
+
+        // Create Travel Package 2
+        TravelPackage travelPackage2 = new TravelPackage("Trip to Hawaii", 15);
+        Destination hawaii = new Destination("Hawaii");
+        Activity snorkeling = new Activity("Snorkeling", "Snorkeling at the Hawaiian reef", 80.0, 8);
+        Activity hiking = new Activity("Hiking", "Hiking in Hawaii", 60.0, 12);
+        hawaii.addActivity(snorkeling);
+        hawaii.addActivity(hiking);
+        travelPackage2.addDestination(hawaii);
+
+        // Sign up passengers for activities and print the itinerary, passenger list, and available activities for each travel package.
+
+        // Add passengers to Travel Package 1
+        Passenger passenger1 = new StandardPassenger("John Doe", "P123", 500.0);
+        Passenger passenger2 = new GoldPassenger("Jane Doe", "P456", 700.0);
+        Passenger passenger3 = new PremiumPassenger("Steve Smith", "P789");
+        travelPackage1.addPassenger(passenger1);
+        travelPackage1.addPassenger(passenger2);
+        travelPackage1.addPassenger(passenger3);
+
+        // Sign up passengers for activities in Travel Package 1
+        passenger1.signUpForActivity(diving); // Standard passenger signs up for an activity
+        passenger2.signUpForActivity(surfing); // Gold passenger signs up for an activity
+        passenger3.signUpForActivity(diving); // Premium passenger signs up for an activity for free
+
+        // Add passengers to Travel Package 2
+        Passenger passenger4 = new StandardPassenger("Mary Johnson", "P321", 400.0);
+        Passenger passenger5 = new GoldPassenger("Bob Brown", "P654", 500.0);
+        Passenger passenger6 = new PremiumPassenger("Alice Green", "P987");
+        travelPackage2.addPassenger(passenger4);
+        travelPackage2.addPassenger(passenger5);
+        travelPackage2.addPassenger(passenger6);
+
+        // Sign up passengers for activities in Travel Package 2
+        passenger4.signUpForActivity(snorkeling);
+        passenger5.signUpForActivity(hiking);
+        passenger6.signUpForActivity(snorkeling);
+
+        // Print itinerary of Travel Package 1
+        System.out.println("\nItinerary of Travel Package 1:");
+        bali.printItinerary();
+
+        // Print passenger list of Travel Package 1
+        System.out.println("\nPassenger List of Travel Package 1:");
+        travelPackage1.printPassengerList();
+
+        // Print available activities of Travel Package 1
+        System.out.println("\nAvailable Activities in Travel Package 1:");
+        travelPackage1.printAvailableActivities();
+
+        // Print itinerary of Travel Package 2
+        System.out.println("\nItinerary of Travel Package 2:");
+        hawaii.printItinerary();
+
+        // Print passenger list of Travel Package 2
+        System.out.println("\nPassenger List of Travel Package 2:");
+        travelPackage2.printPassengerList();
+
+        // Print available activities of Travel Package 2
+        System.out.println("\nAvailable Activities in Travel Package 2:");
+        travelPackage2.printAvailableActivities();
+
+        // Print individual passenger details
+        System.out.println("\nPassenger Details:");
+        passenger1.printPassengerDetails();
+        passenger2.printPassengerDetails();
+        passenger3.printPassengerDetails();
+        passenger4.printPassengerDetails();
+        passenger5.printPassengerDetails();
+        passenger6.printPassengerDetails();
+    }
+}
+
+
+
+//below are the possible test cases encountered,
+// but implementation shows output for the data given in the main class above.
+
+//separate testing classes
+
+
+//1. Travel Package Testing class
+class TravelPackageTest {
+
+    public static void main(String[] args) {
+        testConstructor();
+        testAddDestination();
+        testAddPassengerWithSpace();
+        testAddPassengerNoSpace();
+        testRemoveDestination();
+        testRemovePassenger();
+        testGetters();
+        testSetters();
+        testSetCapacityLessThanPassengers();
+        testFindPassenger();
+        testAddPassengerDuplicateNumber();
+        testSignUpAll();
+        testSignUpAllInsufficientBalance();
+        testSignUpAllAllOrNothing();
+        testAvailableActivities();
+        testRemoveOneOfTwoCopies();
+    }
+
+    // A destination listed twice keeps its activities available until both copies are removed.
+    public static void testRemoveOneOfTwoCopies() {
+        TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 2);
+        bali.addActivity(diving);
+        travelPackage.addDestination(bali);
+        travelPackage.addDestination(bali);
+        boolean removedOne = travelPackage.removeDestination(bali) && travelPackage.getItinerary().equals(List.of(bali));
+        new PremiumPassenger("Jim Doe", "11121").signUpForActivity(diving);
+        boolean stillIndexed = travelPackage.getAvailableActivities().equals(List.of(diving)) &&
+                travelPackage.getDestinationOf(diving) == bali;
+        boolean removedBoth = travelPackage.removeDestination(bali) && travelPackage.getItinerary().isEmpty() &&
+                travelPackage.getAvailableActivities().isEmpty() && !travelPackage.removeDestination(bali);
+        if (removedOne && stillIndexed && removedBoth) {
+            System.out.println("testRemoveOneOfTwoCopies: Passed");
+        } else {
+            System.out.println("testRemoveOneOfTwoCopies: Failed");
+        }
+    }
+
+    public static void testAvailableActivities() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            Destination bali = new Destination("Bali");
+            Destination hawaii = new Destination("Hawaii");
+            Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+            Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 3);
+            Activity hiking = new Activity("Hiking", "Hiking trails", 60.0, 5);
+            bali.addActivity(diving);
+            travelPackage.addDestination(bali);
+            travelPackage.addDestination(hawaii);
+            hawaii.addActivity(hiking);
+            bali.addActivity(surfing);
+            boolean inItineraryOrder = travelPackage.getAvailableActivities().equals(List.of(diving, surfing, hiking));
+            new PremiumPassenger("Jim Doe", "11121").signUpForActivity(diving);
+            boolean fullRemoved = travelPackage.getAvailableActivities().equals(List.of(surfing, hiking));
+            boolean bySpaces = travelPackage.getAvailableActivities(AvailabilityOrder.MOST_SPACES).equals(List.of(hiking, surfing));
+            boolean byCost = travelPackage.getAvailableActivities(AvailabilityOrder.LOWEST_COST).equals(List.of(surfing, hiking));
+            diving.setCapacity(2);
+            boolean reopened = travelPackage.getAvailableActivities().contains(diving);
+            travelPackage.removeDestination(hawaii);
+            boolean destinationRemoved = travelPackage.getAvailableActivities().equals(List.of(diving, surfing));
+            if (inItineraryOrder && fullRemoved && bySpaces && byCost && reopened && destinationRemoved) {
+                System.out.println("testAvailableActivities: Passed");
+            } else {
+                System.out.println("testAvailableActivities: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testAvailableActivities: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSignUpAll() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            Activity diving = new Activity("Diving", "Scuba diving", 100.0, 2);
+            StandardPassenger passenger1 = new StandardPassenger("John Doe", "12345", 1000.0);
+            GoldPassenger passenger2 = new GoldPassenger("Jane Doe", "67890", 1000.0);
+            PremiumPassenger passenger3 = new PremiumPassenger("Jim Doe", "11121");
+            PremiumPassenger outsider = new PremiumPassenger("Ann Doe", "99999");
+            travelPackage.addPassenger(passenger1);
+            travelPackage.addPassenger(passenger2);
+            travelPackage.addPassenger(passenger3);
+            List<SignupResult> results = travelPackage.signUpAll(List.of(
+                    new SignupRequest(passenger1, diving),
+                    new SignupRequest(passenger1, diving),
+                    new SignupRequest(outsider, diving),
+                    new SignupRequest(passenger2, diving),
+                    new SignupRequest(passenger3, diving)));
+            if (results.get(0).getStatus() == SignupStatus.CONFIRMED && results.get(0).getAmountCharged() == 10000 &&
+                    results.get(1).getStatus() == SignupStatus.ALREADY_SIGNED_UP &&
+                    results.get(2).getStatus() == SignupStatus.NOT_IN_PACKAGE &&
+                    results.get(3).getStatus() == SignupStatus.CONFIRMED && results.get(3).getAmountCharged() == 9000 &&
+                    results.get(4).getStatus() == SignupStatus.ACTIVITY_FULL &&
+                    diving.getCurrentCount() == 2 && passenger1.getBalance() == 900.0 && passenger2.getBalance() == 910.0) {
+                System.out.println("testSignUpAll: Passed");
+            } else {
+                System.out.println("testSignUpAll: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSignUpAll: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSignUpAllInsufficientBalance() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+            Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 5);
+            StandardPassenger passenger = new StandardPassenger("John Doe", "12345", 120.0);
+            travelPackage.addPassenger(passenger);
+            List<SignupResult> results = travelPackage.signUpAll(List.of(
+                    new SignupRequest(passenger, diving),
+                    new SignupRequest(passenger, surfing)));
+            if (results.get(0).getStatus() == SignupStatus.INSUFFICIENT_BALANCE &&
+                    results.get(1).getStatus() == SignupStatus.INSUFFICIENT_BALANCE &&
+                    diving.getCurrentCount() == 0 && surfing.getCurrentCount() == 0 &&
+                    diving.getSignedUpPassengers().isEmpty() && passenger.getBalance() == 120.0) {
+                System.out.println("testSignUpAllInsufficientBalance: Passed");
+            } else {
+                System.out.println("testSignUpAllInsufficientBalance: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSignUpAllInsufficientBalance: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSignUpAllAllOrNothing() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+            Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 1);
+            StandardPassenger passenger1 = new StandardPassenger("John Doe", "12345", 1000.0);
+            GoldPassenger passenger2 = new GoldPassenger("Jane Doe", "67890", 1000.0);
+            travelPackage.addPassenger(passenger1);
+            travelPackage.addPassenger(passenger2);
+            List<SignupResult> results = travelPackage.signUpAll(List.of(
+                    new SignupRequest(passenger1, diving),
+                    new SignupRequest(passenger1, surfing),
+                    new SignupRequest(passenger2, surfing)), true);
+            if (results.get(0).getStatus() == SignupStatus.ROLLED_BACK &&
+                    results.get(1).getStatus() == SignupStatus.ACTIVITY_FULL &&
+                    results.get(2).getStatus() == SignupStatus.ACTIVITY_FULL &&
+                    diving.getCurrentCount() == 0 && surfing.getCurrentCount() == 0 &&
+                    passenger1.getBalance() == 1000.0 && passenger2.getBalance() == 1000.0) {
+                System.out.println("testSignUpAllAllOrNothing: Passed");
+            } else {
+                System.out.println("testSignUpAllAllOrNothing: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSignUpAllAllOrNothing: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testFindPassenger() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            StandardPassenger passenger1 = new StandardPassenger("John Doe", "12345", 1000.0);
+            PremiumPassenger passenger2 = new PremiumPassenger("Jane Doe", "67890");
+            travelPackage.addPassenger(passenger1);
+            travelPackage.addPassenger(passenger2);
+            travelPackage.removePassenger(passenger1);
+            if (travelPackage.findPassenger("67890") == passenger2 &&
+                    travelPackage.findPassenger("12345") == null &&
+                    travelPackage.containsPassenger(passenger2) &&
+                    travelPackage.getPassengers().equals(List.of(passenger2))) {
+                System.out.println("testFindPassenger: Passed");
+            } else {
+                System.out.println("testFindPassenger: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testFindPassenger: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testAddPassengerDuplicateNumber() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            travelPackage.addPassenger(new StandardPassenger("John Doe", "12345", 1000.0));
+            if (!travelPackage.addPassenger(new StandardPassenger("John Doe", "12345", 1000.0)) &&
+                    travelPackage.getPassengers().size() == 1) {
+                System.out.println("testAddPassengerDuplicateNumber: Passed");
+            } else {
+                System.out.println("testAddPassengerDuplicateNumber: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testAddPassengerDuplicateNumber: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testConstructor() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            if ("Summer Adventure".equals(travelPackage.getName()) &&
+                    travelPackage.getCapacity() == 10 &&
+                    travelPackage.getItinerary().isEmpty() &&
+                    travelPackage.getPassengers().isEmpty()) {
+                System.out.println("testConstructor: Passed");
+            } else {
+                System.out.println("testConstructor: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testConstructor: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testAddDestination() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            Destination destination = new Destination("Paris");
+            travelPackage.addDestination(destination);
+            if (travelPackage.getItinerary().contains(destination)) {
+                System.out.println("testAddDestination: Passed");
+            } else {
+                System.out.println("testAddDestination: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testAddDestination: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testRemoveDestination() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            Destination destination = new Destination("Paris");
+            travelPackage.addDestination(destination);
+            if (travelPackage.removeDestination(destination) &&
+                    !travelPackage.getItinerary().contains(destination)) {
+                System.out.println("testRemoveDestination: Passed");
+            } else {
+                System.out.println("testRemoveDestination: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testRemoveDestination: Failed with exception: " + e.getMessage());
+        }
+    }
+
+
+    public static void testGetters() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            if ("Summer Adventure".equals(travelPackage.getName()) &&
+                    travelPackage.getCapacity() == 10 &&
+                    travelPackage.getItinerary().isEmpty() &&
+                    travelPackage.getPassengers().isEmpty()) {
+                System.out.println("testGetters: Passed");
+            } else {
+                System.out.println("testGetters: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testGetters: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSetters() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            travelPackage.setName("Winter Wonderland");
+            travelPackage.setCapacity(5);
+            if ("Winter Wonderland".equals(travelPackage.getName()) &&
+                    travelPackage.getCapacity() == 5) {
+                System.out.println("testSetters: Passed");
+            } else {
+                System.out.println("testSetters: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSetters: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testRemovePassenger() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            // Use StandardPassenger instead of Passenger
+            StandardPassenger passenger = new StandardPassenger("John Doe", "12345", 1000.0);
+            travelPackage.addPassenger(passenger);
+            if (travelPackage.removePassenger(passenger) &&
+                    !travelPackage.getPassengers().contains(passenger)) {
+                System.out.println("testRemovePassenger: Passed");
+            } else {
+                System.out.println("testRemovePassenger: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testRemovePassenger: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSetCapacityLessThanPassengers() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            // Use GoldPassenger and PremiumPassenger for demonstration
+            GoldPassenger passenger1 = new GoldPassenger("John Doe", "12345", 1000.0);
+            PremiumPassenger passenger2 = new PremiumPassenger("Jane Doe", "67890");
+            travelPackage.addPassenger(passenger1);
+            travelPackage.addPassenger(passenger2);
+            // Attempt to set capacity to less than the number of passengers
+            travelPackage.setCapacity(1); // This should throw an IllegalArgumentException
+            System.out.println("testSetCapacityLessThanPassengers: Failed");
+        } catch (IllegalArgumentException e) {
+            System.out.println("testSetCapacityLessThanPassengers: Passed");
+        } catch (Exception e) {
+            System.out.println("testSetCapacityLessThanPassengers: Failed with exception: " + e.getMessage());
+        }
+    }
+
+
+    public static void testAddPassengerWithSpace() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 10);
+            // Use StandardPassenger instead of Passenger
+            StandardPassenger passenger = new StandardPassenger("John Doe", "12345", 1000.0);
+            if (travelPackage.addPassenger(passenger) &&
+                    travelPackage.getPassengers().contains(passenger)) {
+                System.out.println("testAddPassengerWithSpace: Passed");
+            } else {
+                System.out.println("testAddPassengerWithSpace: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testAddPassengerWithSpace: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testAddPassengerNoSpace() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Summer Adventure", 1);
+            // Use GoldPassenger instead of Passenger
+            GoldPassenger passenger1 = new GoldPassenger("John Doe", "12345", 1000.0);
+            // Use PremiumPassenger instead of Passenger
+            PremiumPassenger passenger2 = new PremiumPassenger("Jane Doe", "67890");
+            travelPackage.addPassenger(passenger1);
+            if (!travelPackage.addPassenger(passenger2)) {
+                System.out.println("testAddPassengerNoSpace: Passed");
+            } else {
+                System.out.println("testAddPassengerNoSpace: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testAddPassengerNoSpace: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+
+
+//2. Activity Test Class
+class ActivityTest {
+    public static void main(String[] args) {
+        // Testing constructor and getters
+        Activity activity1 = new Activity("Diving", "Scuba diving at the Great Barrier Reef", 100.0, 5);
+        if (activity1.getName().equals("Diving") && activity1.getDescription().equals("Scuba diving at the Great Barrier Reef") &&
+                activity1.getCost() == 100.0 && activity1.getCapacity() == 5 && activity1.getCurrentCount() == 0) {
+            System.out.println("Activity constructor and getters test 1 passed.");
+        } else {
+            System.out.println("Activity constructor and getters test 1 failed.");
+        }
+
+        // Testing isAvailable method
+        if (activity1.isAvailable()) {
+            System.out.println("Activity isAvailable test 1 passed.");
+        } else {
+            System.out.println("Activity isAvailable test 1 failed.");
+        }
+
+        // Testing signUp method with available activity
+        Passenger passenger1 = new StandardPassenger("John Doe", "P123", 500.0);
+        if (activity1.signUp(passenger1)) {
+            System.out.println("Activity signUp test 1 passed.");
+        } else {
+            System.out.println("Activity signUp test 1 failed.");
+        }
+
+        // Testing signUp method with full activity
+        Activity activity2 = new Activity("Surfing", "Surfing at Bali's beaches", 50.0, 1);
+        activity2.signUp(passenger1);
+        Passenger passenger2 = new StandardPassenger("Jane Doe", "P456", 500.0);
+        if (!activity2.signUp(passenger2)) {
+            System.out.println("Activity signUp test 2 passed.");
+        } else {
+            System.out.println("Activity signUp test 2 failed.");
+        }
+
+        // Testing setters and getters
+        activity1.setName("Snorkeling");
+        activity1.setDescription("Snorkeling at the Hawaiian reef");
+        activity1.setCost(80.0);
+        activity1.setCapacity(10);
+        activity1.setCurrentCount(5);
+        if (activity1.getName().equals("Snorkeling") && activity1.getDescription().equals("Snorkeling at the Hawaiian reef") &&
+                activity1.getCost() == 80.0 && activity1.getCapacity() == 10 && activity1.getCurrentCount() == 5) {
+            System.out.println("Activity setters and getters test passed.");
+        } else {
+            System.out.println("Activity setters and getters test failed.");
+        }
+
+        try {
+            activity1.setCost(-100.0);
+            System.out.println("Activity setCost with negative value test failed.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Activity setCost with negative value test passed.");
+        }
+
+        try {
+            activity1.setCapacity(-5);
+            System.out.println("Activity setCapacity with negative value test failed.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Activity setCapacity with negative value test passed.");
+        }
+
+        try {
+            activity1.setCurrentCount(10);
+            System.out.println("Activity setCurrentCount exceeding capacity test failed.");
+        } catch (IllegalArgumentException e) {
+            System.out.println("Activity setCurrentCount exceeding capacity test passed.");
+        }
+
+        //manual verification of the console output.
+        activity1.printActivityDetails();
+        System.out.println("Activity printActivityDetails test passed.");
+
+        if (!activity1.signUp(passenger1)) {
+            System.out.println("Activity signUp with already signed up passenger test passed.");
+        } else {
+            System.out.println("Activity signUp with already signed up passenger test failed.");
+        }
+
+    }
+}
+
+
+//3. destination test class
+class DestinationTest {
+    public static void main(String[] args) {
+        // Test constructor and getters
+        Destination destination = new Destination("Test Destination");
+        if (destination.getName().equals("Test Destination") && destination.getActivities().size() == 0) {
+            System.out.println("Destination constructor and getters test passed.");
+        } else {
+            System.out.println("Destination constructor and getters test failed.");
+        }
+
+        // Test addActivity
+        Activity activity1 = new Activity("Test Activity 1", "Test Description 1", 100.0, 5);
+        destination.addActivity(activity1);
+        if (destination.getActivities().size() == 1 && destination.getActivities().contains(activity1)) {
+            System.out.println("Destination addActivity test passed.");
+        } else {
+            System.out.println("Destination addActivity test failed.");
+        }
+
+        // Test equals and hashCode
+        Destination destination2 = new Destination("Test Destination");
+        if (destination.equals(destination2) && destination.hashCode() == destination2.hashCode()) {
+            System.out.println("Destination equals and hashCode test passed.");
+        } else {
+            System.out.println("Destination equals and hashCode test failed.");
+        }
+
+        // Test printItinerary (manual verification of console output)
+        destination.printItinerary();
+        System.out.println("Destination printItinerary test passed."); // Manual verification required
+
+        Destination destination3 = new Destination("");
+        if (destination3.getName().equals("")) {
+            System.out.println("Destination constructor with empty name test passed.");
+        } else {
+            System.out.println("Destination constructor with empty name test failed.");
+        }
+
+        Activity activity2 = new Activity("Test Activity 2", "Test Description 2", 150.0, 10);
+        destination.addActivity(activity2);
+        if (destination.getActivities().size() == 2 && destination.getActivities().contains(activity2)) {
+            System.out.println("Destination add multiple activities test passed.");
+        } else {
+            System.out.println("Destination add multiple activities test failed.");
+        }
+
+        destination.addActivity(activity1);
+        if (destination.getActivities().size() == 2) {
+            System.out.println("Destination add duplicate activity test passed.");
+        } else {
+            System.out.println("Destination add duplicate activity test failed.");
+        }
+
+        Destination destination4 = new Destination("Different Destination");
+        if (!destination.equals(destination4)) {
+            System.out.println("Destination equals with different names test passed.");
+        } else {
+            System.out.println("Destination equals with different names test failed.");
+        }
+
+        if (!destination.equals(null)) {
+            System.out.println("Destination equals with null test passed.");
+        } else {
+            System.out.println("Destination equals with null test failed.");
+        }
+
+        if (!destination.equals(new Object())) {
+            System.out.println("Destination equals with different type test passed.");
+        } else {
+            System.out.println("Destination equals with different type test failed.");
+        }
+
+    }
+}
+
+
+//4. passenger test classes
+
+//standard passenger
+class StandardPassengerTest {
+
+    public static void main(String[] args) {
+        testConstructor();
+        testSignUpForActivity();
+        testBalanceManagement();
+    }
+
+    public static void testConstructor() {
+        try {
+            StandardPassenger passenger = new StandardPassenger("John Doe", "12345", 1000.0);
+            if ("John Doe".equals(passenger.getName()) &&
+                    "12345".equals(passenger.getPassengerNumber()) &&
+                    passenger.getBalance() == 1000.0) {
+                System.out.println("testConstructor: Passed");
+            } else {
+                System.out.println("testConstructor: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testConstructor: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSignUpForActivity() {
+        // Assuming Activity class and its methods are defined elsewhere
+        try {
+            StandardPassenger passenger = new StandardPassenger("John Doe", "12345", 1000.0);
+            Activity activity = new Activity("Skiing", "Icy Skiing", 5, 1);
+            if (passenger.signUpForActivity(activity)) {
+                System.out.println("testSignUpForActivity: Passed");
+            } else {
+                System.out.println("testSignUpForActivity: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSignUpForActivity: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testBalanceManagement() {
+        try {
+            StandardPassenger passenger = new StandardPassenger("John Doe", "12345", 1000.0);
+            passenger.setBalance(-100); // Should throw an IllegalArgumentException
+            System.out.println("testBalanceManagement: Failed");
+        } catch (IllegalArgumentException e) {
+            System.out.println("testBalanceManagement: Passed");
+        } catch (Exception e) {
+            System.out.println("testBalanceManagement: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+
+//gold passenger
+class GoldPassengerTest {
+
+    public static void main(String[] args) {
+        testConstructor();
+        testSignUpForActivity();
+        testBalanceManagement();
+    }
+
+    public static void testConstructor() {
+        try {
+            GoldPassenger passenger = new GoldPassenger("Jane Doe", "67890", 1000.0);
+            if ("Jane Doe".equals(passenger.getName()) &&
+                    "67890".equals(passenger.getPassengerNumber()) &&
+                    passenger.getBalance() == 1000.0) {
+                System.out.println("testConstructor: Passed");
+            } else {
+                System.out.println("testConstructor: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testConstructor: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSignUpForActivity() {
+        // Assuming Activity class and its methods are defined elsewhere
+        try {
+            GoldPassenger passenger = new GoldPassenger("Jane Doe", "67890", 1000.0);
+            Activity activity = new Activity("Skiing", "cy skiing", 190, 2);
+            if (passenger.signUpForActivity(activity)) {
+                System.out.println("testSignUpForActivity: Passed");
+            } else {
+                System.out.println("testSignUpForActivity: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSignUpForActivity: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testBalanceManagement() {
+        try {
+            GoldPassenger passenger = new GoldPassenger("Jane Doe", "67890", 1000.0);
+            passenger.setBalance(-100); // Should throw an IllegalArgumentException
+            System.out.println("testBalanceManagement: Failed");
+        } catch (IllegalArgumentException e) {
+            System.out.println("testBalanceManagement: Passed");
+        } catch (Exception e) {
+            System.out.println("testBalanceManagement: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+
+//premium passenger test
+class PremiumPassengerTest {
+
+    public static void main(String[] args) {
+        testConstructor();
+        testSignUpForActivity();
+    }
+
+    public static void testConstructor() {
+        try {
+            PremiumPassenger passenger = new PremiumPassenger("Jim Doe", "11121");
+            if ("Jim Doe".equals(passenger.getName()) &&
+                    "11121".equals(passenger.getPassengerNumber())) {
+                System.out.println("testConstructor: Passed");
+            } else {
+                System.out.println("testConstructor: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testConstructor: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testSignUpForActivity() {
+        // Assuming Activity class and its methods are defined elsewhere
+        try {
+            PremiumPassenger passenger = new PremiumPassenger("Jim Doe", "11121");
+            Activity activity = new Activity("Skiing", "Icy skiing", 120, 1);
+            if (passenger.signUpForActivity(activity)) {
+                System.out.println("testSignUpForActivity: Passed");
+            } else {
+                System.out.println("testSignUpForActivity: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSignUpForActivity: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+
+//5. passenger roster test class
+class PassengerRosterTest {
+
+    public static void main(String[] args) {
+        testAddAndContains();
+        testDuplicateNumber();
+        testInsertionOrder();
+        testRemove();
+    }
+
+    public static void testAddAndContains() {
+        try {
+            PassengerRoster roster = new PassengerRoster();
+            StandardPassenger passenger = new StandardPassenger("John Doe", "P123", 500.0);
+            if (roster.add(passenger) && roster.contains(passenger) &&
+                    roster.containsNumber("P123") && roster.get("P123") == passenger && roster.size() == 1) {
+                System.out.println("testAddAndContains: Passed");
+            } else {
+                System.out.println("testAddAndContains: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testAddAndContains: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testDuplicateNumber() {
+        try {
+            PassengerRoster roster = new PassengerRoster();
+            roster.add(new StandardPassenger("John Doe", "P123", 500.0));
+            if (!roster.add(new StandardPassenger("John Doe", "P123", 500.0)) && roster.size() == 1) {
+                System.out.println("testDuplicateNumber: Passed");
+            } else {
+                System.out.println("testDuplicateNumber: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testDuplicateNumber: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testInsertionOrder() {
+        try {
+            PassengerRoster roster = new PassengerRoster();
+            Passenger passenger1 = new StandardPassenger("John Doe", "P9", 500.0);
+            Passenger passenger2 = new GoldPassenger("Jane Doe", "P1", 700.0);
+            Passenger passenger3 = new PremiumPassenger("Steve Smith", "P5");
+            roster.add(passenger1);
+            roster.add(passenger2);
+            roster.add(passenger3);
+            if (roster.asList().equals(Arrays.asList(passenger1, passenger2, passenger3))) {
+                System.out.println("testInsertionOrder: Passed");
+            } else {
+                System.out.println("testInsertionOrder: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testInsertionOrder: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testRemove() {
+        try {
+            PassengerRoster roster = new PassengerRoster();
+            Passenger passenger = new PremiumPassenger("Steve Smith", "P5");
+            roster.add(passenger);
+            List<Passenger> before = roster.asList();
+            if (roster.remove(passenger) && !roster.contains(passenger) &&
+                    roster.isEmpty() && before.size() == 1 && !roster.remove(passenger)) {
+                System.out.println("testRemove: Passed");
+            } else {
+                System.out.println("testRemove: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testRemove: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+
+//6. activity concurrency stress test
+class ActivityConcurrencyTest {
+    private static final int THREADS = 64;
+    private static final int SIGNUPS_PER_THREAD = 2_000;
+    private static final int CAPACITY = 10_000;
+
+    public static void main(String[] args) {
+        testNoOverbooking();
+        testDuplicatesRejectedUnderContention();
+        testCapacityShrinkUnderContention();
+        testCancelKeepsSignUpOrder();
+    }
+
+    // Every thread signs up its own passengers; more sign-ups are attempted than there are seats.
+    public static void testNoOverbooking() {
+        try {
+            Activity activity = new Activity("Diving", "Scuba diving", 100.0, CAPACITY, true);
+            AtomicInteger accepted = new AtomicInteger();
+            long elapsed = runThreads(thread -> {
+                for (int i = 0; i < SIGNUPS_PER_THREAD; i++) {
+                    Passenger passenger = new PremiumPassenger("Passenger", "T" + thread + "-" + i);
+                    if (activity.signUp(passenger)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            long attempts = (long) THREADS * SIGNUPS_PER_THREAD;
+            System.out.println("testNoOverbooking: " + (attempts * 1_000_000_000L / Math.max(1, elapsed)) +
+                    " signUp calls per second across " + THREADS + " threads");
+            if (accepted.get() == CAPACITY && activity.getCurrentCount() == CAPACITY &&
+                    activity.getSignedUpPassengers().size() == CAPACITY) {
+                System.out.println("testNoOverbooking: Passed");
+            } else {
+                System.out.println("testNoOverbooking: Failed (accepted " + accepted.get() +
+                        ", count " + activity.getCurrentCount() + ")");
+            }
+        } catch (Exception e) {
+            System.out.println("testNoOverbooking: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    // Every thread tries to sign up the same passengers, so each one must be accepted exactly once.
+    public static void testDuplicatesRejectedUnderContention() {
+        try {
+            Activity activity = new Activity("Surfing", "Surfing lessons", 50.0, CAPACITY, true);
+            Passenger[] passengers = new Passenger[1_000];
+            for (int i = 0; i < passengers.length; i++) {
+                passengers[i] = new PremiumPassenger("Passenger", "P" + i);
+            }
+            AtomicInteger accepted = new AtomicInteger();
+            runThreads(thread -> {
+                for (Passenger passenger : passengers) {
+                    if (activity.signUp(passenger)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            if (accepted.get() == passengers.length && activity.getCurrentCount() == passengers.length) {
+                System.out.println("testDuplicatesRejectedUnderContention: Passed");
+            } else {
+                System.out.println("testDuplicatesRejectedUnderContention: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testDuplicatesRejectedUnderContention: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    // One thread keeps shrinking the capacity to the seats taken while the others sign up; the count must never pass it.
+    public static void testCapacityShrinkUnderContention() {
+        try {
+            Activity activity = new Activity("Kayaking", "Sea kayaking", 30.0, CAPACITY, true);
+            runThreads(thread -> {
+                if (thread == 0) {
+                    for (int i = 0; i < SIGNUPS_PER_THREAD; i++) {
+                        try {
+                            activity.setCapacity(activity.getCurrentCount() + 1);
+                        } catch (IllegalArgumentException e) {
+                            // A sign-up took the seat first; try again with the new count.
+                        }
+                    }
+                    return;
+                }
+                for (int i = 0; i < SIGNUPS_PER_THREAD / 10; i++) {
+                    activity.signUp(new PremiumPassenger("Passenger", "K" + thread + "-" + i));
+                }
+            });
+            if (activity.getCurrentCount() <= activity.getCapacity() &&
+                    activity.getSignedUpPassengers().size() == activity.getCurrentCount()) {
+                System.out.println("testCapacityShrinkUnderContention: Passed");
+            } else {
+                System.out.println("testCapacityShrinkUnderContention: Failed (count " + activity.getCurrentCount() +
+                        ", capacity " + activity.getCapacity() + ")");
+            }
+        } catch (Exception e) {
+            System.out.println("testCapacityShrinkUnderContention: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testCancelKeepsSignUpOrder() {
+        Activity activity = new Activity("Rafting", "White water rafting", 40.0, 10, true);
+        Passenger[] passengers = new Passenger[5];
+        for (int i = 0; i < passengers.length; i++) {
+            passengers[i] = new PremiumPassenger("Passenger", "R" + i);
+            activity.signUp(passengers[i]);
+        }
+        activity.cancel(passengers[1]);
+        activity.cancel(passengers[3]);
+        activity.signUp(passengers[1]);
+        if (activity.getSignedUpPassengers().equals(List.of(passengers[0], passengers[2], passengers[4], passengers[1]))) {
+            System.out.println("testCancelKeepsSignUpOrder: Passed");
+        } else {
+            System.out.println("testCancelKeepsSignUpOrder: Failed");
+        }
+    }
+
+    // Starts THREADS threads behind a common gate and returns the elapsed nanoseconds once all have finished.
+    private static long runThreads(IntConsumer work) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    work.accept(thread);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - begin;
+    }
+}
+
+
+//7. wallet test class
+class WalletTest {
+    private static final int THREADS = 16;
+
+    public static void main(String[] args) {
+        testDebitAndCredit();
+        testNoOverdraft();
+        testConcurrentSignUpsCannotOverdraw();
+        testRollbackWhenActivityFull();
+    }
+
+    public static void testDebitAndCredit() {
+        try {
+            Wallet wallet = new Wallet(10.25);
+            if (wallet.getMinorUnits() == 1025 && wallet.tryDebit(25) && wallet.getBalance() == 10.0) {
+                wallet.credit(100);
+                if (wallet.getMinorUnits() == 1100) {
+                    System.out.println("testDebitAndCredit: Passed");
+                    return;
+                }
+            }
+            System.out.println("testDebitAndCredit: Failed");
+        } catch (Exception e) {
+            System.out.println("testDebitAndCredit: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testNoOverdraft() {
+        try {
+            Wallet wallet = new Wallet(1.0);
+            if (!wallet.tryDebit(101) && wallet.getMinorUnits() == 100) {
+                System.out.println("testNoOverdraft: Passed");
+            } else {
+                System.out.println("testNoOverdraft: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testNoOverdraft: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    // One passenger with money for exactly ten sign-ups races for forty activities from many threads.
+    public static void testConcurrentSignUpsCannotOverdraw() {
+        try {
+            StandardPassenger passenger = new StandardPassenger("John Doe", "P123", 100.0);
+            Activity[] activities = new Activity[40];
+            for (int i = 0; i < activities.length; i++) {
+                activities[i] = new Activity("Activity " + i, "Description", 10.0, 5, true);
+            }
+            AtomicInteger accepted = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (Activity activity : activities) {
+                        if (passenger.signUpForActivity(activity)) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (accepted.get() == 10 && passenger.getBalance() == 0.0) {
+                System.out.println("testConcurrentSignUpsCannotOverdraw: Passed");
+            } else {
+                System.out.println("testConcurrentSignUpsCannotOverdraw: Failed (accepted " + accepted.get() +
+                        ", balance " + passenger.getBalance() + ")");
+            }
+        } catch (Exception e) {
+            System.out.println("testConcurrentSignUpsCannotOverdraw: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testRollbackWhenActivityFull() {
+        try {
+            GoldPassenger passenger = new GoldPassenger("Jane Doe", "P456", 100.0);
+            Activity activity = new Activity("Skiing", "Icy skiing", 50.0, 1);
+            activity.signUp(new PremiumPassenger("Jim Doe", "P789"));
+            if (!passenger.signUpForActivity(activity) && passenger.getBalance() == 100.0) {
+                System.out.println("testRollbackWhenActivityFull: Passed");
+            } else {
+                System.out.println("testRollbackWhenActivityFull: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testRollbackWhenActivityFull: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+
+//8. report writer test class
+class ReportWriterTest {
+
+    public static void main(String[] args) {
+        testTextMatchesConsoleLayout();
+        testCsvQuoting();
+        testNumberFormatting();
+        testLargeReportSpansBuffer();
+    }
+
+    public static void testTextMatchesConsoleLayout() {
+        try {
+            StringBuilder out = new StringBuilder();
+            ReportWriter writer = new ReportWriter(out, ReportFormat.TEXT);
+            writer.passengerDetails(new GoldPassenger("Jane Doe", "P456", 655.0));
+            writer.flush();
+            String n = System.lineSeparator();
+            if (out.toString().equals("Name: Jane Doe" + n + "Passenger Number: P456" + n + "Balance: 655.0" + n)) {
+                System.out.println("testTextMatchesConsoleLayout: Passed");
+            } else {
+                System.out.println("testTextMatchesConsoleLayout: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testTextMatchesConsoleLayout: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testCsvQuoting() {
+        try {
+            Destination destination = new Destination("Bali");
+            destination.addActivity(new Activity("Diving", "Reef, \"deep\" dive", 100.5, 5));
+            StringWriter out = new StringWriter();
+            ReportWriter writer = new ReportWriter(out, ReportFormat.CSV);
+            writer.itinerary(destination);
+            writer.flush();
+            String n = System.lineSeparator();
+            String expected = "Destination Name,Activity Name,Description,Cost,Capacity,Current Count" + n +
+                    "Bali,Diving,\"Reef, \"\"deep\"\" dive\",100.5,5,0" + n;
+            if (out.toString().equals(expected)) {
+                System.out.println("testCsvQuoting: Passed");
+            } else {
+                System.out.println("testCsvQuoting: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testCsvQuoting: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testNumberFormatting() {
+        try {
+            double[] values = {0.0, 100.0, 12.05, 0.1, -3.5, 1234567.89, 9999999.99, 1e7, -12345678.5, 0.125, 1e20, -0.0};
+            boolean passed = true;
+            for (double value : values) {
+                StringBuilder out = new StringBuilder();
+                ReportWriter writer = new ReportWriter(out, ReportFormat.TEXT);
+                writer.append(value).append(Long.MIN_VALUE).append(-42L);
+                writer.flush();
+                passed &= out.toString().equals(Double.toString(value) + Long.MIN_VALUE + "-42");
+            }
+            if (passed) {
+                System.out.println("testNumberFormatting: Passed");
+            } else {
+                System.out.println("testNumberFormatting: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testNumberFormatting: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testLargeReportSpansBuffer() {
+        try {
+            TravelPackage travelPackage = new TravelPackage("Cruise", 5_000);
+            for (int i = 0; i < 5_000; i++) {
+                travelPackage.addPassenger(new PremiumPassenger("Passenger " + i, "P" + i));
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ReportWriter writer = new ReportWriter(bytes, ReportFormat.CSV);
+            writer.passengerList(travelPackage);
+            writer.flush();
+            String[] lines = bytes.toString(java.nio.charset.StandardCharsets.UTF_8).split(System.lineSeparator());
+            if (lines.length == 5_001 && lines[5_000].equals("Cruise,5000,Passenger 4999,P4999")) {
+                System.out.println("testLargeReportSpansBuffer: Passed");
+            } else {
+                System.out.println("testLargeReportSpansBuffer: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testLargeReportSpansBuffer: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+
+//9. booking journal test class
+class BookingJournalTest {
+
+    public static void main(String[] args) {
+        testRecoverFromLog();
+        testRecoverFromSnapshotAndTail();
+        testTornTailIsDiscarded();
+        testBookingsSurviveRecovery();
+        testCancellationSurvivesRecovery();
+        testActivityChangesSurviveRecovery();
+        testClashStillRejectedAfterRecovery();
+        testWriterFailureIsReported();
+    }
+
+    // The directory vanishes under the journal, so the checkpoint cannot start a new segment and the writer stops.
+    public static void testWriterFailureIsReported() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            BookingJournal journal = BookingJournal.open(directory);
+            journal.register(samplePackage());
+            deleteDirectory(directory);
+            boolean checkpointFailed = false;
+            try {
+                journal.checkpoint();
+            } catch (IOException e) {
+                checkpointFailed = true;
+            }
+            boolean syncFailed = false;
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                syncFailed = true;
+            }
+            boolean closeFailed = false;
+            try {
+                journal.close();
+            } catch (IOException e) {
+                closeFailed = true;
+            }
+            if (checkpointFailed && syncFailed && closeFailed) {
+                System.out.println("testWriterFailureIsReported: Passed");
+            } else {
+                System.out.println("testWriterFailureIsReported: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testWriterFailureIsReported: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testRecoverFromLog() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                journal.register(samplePackage());
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                Passenger gold = new GoldPassenger("Jane Doe", "P456", 700.0);
+                travelPackage.addPassenger(gold);
+                gold.signUpForActivity(travelPackage.getItinerary().get(0).getActivities().get(1));
+                travelPackage.removePassenger(travelPackage.findPassenger("P789"));
+            }
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                Activity diving = travelPackage.getItinerary().get(0).getActivities().get(0);
+                Activity surfing = travelPackage.getItinerary().get(0).getActivities().get(1);
+                if (travelPackage.getPassengers().size() == 2 && travelPackage.findPassenger("P789") == null &&
+                        ((GoldPassenger) travelPackage.findPassenger("P456")).getBalance() == 655.0 &&
+                        ((StandardPassenger) travelPackage.findPassenger("P123")).getBalance() == 400.0 &&
+                        diving.getCurrentCount() == 2 && surfing.getCurrentCount() == 1 &&
+                        surfing.getSignedUpPassengers().get(0).getPassengerNumber().equals("P456")) {
+                    System.out.println("testRecoverFromLog: Passed");
+                } else {
+                    System.out.println("testRecoverFromLog: Failed");
+                }
+            }
+            deleteDirectory(directory);
+        } catch (Exception e) {
+            System.out.println("testRecoverFromLog: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testRecoverFromSnapshotAndTail() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            try (BookingJournal journal = BookingJournal.open(directory, BookingJournal.Durability.ASYNC, 1_000)) {
+                TravelPackage travelPackage = new TravelPackage("Cruise", 10_000);
+                Destination sea = new Destination("Sea");
+                sea.addActivity(new Activity("Snorkeling", "Snorkeling at the reef", 1.0, 10_000));
+                travelPackage.addDestination(sea);
+                journal.register(travelPackage);
+                for (int i = 0; i < 5_000; i++) {
+                    Passenger passenger = new StandardPassenger("Passenger " + i, "P" + i, 10.0);
+                    travelPackage.addPassenger(passenger);
+                    passenger.signUpForActivity(sea.getActivities().get(0));
+                    if (i == 2_500) {
+                        journal.checkpoint();
+                    }
+                }
+            }
+            boolean snapshotWritten = Files.exists(directory.resolve("bookings.snapshot"));
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                TravelPackage travelPackage = journal.getPackage("Cruise");
+                Activity snorkeling = travelPackage.getItinerary().get(0).getActivities().get(0);
+                if (snapshotWritten && travelPackage.getPassengers().size() == 5_000 &&
+                        snorkeling.getCurrentCount() == 5_000 && snorkeling.getSignedUpPassengers().size() == 5_000 &&
+                        ((StandardPassenger) travelPackage.findPassenger("P4999")).getBalance() == 9.0) {
+                    System.out.println("testRecoverFromSnapshotAndTail: Passed");
+                } else {
+                    System.out.println("testRecoverFromSnapshotAndTail: Failed");
+                }
+            }
+            deleteDirectory(directory);
+        } catch (Exception e) {
+            System.out.println("testRecoverFromSnapshotAndTail: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testTornTailIsDiscarded() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                journal.register(samplePackage());
+            }
+            try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "bookings-*.log")) {
+                for (Path segment : segments) {
+                    Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+                }
+            }
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                journal.getPackage("Trip to Bali").addPassenger(new PremiumPassenger("Alice Green", "P987"));
+            }
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                if (journal.getPackage("Trip to Bali").getPassengers().size() == 3) {
+                    System.out.println("testTornTailIsDiscarded: Passed");
+                } else {
+                    System.out.println("testTornTailIsDiscarded: Failed");
+                }
+            }
+            deleteDirectory(directory);
+        } catch (Exception e) {
+            System.out.println("testTornTailIsDiscarded: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testBookingsSurviveRecovery() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                journal.register(samplePackage());
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                Passenger gold = new GoldPassenger("Jane Doe", "P456", 700.0);
+                travelPackage.addPassenger(gold);
+                gold.signUpForActivity(travelPackage.getItinerary().get(0).getActivities().get(1));
+                journal.checkpoint();
+                gold.signUpForActivity(travelPackage.getItinerary().get(0).getActivities().get(0));
+            }
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                List<Booking> standard = travelPackage.findPassenger("P123").getBookings();
+                List<Booking> gold = travelPackage.findPassenger("P456").getBookings();
+                if (standard.size() == 1 && standard.get(0).getAmountPaid() == 10_000 &&
+                        standard.get(0).getDestination().getName().equals("Bali") &&
+                        ((StandardPassenger) travelPackage.findPassenger("P123")).getBalance() == 400.0 &&
+                        gold.size() == 2 && gold.get(0).getActivity().getName().equals("Surfing") &&
+                        gold.get(0).getAmountPaid() == 4_500 && gold.get(1).getAmountPaid() == 9_000 &&
+                        ((GoldPassenger) travelPackage.findPassenger("P456")).getBalance() == 565.0) {
+                    System.out.println("testBookingsSurviveRecovery: Passed");
+                } else {
+                    System.out.println("testBookingsSurviveRecovery: Failed");
+                }
+            }
+            deleteDirectory(directory);
+        } catch (Exception e) {
+            System.out.println("testBookingsSurviveRecovery: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testCancellationSurvivesRecovery() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                journal.register(samplePackage());
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                Activity diving = travelPackage.getItinerary().get(0).getActivities().get(0);
+                diving.setCapacity(2);
+                Passenger gold = new GoldPassenger("Jane Doe", "P456", 700.0);
+                travelPackage.addPassenger(gold);
+                diving.joinWaitlist(gold);
+                travelPackage.findPassenger("P123").cancelActivity(diving);
+            }
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                Activity diving = travelPackage.getItinerary().get(0).getActivities().get(0);
+                if (diving.getCurrentCount() == 2 && diving.getSignedUpPassengers().size() == 2 &&
+                        ((StandardPassenger) travelPackage.findPassenger("P123")).getBalance() == 500.0 &&
+                        travelPackage.findPassenger("P123").getBookings().isEmpty() &&
+                        ((GoldPassenger) travelPackage.findPassenger("P456")).getBalance() == 610.0 &&
+                        travelPackage.findPassenger("P456").getBooking(diving).getAmountPaid() == 9_000) {
+                    System.out.println("testCancellationSurvivesRecovery: Passed");
+                } else {
+                    System.out.println("testCancellationSurvivesRecovery: Failed");
+                }
+            }
+            deleteDirectory(directory);
+        } catch (Exception e) {
+            System.out.println("testCancellationSurvivesRecovery: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testActivityChangesSurviveRecovery() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                journal.register(samplePackage());
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                Activity surfing = travelPackage.getItinerary().get(0).getActivities().get(1);
+                surfing.setCost(60.0);
+                surfing.setCapacity(3);
+                surfing.setDescription("Surfing for beginners");
+                Passenger gold = new GoldPassenger("Jane Doe", "P456", 700.0);
+                travelPackage.addPassenger(gold);
+                gold.signUpForActivity(surfing);
+                journal.sync();
+            }
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                Activity surfing = journal.getPackage("Trip to Bali").getItinerary().get(0).getActivities().get(1);
+                if (surfing.getCost() == 60.0 && surfing.getCapacity() == 3 && surfing.getCurrentCount() == 1 &&
+                        surfing.getDescription().equals("Surfing for beginners") &&
+                        surfing.getSignedUpPassengers().get(0).getBooking(surfing).getAmountPaid() == 5_400) {
+                    System.out.println("testActivityChangesSurviveRecovery: Passed");
+                } else {
+                    System.out.println("testActivityChangesSurviveRecovery: Failed");
+                }
+            }
+            deleteDirectory(directory);
+        } catch (Exception e) {
+            System.out.println("testActivityChangesSurviveRecovery: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    // Diving comes back from the snapshot and surfing from the log; both must keep their slots for the clash check.
+    public static void testClashStillRejectedAfterRecovery() {
+        try {
+            Path directory = Files.createTempDirectory("journal");
+            LocalDateTime morning = LocalDateTime.of(2024, 5, 1, 9, 0, 0, 500);
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                journal.register(samplePackage());
+                Destination bali = journal.getPackage("Trip to Bali").getItinerary().get(0);
+                Activity snorkeling = new Activity("Snorkeling", "Reef snorkeling", 30.0, 5);
+                snorkeling.setTimeSlot(TimeSlot.of(morning, Duration.ofHours(2)));
+                bali.addActivity(snorkeling);
+                journal.checkpoint();
+                Activity surfing = bali.getActivities().get(1);
+                surfing.setTimeSlot(TimeSlot.of(morning.plusHours(1), Duration.ofHours(2)));
+                Activity kayaking = new Activity("Kayaking", "Sea kayaking", 40.0, 5);
+                kayaking.setTimeSlot(TimeSlot.of(morning.plusHours(1), Duration.ofHours(1)));
+                bali.addActivity(kayaking);
+                journal.getPackage("Trip to Bali").findPassenger("P123").signUpForActivity(snorkeling);
+                journal.sync();
+            }
+            try (BookingJournal journal = BookingJournal.open(directory)) {
+                TravelPackage travelPackage = journal.getPackage("Trip to Bali");
+                List<Activity> activities = travelPackage.getItinerary().get(0).getActivities();
+                Passenger standard = travelPackage.findPassenger("P123");
+                if (activities.get(2).getTimeSlot().equals(TimeSlot.of(morning, Duration.ofHours(2))) &&
+                        activities.get(1).getTimeSlot().getStart().equals(morning.plusHours(1)) &&
+                        activities.get(3).getTimeSlot().getEnd().equals(morning.plusHours(2)) &&
+                        activities.get(0).getTimeSlot() == null &&
+                        !standard.signUpForActivity(activities.get(1)) && !standard.signUpForActivity(activities.get(3)) &&
+                        standard.getBookings().size() == 2) {
+                    System.out.println("testClashStillRejectedAfterRecovery: Passed");
+                } else {
+                    System.out.println("testClashStillRejectedAfterRecovery: Failed");
+                }
+            }
+            deleteDirectory(directory);
+        } catch (Exception e) {
+            System.out.println("testClashStillRejectedAfterRecovery: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    private static TravelPackage samplePackage() {
+        TravelPackage travelPackage = new TravelPackage("Trip to Bali", 10);
+        Destination bali = new Destination("Bali");
+        bali.addActivity(new Activity("Diving", "Scuba diving", 100.0, 5));
+        bali.addActivity(new Activity("Surfing", "Surfing lessons", 50.0, 10));
+        travelPackage.addDestination(bali);
+        Passenger standard = new StandardPassenger("John Doe", "P123", 500.0);
+        Passenger premium = new PremiumPassenger("Steve Smith", "P789");
+        travelPackage.addPassenger(standard);
+        travelPackage.addPassenger(premium);
+        standard.signUpForActivity(bali.getActivities().get(0));
+        premium.signUpForActivity(bali.getActivities().get(0));
+        return travelPackage;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
+
+
+//10. mapped catalog test class
+class MappedCatalogTest {
+
+    public static void main(String[] args) {
+        testRoundTrip();
+        testLazyDecoding();
+        testFlagsAndTimeSlotRoundTrip();
+    }
+
+    public static void testFlagsAndTimeSlotRoundTrip() {
+        try {
+            Path file = Files.createTempFile("catalog", ".bin");
+            TravelPackage travelPackage = new TravelPackage("Grand Tour", 40);
+            Destination bali = new Destination("Bali");
+            Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5, true);
+            diving.setTimeSlot(TimeSlot.of(LocalDateTime.of(2025, 7, 1, 9, 30, 15, 500), Duration.ofHours(3)));
+            bali.addActivity(diving);
+            bali.addActivity(new Activity("Surfing", "Surfing lessons", 50.0, 10));
+            travelPackage.addDestination(bali);
+            MappedCatalog.write(travelPackage, file);
+            MappedCatalog catalog = MappedCatalog.open(file);
+            Activity decodedDiving = catalog.getActivity(0);
+            Activity decodedSurfing = catalog.getActivity(1);
+            if (decodedDiving.isConcurrent() && diving.getTimeSlot().equals(decodedDiving.getTimeSlot()) &&
+                    !decodedSurfing.isConcurrent() && decodedSurfing.getTimeSlot() == null &&
+                    catalog.getActivityCapacity(1) == 10) {
+                System.out.println("testFlagsAndTimeSlotRoundTrip: Passed");
+            } else {
+                System.out.println("testFlagsAndTimeSlotRoundTrip: Failed");
+            }
+            Files.delete(file);
+        } catch (Exception e) {
+            System.out.println("testFlagsAndTimeSlotRoundTrip: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testRoundTrip() {
+        try {
+            Path file = Files.createTempFile("catalog", ".bin");
+            MappedCatalog.write(sampleCatalog(3, 4), file);
+            TravelPackage travelPackage = MappedCatalog.open(file).toTravelPackage();
+            Activity activity = travelPackage.getItinerary().get(2).getActivities().get(3);
+            if ("Grand Tour".equals(travelPackage.getName()) && travelPackage.getCapacity() == 40 &&
+                    travelPackage.getItinerary().size() == 3 &&
+                    travelPackage.getItinerary().get(2).getName().equals("Destination 2") &&
+                    activity.getName().equals("Activity 2-3") && activity.getDescription().equals("Description 2-3 \u00e9") &&
+                    activity.getCost() == 23.5 && activity.getCapacity() == 5) {
+                System.out.println("testRoundTrip: Passed");
+            } else {
+                System.out.println("testRoundTrip: Failed");
+            }
+            Files.delete(file);
+        } catch (Exception e) {
+            System.out.println("testRoundTrip: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testLazyDecoding() {
+        try {
+            Path file = Files.createTempFile("catalog", ".bin");
+            MappedCatalog.write(sampleCatalog(100, 100), file);
+            MappedCatalog catalog = MappedCatalog.open(file);
+            boolean nothingDecoded = catalog.getDecodedActivityCount() == 0 && catalog.getActivityCount() == 10_000;
+            Activity activity = catalog.getActivity(42, 7);
+            boolean sameInstance = catalog.getActivity(42 * 100 + 7) == activity;
+            boolean columnsReadable = catalog.getActivityCost(9_999) == 1089.5 && catalog.getActivityCapacity(9_999) == 5;
+            catalog.getDestination(1);
+            if (nothingDecoded && sameInstance && columnsReadable && activity.getName().equals("Activity 42-7") &&
+                    catalog.getDecodedActivityCount() == 101) {
+                System.out.println("testLazyDecoding: Passed");
+            } else {
+                System.out.println("testLazyDecoding: Failed");
+            }
+            Files.delete(file);
+        } catch (Exception e) {
+            System.out.println("testLazyDecoding: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    private static TravelPackage sampleCatalog(int destinations, int activitiesPerDestination) {
+        TravelPackage travelPackage = new TravelPackage("Grand Tour", 40);
+        for (int d = 0; d < destinations; d++) {
+            Destination destination = new Destination("Destination " + d);
+            for (int a = 0; a < activitiesPerDestination; a++) {
+                destination.addActivity(new Activity("Activity " + d + "-" + a, "Description " + d + "-" + a + " \u00e9", d * 10 + a + 0.5, 5));
+            }
+            travelPackage.addDestination(destination);
+        }
+        return travelPackage;
+    }
+}
+
+//11. booking index test class
+class BookingTest {
+
+    public static void main(String[] args) {
+        testSignUpRecordsBooking();
+        testRejectedSignUpRecordsNothing();
+        testRemovalDropsBooking();
+        testBatchSignUpRecordsBookings();
+        testPassengerDetailsListBookings();
+    }
+
+    public static void testSignUpRecordsBooking() {
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 5);
+        bali.addActivity(diving);
+        bali.addActivity(surfing);
+        GoldPassenger gold = new GoldPassenger("Jane Doe", "P456", 700.0);
+        PremiumPassenger premium = new PremiumPassenger("Steve Smith", "P789");
+        gold.signUpForActivity(surfing);
+        gold.signUpForActivity(diving);
+        premium.signUpForActivity(diving);
+
+        List<Booking> bookings = gold.getBookings();
+        if (diving.getDestination() == bali && bookings.size() == 2 &&
+                bookings.get(0).getActivity() == surfing && bookings.get(1).getActivity() == diving &&
+                bookings.get(0).getDestination() == bali && bookings.get(0).getPricePaid() == 45.0 &&
+                gold.getBooking(diving).getAmountPaid() == 9_000 &&
+                premium.getBooking(diving).getAmountPaid() == 0 && premium.getBooking(surfing) == null) {
+            System.out.println("testSignUpRecordsBooking: Passed");
+        } else {
+            System.out.println("testSignUpRecordsBooking: Failed");
+        }
+    }
+
+    public static void testRejectedSignUpRecordsNothing() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+        StandardPassenger poor = new StandardPassenger("John Doe", "P123", 10.0);
+        StandardPassenger rich = new StandardPassenger("Mary Johnson", "P321", 500.0);
+        StandardPassenger late = new StandardPassenger("Bob Brown", "P654", 500.0);
+        poor.signUpForActivity(diving);
+        rich.signUpForActivity(diving);
+        rich.signUpForActivity(diving);
+        late.signUpForActivity(diving);
+
+        if (poor.getBookings().isEmpty() && rich.getBookings().size() == 1 && late.getBookings().isEmpty() &&
+                rich.getBooking(diving).getDestination() == null) {
+            System.out.println("testRejectedSignUpRecordsNothing: Passed");
+        } else {
+            System.out.println("testRejectedSignUpRecordsNothing: Failed");
+        }
+    }
+
+    public static void testRemovalDropsBooking() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        PremiumPassenger premium = new PremiumPassenger("Steve Smith", "P789");
+        premium.signUpForActivity(diving);
+        diving.removeFromRoster(premium);
+
+        if (premium.getBookings().isEmpty() && diving.getSignedUpPassengers().isEmpty()) {
+            System.out.println("testRemovalDropsBooking: Passed");
+        } else {
+            System.out.println("testRemovalDropsBooking: Failed");
+        }
+    }
+
+    public static void testBatchSignUpRecordsBookings() {
+        TravelPackage travelPackage = new TravelPackage("Trip to Bali", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 5);
+        bali.addActivity(diving);
+        bali.addActivity(surfing);
+        travelPackage.addDestination(bali);
+        StandardPassenger john = new StandardPassenger("John Doe", "P123", 500.0);
+        StandardPassenger mary = new StandardPassenger("Mary Johnson", "P321", 500.0);
+        travelPackage.addPassenger(john);
+        travelPackage.addPassenger(mary);
+
+        travelPackage.signUpAll(List.of(new SignupRequest(john, diving), new SignupRequest(mary, surfing)));
+        travelPackage.signUpAll(List.of(new SignupRequest(mary, diving), new SignupRequest(john, surfing)), true);
+
+        if (john.getBookings().size() == 1 && john.getBooking(diving).getAmountPaid() == 10_000 &&
+                mary.getBookings().size() == 1 && mary.getBooking(surfing).getDestination() == bali) {
+            System.out.println("testBatchSignUpRecordsBookings: Passed");
+        } else {
+            System.out.println("testBatchSignUpRecordsBookings: Failed");
+        }
+    }
+
+    public static void testPassengerDetailsListBookings() {
+        try {
+            Destination hawaii = new Destination("Hawaii");
+            Activity snorkeling = new Activity("Snorkeling", "Snorkeling at the reef", 50.0, 5);
+            hawaii.addActivity(snorkeling);
+            GoldPassenger gold = new GoldPassenger("Jane Doe", "P456", 700.0);
+            gold.signUpForActivity(snorkeling);
+
+            StringBuilder text = new StringBuilder();
+            ReportWriter writer = new ReportWriter(text, ReportFormat.TEXT);
+            writer.passengerDetails(gold);
+            writer.flush();
+            StringBuilder csv = new StringBuilder();
+            writer = new ReportWriter(csv, ReportFormat.CSV);
+            writer.passengerDetails(gold);
+            writer.flush();
+            String n = System.lineSeparator();
+            if (text.toString().equals("Name: Jane Doe" + n + "Passenger Number: P456" + n + "Balance: 655.0" + n +
+                    "Booked: Snorkeling, Destination: Hawaii, Price Paid: 45.0" + n) &&
+                    csv.toString().equals("Name,Passenger Number,Balance,Activity,Destination,Price Paid" + n +
+                            "Jane Doe,P456,655.0,Snorkeling,Hawaii,45.0" + n)) {
+                System.out.println("testPassengerDetailsListBookings: Passed");
+            } else {
+                System.out.println("testPassengerDetailsListBookings: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testPassengerDetailsListBookings: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+//12. waitlist test class
+class WaitlistTest {
+
+    public static void main(String[] args) {
+        testPriorityOrder();
+        testFifoOrder();
+        testCancelRefundsAndPromotes();
+        testPromotionSkipsPassengerWhoCannotPay();
+        testLeftPassengerIsSkipped();
+        testFreeSeatsGoToWaitlist();
+        testConcurrentCancellations();
+        testFailedBatchSeatGoesToWaitlist();
+    }
+
+    public static void testPriorityOrder() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 0);
+        Passenger standard = new StandardPassenger("John Doe", "P123", 500.0);
+        Passenger gold = new GoldPassenger("Jane Doe", "P456", 500.0);
+        Passenger premium = new PremiumPassenger("Steve Smith", "P789");
+        Passenger secondGold = new GoldPassenger("Bob Brown", "P654", 500.0);
+        diving.joinWaitlist(standard);
+        diving.joinWaitlist(gold);
+        diving.joinWaitlist(premium);
+        diving.joinWaitlist(secondGold);
+
+        if (diving.getWaitlist().equals(List.of(premium, gold, secondGold, standard)) &&
+                !diving.joinWaitlist(gold) && diving.getWaitlistSize() == 4) {
+            System.out.println("testPriorityOrder: Passed");
+        } else {
+            System.out.println("testPriorityOrder: Failed");
+        }
+    }
+
+    public static void testFifoOrder() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 0);
+        diving.setWaitlistOrder(WaitlistOrder.FIFO);
+        Passenger standard = new StandardPassenger("John Doe", "P123", 500.0);
+        Passenger premium = new PremiumPassenger("Steve Smith", "P789");
+        diving.joinWaitlist(standard);
+        diving.joinWaitlist(premium);
+
+        if (diving.getWaitlist().equals(List.of(standard, premium))) {
+            System.out.println("testFifoOrder: Passed");
+        } else {
+            System.out.println("testFifoOrder: Failed");
+        }
+    }
+
+    public static void testCancelRefundsAndPromotes() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+        StandardPassenger standard = new StandardPassenger("John Doe", "P123", 500.0);
+        GoldPassenger gold = new GoldPassenger("Jane Doe", "P456", 500.0);
+        standard.signUpForActivity(diving);
+        boolean fullSignUpRejected = !gold.signUpForActivity(diving);
+        diving.joinWaitlist(gold);
+        boolean cancelled = standard.cancelActivity(diving);
+
+        if (fullSignUpRejected && cancelled && !standard.cancelActivity(diving) &&
+                standard.getBalance() == 500.0 && standard.getBookings().isEmpty() &&
+                gold.getBalance() == 410.0 && gold.getBooking(diving).getAmountPaid() == 9_000 &&
+                diving.getSignedUpPassengers().equals(List.of(gold)) && diving.getCurrentCount() == 1 &&
+                diving.getWaitlistSize() == 0) {
+            System.out.println("testCancelRefundsAndPromotes: Passed");
+        } else {
+            System.out.println("testCancelRefundsAndPromotes: Failed");
+        }
+    }
+
+    public static void testPromotionSkipsPassengerWhoCannotPay() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+        Passenger premium = new PremiumPassenger("Steve Smith", "P789");
+        StandardPassenger poor = new StandardPassenger("John Doe", "P123", 10.0);
+        StandardPassenger rich = new StandardPassenger("Mary Johnson", "P321", 500.0);
+        premium.signUpForActivity(diving);
+        diving.joinWaitlist(poor);
+        diving.joinWaitlist(rich);
+        premium.cancelActivity(diving);
+
+        if (diving.getSignedUpPassengers().equals(List.of(rich)) && rich.getBalance() == 400.0 &&
+                poor.getBalance() == 10.0 && !diving.isWaitlisted(poor) && diving.getCurrentCount() == 1) {
+            System.out.println("testPromotionSkipsPassengerWhoCannotPay: Passed");
+        } else {
+            System.out.println("testPromotionSkipsPassengerWhoCannotPay: Failed");
+        }
+    }
+
+    public static void testLeftPassengerIsSkipped() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+        Passenger premium = new PremiumPassenger("Steve Smith", "P789");
+        Passenger gold = new GoldPassenger("Jane Doe", "P456", 500.0);
+        Passenger standard = new StandardPassenger("John Doe", "P123", 500.0);
+        premium.signUpForActivity(diving);
+        diving.joinWaitlist(gold);
+        diving.joinWaitlist(standard);
+        diving.leaveWaitlist(gold);
+        premium.cancelActivity(diving);
+
+        if (diving.getSignedUpPassengers().equals(List.of(standard)) && gold.getBookings().isEmpty()) {
+            System.out.println("testLeftPassengerIsSkipped: Passed");
+        } else {
+            System.out.println("testLeftPassengerIsSkipped: Failed");
+        }
+    }
+
+    public static void testFreeSeatsGoToWaitlist() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 0);
+        Passenger premium = new PremiumPassenger("Steve Smith", "P789");
+        Passenger gold = new GoldPassenger("Jane Doe", "P456", 500.0);
+        diving.joinWaitlist(premium);
+        diving.setCapacity(1);
+        boolean raisedCapacityFilled = diving.getSignedUpPassengers().equals(List.of(premium));
+        diving.setCapacity(3);
+        diving.joinWaitlist(gold);
+
+        if (raisedCapacityFilled && diving.getSignedUpPassengers().equals(List.of(premium, gold)) &&
+                diving.getCurrentCount() == 2 && diving.getWaitlistSize() == 0) {
+            System.out.println("testFreeSeatsGoToWaitlist: Passed");
+        } else {
+            System.out.println("testFreeSeatsGoToWaitlist: Failed");
+        }
+    }
+
+    // Threads cancel every original sign-up while a deep waitlist is promoted; no seat or money may be lost.
+    // The batch passenger's payment bounces after someone joined the waitlist; their held seat must go to the
+    // waiting passenger, and nobody may see the batch passenger on the roster before the charge.
+    public static void testFailedBatchSeatGoesToWaitlist() {
+        TravelPackage travelPackage = new TravelPackage("Trip to Bali", 10);
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+        Passenger waiting = new GoldPassenger("Jane Doe", "P456", 500.0);
+        boolean[] visibleBeforeCharge = new boolean[1];
+        Passenger bouncing = new StandardPassenger("John Doe", "P123", 500.0) {
+            @Override
+            boolean tryDebit(long amount) {
+                visibleBeforeCharge[0] = !diving.getSignedUpPassengers().isEmpty();
+                diving.joinWaitlist(waiting);
+                return false;
+            }
+        };
+        travelPackage.addPassenger(bouncing);
+        List<SignupResult> results = travelPackage.signUpAll(List.of(new SignupRequest(bouncing, diving)));
+        if (results.get(0).getStatus() == SignupStatus.INSUFFICIENT_BALANCE && !visibleBeforeCharge[0] &&
+                diving.getSignedUpPassengers().equals(List.of(waiting)) && diving.getCurrentCount() == 1 &&
+                diving.getWaitlistSize() == 0) {
+            System.out.println("testFailedBatchSeatGoesToWaitlist: Passed");
+        } else {
+            System.out.println("testFailedBatchSeatGoesToWaitlist: Failed");
+        }
+    }
+
+    public static void testConcurrentCancellations() {
+        try {
+            int capacity = 1_000;
+            int waiting = 20_000;
+            int threads = 8;
+            Activity activity = new Activity("Snorkeling", "Snorkeling at the reef", 10.0, capacity, true);
+            StandardPassenger[] booked = new StandardPassenger[capacity];
+            List<StandardPassenger> everyone = new ArrayList<>();
+            for (int i = 0; i < capacity; i++) {
+                booked[i] = new StandardPassenger("Passenger", "B" + i, 100.0);
+                booked[i].signUpForActivity(activity);
+                everyone.add(booked[i]);
+            }
+            for (int i = 0; i < waiting; i++) {
+                StandardPassenger passenger = new StandardPassenger("Passenger", "W" + i, 100.0);
+                activity.joinWaitlist(passenger);
+                everyone.add(passenger);
+            }
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                workers[t] = new Thread(() -> {
+                    for (int i = thread; i < capacity; i += threads) {
+                        booked[i].cancelActivity(activity);
+                    }
+                });
+                workers[t].start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long paid = 0;
+            long balances = 0;
+            for (StandardPassenger passenger : everyone) {
+                Booking booking = passenger.getBooking(activity);
+                paid += booking == null ? 0 : booking.getAmountPaid();
+                balances += passenger.getWallet().getMinorUnits();
+            }
+            if (activity.getCurrentCount() == capacity && activity.getSignedUpPassengers().size() == capacity &&
+                    activity.getWaitlistSize() == waiting - capacity && paid == capacity * 1_000L &&
+                    balances + paid == everyone.size() * 10_000L &&
+                    activity.getSignedUpPassengers().get(0).getPassengerNumber().startsWith("W")) {
+                System.out.println("testConcurrentCancellations: Passed");
+            } else {
+                System.out.println("testConcurrentCancellations: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testConcurrentCancellations: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+//13. pricing engine test class
+class PricingEngineTest {
+
+    public static void main(String[] args) {
+        testStandardTierPrices();
+        testRulesApplyInOrder();
+        testSetCostInvalidatesOnlyThatActivity();
+        testRuleChangeRecompilesTables();
+        testPremiumChargedByRuleCannotSignUp();
+        testGroupDiscount();
+        testGroupDiscountNeedsConfirmedSeats();
+    }
+
+    public static void testStandardTierPrices() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        StandardPassenger standard = new StandardPassenger("John Doe", "P123", 500.0);
+        GoldPassenger gold = new GoldPassenger("Jane Doe", "P456", 500.0);
+        PremiumPassenger premium = new PremiumPassenger("Steve Smith", "P789");
+        if (standard.priceFor(diving) == 10_000 && gold.priceFor(diving) == 9_000 && premium.priceFor(diving) == 0 &&
+                diving.getPricingEngine() == PricingEngine.getDefault()) {
+            System.out.println("testStandardTierPrices: Passed");
+        } else {
+            System.out.println("testStandardTierPrices: Failed");
+        }
+    }
+
+    public static void testRulesApplyInOrder() {
+        PricingEngine engine = PricingEngine.standard();
+        engine.addRule(PricingRule.percentOf(activity -> activity.getName().startsWith("Ski"), 150));  // Peak season.
+        Activity skiing = new Activity("Skiing", "Icy skiing", 100.0, 5);
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        skiing.setPricingEngine(engine);
+        diving.setPricingEngine(engine);
+        GoldPassenger gold = new GoldPassenger("Jane Doe", "P456", 500.0);
+        gold.signUpForActivity(skiing);
+        if (engine.priceFor(skiing, PassengerTier.STANDARD) == 15_000 && gold.priceFor(skiing) == 13_500 &&
+                engine.priceFor(diving, PassengerTier.GOLD) == 9_000 && engine.priceFor(skiing, PassengerTier.PREMIUM) == 0 &&
+                gold.getBalance() == 365.0) {
+            System.out.println("testRulesApplyInOrder: Passed");
+        } else {
+            System.out.println("testRulesApplyInOrder: Failed");
+        }
+    }
+
+    public static void testSetCostInvalidatesOnlyThatActivity() {
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 5);
+        PricingEngine engine = PricingEngine.getDefault();
+        engine.priceFor(diving, PassengerTier.GOLD);
+        engine.priceFor(surfing, PassengerTier.GOLD);
+        PricingEngine.PriceTable surfingTable = surfing.getPriceTable();
+        diving.setCost(200.0);
+        if (diving.getPriceTable() == null && engine.priceFor(diving, PassengerTier.GOLD) == 18_000 &&
+                surfing.getPriceTable() == surfingTable && engine.priceFor(surfing, PassengerTier.GOLD) == 4_500) {
+            System.out.println("testSetCostInvalidatesOnlyThatActivity: Passed");
+        } else {
+            System.out.println("testSetCostInvalidatesOnlyThatActivity: Failed");
+        }
+    }
+
+    public static void testRuleChangeRecompilesTables() {
+        PricingEngine engine = PricingEngine.standard();
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        diving.setPricingEngine(engine);
+        long before = engine.priceFor(diving, PassengerTier.STANDARD);
+        PricingRule offPeak = PricingRule.percentOf(PassengerTier.STANDARD, 80);
+        engine.addRule(offPeak);
+        long during = engine.priceFor(diving, PassengerTier.STANDARD);
+        engine.removeRule(offPeak);
+        if (before == 10_000 && during == 8_000 && engine.priceFor(diving, PassengerTier.STANDARD) == 10_000) {
+            System.out.println("testRuleChangeRecompilesTables: Passed");
+        } else {
+            System.out.println("testRuleChangeRecompilesTables: Failed");
+        }
+    }
+
+    public static void testPremiumChargedByRuleCannotSignUp() {
+        PricingEngine engine = new PricingEngine();  // No tier rules: everyone pays full price.
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        diving.setPricingEngine(engine);
+        PremiumPassenger premium = new PremiumPassenger("Steve Smith", "P789");
+        if (!premium.signUpForActivity(diving) && diving.getCurrentCount() == 0) {
+            System.out.println("testPremiumChargedByRuleCannotSignUp: Passed");
+        } else {
+            System.out.println("testPremiumChargedByRuleCannotSignUp: Failed");
+        }
+    }
+
+    public static void testGroupDiscount() {
+        PricingEngine engine = PricingEngine.standard();
+        engine.setGroupDiscount(3, 80);
+        TravelPackage travelPackage = new TravelPackage("Trip to Bali", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 10);
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 10);
+        diving.setPricingEngine(engine);
+        surfing.setPricingEngine(engine);
+        bali.addActivity(diving);
+        bali.addActivity(surfing);
+        travelPackage.addDestination(bali);
+        List<SignupRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Passenger passenger = new StandardPassenger("Passenger " + i, "P" + i, 500.0);
+            travelPackage.addPassenger(passenger);
+            requests.add(new SignupRequest(passenger, diving));
+        }
+        requests.add(new SignupRequest(travelPackage.findPassenger("P0"), surfing));
+        List<SignupResult> results = travelPackage.signUpAll(requests);
+        if (results.get(0).getAmountCharged() == 8_000 && results.get(2).getAmountCharged() == 8_000 &&
+                results.get(3).getAmountCharged() == 5_000 &&
+                ((StandardPassenger) travelPackage.findPassenger("P0")).getBalance() == 370.0) {
+            System.out.println("testGroupDiscount: Passed");
+        } else {
+            System.out.println("testGroupDiscount: Failed");
+        }
+    }
+
+    // One of three cannot pay, so the two left are not a group of three and pay full price.
+    public static void testGroupDiscountNeedsConfirmedSeats() {
+        PricingEngine engine = PricingEngine.standard();
+        engine.setGroupDiscount(3, 80);
+        TravelPackage travelPackage = new TravelPackage("Trip to Bali", 10);
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 10);
+        diving.setPricingEngine(engine);
+        List<SignupRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Passenger passenger = new StandardPassenger("Passenger " + i, "P" + i, i == 2 ? 70.0 : 500.0);
+            travelPackage.addPassenger(passenger);
+            requests.add(new SignupRequest(passenger, diving));
+        }
+        List<SignupResult> results = travelPackage.signUpAll(requests);
+        if (results.get(0).getAmountCharged() == 10_000 && results.get(1).getAmountCharged() == 10_000 &&
+                results.get(2).getStatus() == SignupStatus.INSUFFICIENT_BALANCE && diving.getCurrentCount() == 2 &&
+                ((StandardPassenger) travelPackage.findPassenger("P0")).getBalance() == 400.0 &&
+                ((StandardPassenger) travelPackage.findPassenger("P2")).getBalance() == 70.0) {
+            System.out.println("testGroupDiscountNeedsConfirmedSeats: Passed");
+        } else {
+            System.out.println("testGroupDiscountNeedsConfirmedSeats: Failed");
+        }
+    }
+}
+
+//14. booking service test class
+class BookingServiceTest {
+
+    public static void main(String[] args) {
+        testSignUpCompletesOnLane();
+        testUnknownPackageFails();
+        testConcurrentClientsAcrossPackages();
+        testClosedServiceRejectsWork();
+    }
+
+    public static void testSignUpCompletesOnLane() {
+        try (BookingService service = new BookingService(4)) {
+            TravelPackage travelPackage = samplePackage("Trip to Bali", 1);
+            service.addPackage(travelPackage);
+            Activity diving = travelPackage.getItinerary().get(0).getActivities().get(0);
+            GoldPassenger gold = new GoldPassenger("Jane Doe", "P456", 500.0);
+            StandardPassenger standard = new StandardPassenger("John Doe", "P123", 500.0);
+            service.addPassenger("Trip to Bali", gold).get();
+            service.addPassenger("Trip to Bali", standard).get();
+            SignupResult first = service.signUp("Trip to Bali", gold, diving).get();
+            SignupResult second = service.signUp("Trip to Bali", standard, diving).get();
+            String lane = service.submit("Trip to Bali", p -> Thread.currentThread().getName()).get();
+            String sameLane = service.submit("Trip to Bali", p -> Thread.currentThread().getName()).get();
+            if (first.getStatus() == SignupStatus.CONFIRMED && first.getAmountCharged() == 900 &&
+                    second.getStatus() == SignupStatus.ACTIVITY_FULL && gold.getBalance() == 491.0 &&
+                    lane.startsWith("booking-lane-") && lane.equals(sameLane) && !service.addPackage(travelPackage)) {
+                System.out.println("testSignUpCompletesOnLane: Passed");
+            } else {
+                System.out.println("testSignUpCompletesOnLane: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testSignUpCompletesOnLane: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testUnknownPackageFails() {
+        try (BookingService service = new BookingService(2)) {
+            service.signUp("Nowhere", new PremiumPassenger("Steve Smith", "P789"), new Activity("Diving", "Scuba diving", 1.0, 1)).get();
+            System.out.println("testUnknownPackageFails: Failed");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                System.out.println("testUnknownPackageFails: Passed");
+            } else {
+                System.out.println("testUnknownPackageFails: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testUnknownPackageFails: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    // Client threads book into many packages at once; every package must end up exactly full.
+    public static void testConcurrentClientsAcrossPackages() {
+        int packageCount = 200;
+        int seats = 20;
+        int clients = 8;
+        try (BookingService service = new BookingService(4)) {
+            List<TravelPackage> travelPackages = new ArrayList<>();
+            for (int i = 0; i < packageCount; i++) {
+                TravelPackage travelPackage = samplePackage("Package " + i, seats);
+                for (int j = 0; j < seats * 2; j++) {
+                    travelPackage.addPassenger(new StandardPassenger("Passenger", "P" + j, 100.0));
+                }
+                travelPackages.add(travelPackage);
+                service.addPackage(travelPackage);
+            }
+            List<CompletableFuture<SignupResult>> results = new CopyOnWriteArrayList<>();
+            Thread[] threads = new Thread[clients];
+            for (int c = 0; c < clients; c++) {
+                int client = c;
+                threads[c] = new Thread(() -> {
+                    for (int i = client; i < packageCount * seats * 2; i += clients) {
+                        TravelPackage travelPackage = travelPackages.get(i % packageCount);
+                        Passenger passenger = travelPackage.findPassenger("P" + (i / packageCount));
+                        Activity activity = travelPackage.getItinerary().get(0).getActivities().get(0);
+                        results.add(service.signUp(travelPackage.getName(), passenger, activity));
+                    }
+                });
+                threads[c].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get();
+            long confirmed = results.stream().filter(result -> result.join().isConfirmed()).count();
+            boolean allFull = travelPackages.stream().allMatch(travelPackage ->
+                    travelPackage.getItinerary().get(0).getActivities().get(0).getSignedUpPassengers().size() == seats);
+            if (confirmed == (long) packageCount * seats && allFull) {
+                System.out.println("testConcurrentClientsAcrossPackages: Passed");
+            } else {
+                System.out.println("testConcurrentClientsAcrossPackages: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testConcurrentClientsAcrossPackages: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testClosedServiceRejectsWork() {
+        try {
+            BookingService service = new BookingService(2);
+            service.addPackage(samplePackage("Trip to Bali", 1));
+            service.close();
+            service.addPassenger("Trip to Bali", new PremiumPassenger("Steve Smith", "P789")).get();
+            System.out.println("testClosedServiceRejectsWork: Failed");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                System.out.println("testClosedServiceRejectsWork: Passed");
+            } else {
+                System.out.println("testClosedServiceRejectsWork: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testClosedServiceRejectsWork: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    private static TravelPackage samplePackage(String name, int seats) {
+        TravelPackage travelPackage = new TravelPackage(name, 1_000);
+        Destination bali = new Destination("Bali");
+        bali.addActivity(new Activity("Diving", "Scuba diving", 10.0, seats));
+        travelPackage.addDestination(bali);
+        return travelPackage;
+    }
+}
+
+//15. booking server test class
+class BookingServerTest {
+
+    public static void main(String[] args) {
+        testBookingOverHttp();
+        testErrors();
+        testUnexpectedFailureIsAnswered();
+    }
+
+    // An exception other than a bad parameter must still produce a response rather than a hung connection.
+    public static void testUnexpectedFailureIsAnswered() {
+        BookingService broken = new BookingService(1) {
+            @Override
+            public boolean addPackage(TravelPackage travelPackage) {
+                throw new IllegalStateException("Catalog is read-only");
+            }
+        };
+        try (broken) {
+            BookingServer server = BookingServer.start(broken, 0);
+            try {
+                HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+                HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + server.getPort() + "/packages?name=Cruise&capacity=5"))
+                        .POST(HttpRequest.BodyPublishers.noBody()).timeout(Duration.ofSeconds(5)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 500 && response.body().contains("Catalog is read-only")) {
+                    System.out.println("testUnexpectedFailureIsAnswered: Passed");
+                } else {
+                    System.out.println("testUnexpectedFailureIsAnswered: Failed");
+                }
+            } finally {
+                server.close();
+            }
+        } catch (Exception e) {
+            System.out.println("testUnexpectedFailureIsAnswered: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testBookingOverHttp() {
+        try (BookingService service = new BookingService(2)) {
+            BookingServer server = BookingServer.start(service, 0);
+            try {
+                HttpClient client = HttpClient.newHttpClient();
+                String base = "http://localhost:" + server.getPort() + "/packages";
+                int created = post(client, base + "?name=Trip%20to%20Bali&capacity=10").statusCode();
+                post(client, base + "/Trip%20to%20Bali/activities?destination=Bali&name=Diving&description=Scuba%20diving&cost=100&capacity=1");
+                post(client, base + "/Trip%20to%20Bali/passengers?tier=gold&name=Jane%20Doe&number=P456&balance=500");
+                post(client, base + "/Trip%20to%20Bali/passengers?tier=premium&name=Steve%20Smith&number=P789");
+                HttpResponse<String> confirmed = post(client, base + "/Trip%20to%20Bali/signups?passenger=P456&destination=Bali&activity=Diving");
+                HttpResponse<String> full = post(client, base + "/Trip%20to%20Bali/signups?passenger=P789&destination=Bali&activity=Diving");
+                HttpResponse<String> passengers = get(client, base + "/Trip%20to%20Bali/passengers?format=csv");
+                HttpResponse<String> available = get(client, base + "/Trip%20to%20Bali/available");
+
+                StringBuilder expected = new StringBuilder();
+                ReportWriter writer = new ReportWriter(expected, ReportFormat.CSV);
+                TravelPackage travelPackage = service.submit("Trip to Bali", p -> p).get();
+                writer.passengerList(travelPackage);
+                writer.flush();
+                if (created == 201 && confirmed.statusCode() == 200 && confirmed.body().equals("CONFIRMED 90.0\n") &&
+                        full.statusCode() == 409 && full.body().startsWith("ACTIVITY_FULL") &&
+                        passengers.body().equals(expected + "\n") && available.statusCode() == 200 &&
+                        !available.body().contains("Diving")) {
+                    System.out.println("testBookingOverHttp: Passed");
+                } else {
+                    System.out.println("testBookingOverHttp: Failed");
+                }
+            } finally {
+                server.close();
+            }
+        } catch (Exception e) {
+            System.out.println("testBookingOverHttp: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    public static void testErrors() {
+        try (BookingService service = new BookingService(1)) {
+            BookingServer server = BookingServer.start(service, 0);
+            try {
+                HttpClient client = HttpClient.newHttpClient();
+                String base = "http://localhost:" + server.getPort() + "/packages";
+                int unknownPackage = get(client, base + "/Nowhere/passengers").statusCode();
+                int missingParameter = post(client, base + "?name=Cruise").statusCode();
+                int badNumber = post(client, base + "?name=Cruise&capacity=many").statusCode();
+                int unknownResource = get(client, base + "/Cruise/itinerary").statusCode();
+                if (unknownPackage == 404 && missingParameter == 400 && badNumber == 400 && unknownResource == 404) {
+                    System.out.println("testErrors: Passed");
+                } else {
+                    System.out.println("testErrors: Failed");
+                }
+            } finally {
+                server.close();
+            }
+        } catch (Exception e) {
+            System.out.println("testErrors: Failed with exception: " + e.getMessage());
+        }
+    }
+
+    private static HttpResponse<String> post(HttpClient client, String uri) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(uri)).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static HttpResponse<String> get(HttpClient client, String uri) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(uri)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
+
+//16. activity columns test class
+class ActivityColumnsTest {
+
+    public static void main(String[] args) {
+        testColumnsFollowActivities();
+        testScans();
+        testGrowthKeepsConcurrentUpdates();
+    }
+
+    public static void testColumnsFollowActivities() {
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 2);
+        bali.addActivity(diving);
+        ActivityColumns columns = bali.getActivityColumns();
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.5, 5);
+        bali.addActivity(surfing);
+        diving.signUp(new PremiumPassenger("Steve Smith", "P789"));
+        surfing.setCost(60.0);
+        surfing.setCapacity(8);
+        if (columns == bali.getActivityColumns() && columns.size() == 2 && columns.get(1) == surfing &&
+                columns.indexOf(diving) == 0 && columns.getCurrentCount(0) == 1 && columns.getCost(0) == 10_000 &&
+                columns.getCost(1) == 6_000 && columns.getCapacity(1) == 8) {
+            System.out.println("testColumnsFollowActivities: Passed");
+        } else {
+            System.out.println("testColumnsFollowActivities: Failed");
+        }
+    }
+
+    public static void testScans() {
+        Destination hawaii = new Destination("Hawaii");
+        for (int i = 0; i < 10; i++) {
+            hawaii.addActivity(new Activity("Activity " + i, "Description", 10.0 * (i + 1), 1));
+        }
+        ActivityColumns columns = hawaii.getActivityColumns();
+        hawaii.getActivities().get(2).signUp(new PremiumPassenger("Steve Smith", "P789"));
+        hawaii.getActivities().get(5).signUp(new PremiumPassenger("Steve Smith", "P789"));
+        int[] midRange = columns.indicesInPriceRange(3_000, 6_000);
+        int[] availableMidRange = columns.availableInPriceRange(3_000, 6_000);
+        if (columns.countAvailable() == 8 && columns.freeSeats() == 8 &&
+                Arrays.equals(midRange, new int[]{2, 3, 4, 5}) && Arrays.equals(availableMidRange, new int[]{3, 4}) &&
+                columns.activities(availableMidRange).equals(List.of(hawaii.getActivities().get(3), hawaii.getActivities().get(4))) &&
+                columns.availableIndices().length == 8) {
+            System.out.println("testScans: Passed");
+        } else {
+            System.out.println("testScans: Failed");
+        }
+    }
+
+    // Sign-ups run while the store grows; every column must end up matching its activity.
+    public static void testGrowthKeepsConcurrentUpdates() {
+        try {
+            Destination sea = new Destination("Sea");
+            ActivityColumns columns = sea.getActivityColumns();
+            List<Activity> activities = new CopyOnWriteArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                Activity activity = new Activity("Activity " + i, "Description", 1.0, 100_000, true);
+                activities.add(activity);
+                sea.addActivity(activity);
+            }
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                int thread = t;
+                threads[t] = new Thread(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        activities.get(i % 4).signUp(new PremiumPassenger("Passenger", "T" + thread + "-" + i));
+                    }
+                });
+                threads[t].start();
+            }
+            for (int i = 4; i < 4_000; i++) {
+                sea.addActivity(new Activity("Activity " + i, "Description", 1.0, 10));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            boolean matches = columns.size() == 4_000;
+            for (int i = 0; i < columns.size() && matches; i++) {
+                matches = columns.getCurrentCount(i) == columns.get(i).getCurrentCount();
+            }
+            if (matches && columns.getCurrentCount(0) == 20_000) {
+                System.out.println("testGrowthKeepsConcurrentUpdates: Passed");
+            } else {
+                System.out.println("testGrowthKeepsConcurrentUpdates: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testGrowthKeepsConcurrentUpdates: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+//17. off-heap passenger registry test class
+class OffHeapPassengerRegistryTest {
+
+    public static void main(String[] args) {
+        testAddAndView();
+        testViewsShareBalance();
+        testViewsShareSchedule();
+        testRemove();
+        testManyPassengers();
+        testConcurrentDebitsCannotOverdraw();
+    }
+
+    public static void testAddAndView() {
+        OffHeapPassengerRegistry registry = new OffHeapPassengerRegistry();
+        int gold = registry.add(new GoldPassenger("Jane Doe", "P456", 700.0));
+        registry.add(PassengerTier.PREMIUM, "Ren\u00e9e Dupont", "P789", 0);
+        int duplicate = registry.add(new StandardPassenger("John Doe", "P456", 10.0));
+        Passenger view = registry.get("P456");
+        Passenger premium = registry.get("P789");
+        if (gold == 0 && duplicate == -1 && registry.size() == 2 && view instanceof GoldPassenger &&
+                view.getName().equals("Jane Doe") && ((GoldPassenger) view).getBalance() == 700.0 &&
+                premium instanceof PremiumPassenger && premium.getName().equals("Ren\u00e9e Dupont") &&
+                registry.get("P000") == null && registry.getTier(gold) == PassengerTier.GOLD) {
+            System.out.println("testAddAndView: Passed");
+        } else {
+            System.out.println("testAddAndView: Failed");
+        }
+    }
+
+    public static void testViewsShareBalance() {
+        OffHeapPassengerRegistry registry = new OffHeapPassengerRegistry();
+        registry.add(PassengerTier.STANDARD, "John Doe", "P123", 50_000);
+        StandardPassenger first = (StandardPassenger) registry.get("P123");
+        StandardPassenger second = (StandardPassenger) registry.get("P123");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        first.signUpForActivity(diving);
+        second.setBalance(second.getBalance() + 50.0);
+        if (first.equals(second) && first.getBalance() == 450.0 && registry.getBalance(registry.find("P123")) == 45_000 &&
+                diving.getSignedUpPassengers().equals(List.of(second))) {
+            System.out.println("testViewsShareBalance: Passed");
+        } else {
+            System.out.println("testViewsShareBalance: Failed");
+        }
+    }
+
+    // A clash is caught even when the two bookings are made through different views.
+    public static void testViewsShareSchedule() {
+        OffHeapPassengerRegistry registry = new OffHeapPassengerRegistry();
+        registry.add(PassengerTier.PREMIUM, "Steve Smith", "P789", 0);
+        LocalDateTime morning = LocalDateTime.of(2025, 7, 1, 9, 0);
+        Activity diving = new Activity("Diving", "Scuba diving", 0.0, 5);
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 0.0, 5);
+        diving.setTimeSlot(TimeSlot.of(morning, Duration.ofHours(3)));
+        surfing.setTimeSlot(TimeSlot.of(morning.plusHours(1), Duration.ofHours(2)));
+        Passenger first = registry.get("P789");
+        Passenger second = registry.get("P789");
+        if (first.signUpForActivity(diving) && !second.signUpForActivity(surfing) &&
+                second.getBookings().size() == 1 && second.getBooking(diving) != null &&
+                registry.get("P789").getSchedule().getActivities().equals(List.of(diving))) {
+            System.out.println("testViewsShareSchedule: Passed");
+        } else {
+            System.out.println("testViewsShareSchedule: Failed");
+        }
+    }
+
+    public static void testRemove() {
+        OffHeapPassengerRegistry registry = new OffHeapPassengerRegistry();
+        for (int i = 0; i < 2_000; i++) {
+            registry.add(PassengerTier.STANDARD, "Passenger " + i, "P" + i, i);
+        }
+        int old = registry.find("P7");
+        boolean removed = registry.remove("P7") && !registry.remove("P7") && !registry.contains("P7") &&
+                registry.view(old) == null && registry.size() == 1_999;
+        // Removing leaves tombstones; the passengers probed past them, and the ones added after, are still found.
+        for (int i = 0; i < 2_000; i += 2) {
+            registry.remove("P" + i);
+        }
+        int readded = registry.add(PassengerTier.GOLD, "Passenger 7", "P7", 700);
+        for (int i = 2_000; i < 4_000; i++) {
+            registry.add(PassengerTier.STANDARD, "Passenger " + i, "P" + i, i);
+        }
+        boolean found = true;
+        for (int i = 1; i < 4_000 && found; i++) {
+            found = registry.contains("P" + i) == (i % 2 == 1 || i >= 2_000);
+        }
+        if (removed && found && readded != old && registry.get("P7") instanceof GoldPassenger &&
+                registry.getBalance(registry.find("P7")) == 700 && registry.size() == 3_000) {
+            System.out.println("testRemove: Passed");
+        } else {
+            System.out.println("testRemove: Failed");
+        }
+    }
+
+    // Enough passengers to span several record chunks and index resizes.
+    public static void testManyPassengers() {
+        OffHeapPassengerRegistry registry = new OffHeapPassengerRegistry();
+        int count = 200_000;
+        for (int i = 0; i < count; i++) {
+            registry.add(PassengerTier.values()[i % 3], "Passenger " + i, "P" + i, i);
+        }
+        boolean found = true;
+        for (int i = 0; i < count && found; i += 997) {
+            int record = registry.find("P" + i);
+            found = record == i && registry.getBalance(record) == i &&
+                    registry.view(record).getName().equals("Passenger " + i);
+        }
+        if (found && registry.size() == count && !registry.contains("P" + count) && registry.getOffHeapBytes() > 0) {
+            System.out.println("testManyPassengers: Passed");
+        } else {
+            System.out.println("testManyPassengers: Failed");
+        }
+    }
+
+    // Every thread debits through its own view of the same passenger; the balance must never go negative.
+    public static void testConcurrentDebitsCannotOverdraw() {
+        try {
+            OffHeapPassengerRegistry registry = new OffHeapPassengerRegistry();
+            registry.add(PassengerTier.STANDARD, "John Doe", "P123", 10_000);
+            AtomicInteger debits = new AtomicInteger();
+            Thread[] threads = new Thread[8];
+            for (int t = 0; t < threads.length; t++) {
+                threads[t] = new Thread(() -> {
+                    Passenger view = registry.get("P123");
+                    for (int i = 0; i < 5_000; i++) {
+                        if (view.tryDebit(1)) {
+                            debits.incrementAndGet();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            if (debits.get() == 10_000 && registry.getBalance(0) == 0) {
+                System.out.println("testConcurrentDebitsCannotOverdraw: Passed");
+            } else {
+                System.out.println("testConcurrentDebitsCannotOverdraw: Failed");
+            }
+        } catch (Exception e) {
+            System.out.println("testConcurrentDebitsCannotOverdraw: Failed with exception: " + e.getMessage());
+        }
+    }
+}
+
+//18. booking metrics test class
+class MetricsTest {
+
+    public static void main(String[] args) {
+        testHistogramBuckets();
+        testSignUpOutcomesCounted();
+        testDisabledRecordsNothing();
+        testGaugesAndDump();
+        testGaugesFollowTheirPackage();
+    }
+
+    // Two packages with the same names keep separate gauges, and a removed destination takes its gauges with it.
+    public static void testGaugesFollowTheirPackage() {
+        TravelPackage first = new TravelPackage("Twin Trip", 4);
+        TravelPackage second = new TravelPackage("Twin Trip", 4);
+        Activity firstDiving = new Activity("Diving", "Scuba diving", 100.0, 4);
+        Activity secondDiving = new Activity("Diving", "Scuba diving", 100.0, 2);
+        Destination firstBali = new Destination("Bali");
+        Destination secondBali = new Destination("Bali");
+        firstBali.addActivity(firstDiving);
+        secondBali.addActivity(secondDiving);
+        first.addDestination(firstBali);
+        second.addDestination(secondBali);
+        BookingMetrics.watch(first);
+        BookingMetrics.watch(second);
+        secondDiving.signUp(new PremiumPassenger("Steve Smith", "P789"));
+        Map<String, Double> both = BookingMetrics.snapshot().getGauges();
+        second.removeDestination(secondBali);
+        Destination hawaii = new Destination("Hawaii");
+        first.addDestination(hawaii);
+        hawaii.addActivity(new Activity("Snorkeling", "Snorkeling at the reef", 50.0, 4));
+        Map<String, Double> after = BookingMetrics.snapshot().getGauges();
+        BookingMetrics.unwatch(first);
+        BookingMetrics.unwatch(second);
+        if (both.get("Twin Trip: utilization Bali / Diving") == 0.0 &&
+                both.get("Twin Trip: utilization Bali / Diving #2") == 0.5 &&
+                after.containsKey("Twin Trip: utilization Bali / Diving") &&
+                !after.containsKey("Twin Trip: utilization Bali / Diving #2") &&
+                !after.containsKey("Twin Trip: utilization Bali #2") && after.containsKey("Twin Trip: passengers #2") &&
+                after.get("Twin Trip: utilization Hawaii / Snorkeling") == 0.0 &&
+                BookingMetrics.snapshot().getGauges().keySet().stream().noneMatch(name -> name.startsWith("Twin Trip"))) {
+            System.out.println("testGaugesFollowTheirPackage: Passed");
+        } else {
+            System.out.println("testGaugesFollowTheirPackage: Failed");
+        }
+    }
+
+    public static void testHistogramBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1_000; value++) {
+            histogram.record(value);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        boolean bucketsAgree = true;
+        for (long value : new long[]{0, 7, 8, 9, 100, 1_000, 123_456_789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            bucketsAgree &= LatencyHistogram.lowestValue(bucket) <= value && value <= LatencyHistogram.highestValue(bucket);
+        }
+        long p50 = snapshot.getPercentile(50);
+        if (bucketsAgree && snapshot.getCount() == 1_000 && snapshot.getMax() == 1_000 && snapshot.getMean() == 500.5 &&
+                p50 >= 500 && p50 <= 500 * 1.125 && snapshot.getPercentile(100) == 1_000) {
+            System.out.println("testHistogramBuckets: Passed");
+        } else {
+            System.out.println("testHistogramBuckets: Failed");
+        }
+    }
+
+    public static void testSignUpOutcomesCounted() {
+        BookingMetrics.reset();
+        BookingMetrics.setEnabled(true);
+        try {
+            Activity diving = new Activity("Diving", "Scuba diving", 100.0, 1);
+            Passenger john = new StandardPassenger("John Doe", "S123", 500.0);
+            Passenger jane = new GoldPassenger("Jane Smith", "G456", 50.0);
+            Passenger steve = new StandardPassenger("Steve Smith", "S789", 500.0);
+            jane.signUpForActivity(diving);
+            john.signUpForActivity(diving);
+            steve.signUpForActivity(diving);
+            diving.cancel(john);
+            TravelPackage travelPackage = new TravelPackage("Summer Vacation", 1);
+            travelPackage.addPassenger(john);
+            travelPackage.addPassenger(steve);
+            MetricsSnapshot snapshot = BookingMetrics.snapshot();
+            if (snapshot.getSignUps(PassengerTier.STANDARD, SignupStatus.CONFIRMED) == 1 &&
+                    snapshot.getSignUps(PassengerTier.GOLD, SignupStatus.INSUFFICIENT_BALANCE) == 1 &&
+                    snapshot.getSignUps(PassengerTier.STANDARD, SignupStatus.ACTIVITY_FULL) == 1 &&
+                    snapshot.getCancellations(PassengerTier.STANDARD) == 1 &&
+                    snapshot.getPassengersAdded(PassengerTier.STANDARD) == 1 &&
+                    snapshot.getPassengersRejected(PassengerTier.STANDARD) == 1 &&
+                    snapshot.getLatency(BookingOperation.SIGN_UP, PassengerTier.STANDARD).getCount() == 1 &&
+                    snapshot.getLatency(BookingOperation.CANCEL, PassengerTier.STANDARD).getCount() == 1) {
+                System.out.println("testSignUpOutcomesCounted: Passed");
+            } else {
+                System.out.println("testSignUpOutcomesCounted: Failed");
+            }
+        } finally {
+            BookingMetrics.setEnabled(false);
+            BookingMetrics.reset();
+        }
+    }
+
+    public static void testDisabledRecordsNothing() {
+        BookingMetrics.reset();
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        new StandardPassenger("John Doe", "S123", 500.0).signUpForActivity(diving);
+        MetricsSnapshot snapshot = BookingMetrics.snapshot();
+        if (snapshot.getSignUps(SignupStatus.CONFIRMED) == 0 &&
+                snapshot.getLatency(BookingOperation.SIGN_UP, PassengerTier.STANDARD).getCount() == 0) {
+            System.out.println("testDisabledRecordsNothing: Passed");
+        } else {
+            System.out.println("testDisabledRecordsNothing: Failed");
+        }
+    }
+
+    public static void testGaugesAndDump() {
+        TravelPackage travelPackage = new TravelPackage("Gauge Trip", 4);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 4);
+        bali.addActivity(diving);
+        travelPackage.addDestination(bali);
+        BookingMetrics.watch(travelPackage);
+        diving.signUp(new PremiumPassenger("Steve Smith", "P789"));
+        MetricsSnapshot snapshot = BookingMetrics.snapshot();
+        String text = snapshot.toString();
+        BookingMetrics.unwatch(travelPackage);
+        if (snapshot.getGauges().get("Gauge Trip: utilization Bali") == 0.25 &&
+                snapshot.getGauges().get("Gauge Trip: utilization Bali / Diving") == 0.25 &&
+                snapshot.getGauges().get("Gauge Trip: passengers") == 0.0 &&
+                text.contains("Gauge Trip: utilization Bali / Diving: 0.250") && text.startsWith("Sign-ups:") &&
+                !BookingMetrics.snapshot().getGauges().containsKey("Gauge Trip: passengers")) {
+            System.out.println("testGaugesAndDump: Passed");
+        } else {
+            System.out.println("testGaugesAndDump: Failed");
+        }
+    }
+}
+
+//19. travel package snapshot test class
+class TravelPackageSnapshotTest {
+
+    public static void main(String[] args) {
+        testSnapshotIsPointInTime();
+        testUnchangedPartsAreShared();
+        testRemovalsAndRenames();
+        testAppendsAndShifts();
+        testReadersDuringWrites();
+    }
+
+    // New activities are appended to every listing of their destination, and removing a destination shifts the
+    // ones after it without rebuilding them.
+    public static void testAppendsAndShifts() {
+        TravelPackage travelPackage = new TravelPackage("Island Hopping", 10);
+        Destination bali = new Destination("Bali");
+        Destination java = new Destination("Java");
+        Destination lombok = new Destination("Lombok");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        bali.addActivity(diving);
+        travelPackage.addDestination(bali);
+        travelPackage.addDestination(java);
+        travelPackage.addDestination(lombok);
+        travelPackage.addDestination(bali);
+        TravelPackageSnapshot before = travelPackage.getSnapshot();
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 5);
+        bali.addActivity(surfing);
+        TravelPackageSnapshot appended = travelPackage.getSnapshot();
+        travelPackage.removeDestination(java);
+        TravelPackageSnapshot shifted = travelPackage.getSnapshot();
+        DestinationSnapshot first = appended.getItinerary().get(0);
+        if (first == appended.getItinerary().get(3) && first.getActivities().size() == 2 &&
+                first.getActivities().get(0) == before.getItinerary().get(0).getActivities().get(0) &&
+                first.getActivities().get(1).getActivity() == surfing &&
+                appended.getItinerary().get(2) == before.getItinerary().get(2) &&
+                shifted.getItinerary().size() == 3 && shifted.getItinerary().get(0) == first &&
+                shifted.getItinerary().get(1) == appended.getItinerary().get(2) && shifted.getItinerary().get(2) == first) {
+            System.out.println("testAppendsAndShifts: Passed");
+        } else {
+            System.out.println("testAppendsAndShifts: Failed");
+        }
+    }
+
+    public static void testSnapshotIsPointInTime() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        bali.addActivity(diving);
+        travelPackage.addDestination(bali);
+        Passenger john = new StandardPassenger("John Doe", "S123", 500.0);
+        travelPackage.addPassenger(john);
+        TravelPackageSnapshot before = travelPackage.getSnapshot();
+
+        Passenger jane = new GoldPassenger("Jane Smith", "G456", 500.0);
+        diving.setDescription("Reef diving");
+        travelPackage.addPassenger(jane);
+        john.signUpForActivity(diving);
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 5);
+        bali.addActivity(surfing);
+        TravelPackageSnapshot after = travelPackage.getSnapshot();
+
+        if (before.getPassengers().equals(List.of(john)) && before.getItinerary().get(0).getActivities().size() == 1 &&
+                after.getPassengers().equals(List.of(john, jane)) && after.getPassengerCount() == 2 &&
+                after.getItinerary().get(0).getActivities().size() == 2 &&
+                after.getItinerary().get(0).getActivities().get(0).getCurrentCount() == 1 &&
+                before.getItinerary().get(0).getActivities().get(0).getDescription().equals("Scuba diving") &&
+                after.getItinerary().get(0).getActivities().get(0).getDescription().equals("Reef diving") &&
+                after.getVersion() > before.getVersion() && after.getAvailableActivities().size() == 2) {
+            System.out.println("testSnapshotIsPointInTime: Passed");
+        } else {
+            System.out.println("testSnapshotIsPointInTime: Failed");
+        }
+    }
+
+    public static void testUnchangedPartsAreShared() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Destination bali = new Destination("Bali");
+        Destination hawaii = new Destination("Hawaii");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        Activity surfing = new Activity("Surfing", "Surfing lessons", 50.0, 5);
+        Activity hiking = new Activity("Hiking", "Volcano hike", 20.0, 5);
+        bali.addActivity(diving);
+        bali.addActivity(surfing);
+        hawaii.addActivity(hiking);
+        travelPackage.addDestination(bali);
+        travelPackage.addDestination(hawaii);
+        TravelPackageSnapshot before = travelPackage.getSnapshot();
+
+        diving.signUp(new PremiumPassenger("Steve Smith", "P789"));
+        TravelPackageSnapshot signedUp = travelPackage.getSnapshot();
+        diving.setCost(120.0);
+        TravelPackageSnapshot after = travelPackage.getSnapshot();
+        travelPackage.addPassenger(new StandardPassenger("John Doe", "S123", 500.0));
+
+        if (signedUp == before && before.getItinerary().get(0).getActivities().get(0).getCurrentCount() == 1 &&
+                after.getItinerary().get(1) == before.getItinerary().get(1) &&
+                after.getItinerary().get(0) != before.getItinerary().get(0) &&
+                after.getItinerary().get(0).getActivities().get(1) == before.getItinerary().get(0).getActivities().get(1) &&
+                after.getItinerary().get(0).getActivities().get(0).getCost() == 120.0 &&
+                before.getItinerary().get(0).getActivities().get(0).getCost() == 100.0 &&
+                travelPackage.getSnapshot().getItinerary() == after.getItinerary() &&
+                after.getVersion() == before.getVersion() + 1) {
+            System.out.println("testUnchangedPartsAreShared: Passed");
+        } else {
+            System.out.println("testUnchangedPartsAreShared: Failed");
+        }
+    }
+
+    public static void testRemovalsAndRenames() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Destination bali = new Destination("Bali");
+        travelPackage.addDestination(bali);
+        Passenger john = new StandardPassenger("John Doe", "S123", 500.0);
+        Passenger jane = new GoldPassenger("Jane Smith", "G456", 500.0);
+        Passenger steve = new StandardPassenger("Steve Smith", "S789", 500.0);
+        travelPackage.addPassenger(john);
+        travelPackage.addPassenger(jane);
+        TravelPackageSnapshot withJane = travelPackage.getSnapshot();
+        travelPackage.removePassenger(jane);
+        travelPackage.addPassenger(steve);
+        travelPackage.removeDestination(bali);
+        travelPackage.setName("Winter Break");
+        TravelPackageSnapshot latest = travelPackage.getSnapshot();
+        if (withJane.getPassengers().equals(List.of(john, jane)) && latest.getPassengers().equals(List.of(john, steve)) &&
+                withJane.getItinerary().size() == 1 && latest.getItinerary().isEmpty() &&
+                withJane.getName().equals("Summer Vacation") && latest.getName().equals("Winter Break")) {
+            System.out.println("testRemovalsAndRenames: Passed");
+        } else {
+            System.out.println("testRemovalsAndRenames: Failed");
+        }
+    }
+
+    // A reader keeps checking snapshots while a writer adds passengers and fills an activity.
+    public static void testReadersDuringWrites() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 2_000);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 0.0, 2_000);
+        bali.addActivity(diving);
+        travelPackage.addDestination(bali);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean consistent = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            long lastVersion = -1;
+            while (!done.get()) {
+                TravelPackageSnapshot snapshot = travelPackage.getSnapshot();
+                int count = 0;
+                for (Passenger passenger : snapshot.getPassengers()) {
+                    count += passenger == null ? 0 : 1;
+                }
+                for (DestinationSnapshot destination : snapshot.getItinerary()) {
+                    for (ActivitySnapshot activity : destination.getActivities()) {
+                        count += activity.getCurrentCount() > activity.getCapacity() ? 1_000_000 : 0;
+                    }
+                }
+                if (count != snapshot.getPassengerCount() || snapshot.getVersion() < lastVersion) {
+                    consistent.set(false);
+                }
+                lastVersion = snapshot.getVersion();
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 2_000; i++) {
+            Passenger passenger = new PremiumPassenger("Passenger " + i, "P" + i);
+            travelPackage.addPassenger(passenger);
+            passenger.signUpForActivity(diving);
+        }
+        done.set(true);
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        TravelPackageSnapshot last = travelPackage.getSnapshot();
+        if (consistent.get() && last.getPassengerCount() == 2_000 &&
+                last.getItinerary().get(0).getActivities().get(0).getCurrentCount() == 2_000) {
+            System.out.println("testReadersDuringWrites: Passed");
+        } else {
+            System.out.println("testReadersDuringWrites: Failed");
+        }
+    }
+}
+
+//20. activity query engine test class
+class ActivityQueryEngineTest {
+
+    public static void main(String[] args) {
+        testCombinedQuery();
+        testIndexesFollowChanges();
+        testPaging();
+    }
+
+    private static TravelPackage samplePackage() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Destination bali = new Destination("Bali");
+        bali.addActivity(new Activity("Diving", "Scuba diving on the reef", 100.0, 2));
+        bali.addActivity(new Activity("Surfing", "Surfing lessons on the beach", 50.0, 5));
+        Destination hawaii = new Destination("Hawaii");
+        hawaii.addActivity(new Activity("Snorkeling", "Reef snorkeling trip", 40.0, 10));
+        hawaii.addActivity(new Activity("Hiking", "Volcano hike", 20.0, 10));
+        travelPackage.addDestination(bali);
+        travelPackage.addDestination(hawaii);
+        return travelPackage;
+    }
+
+    public static void testCombinedQuery() {
+        TravelPackage travelPackage = samplePackage();
+        ActivityQueryEngine engine = travelPackage.getQueryEngine();
+        Activity diving = travelPackage.getItinerary().get(0).getActivities().get(0);
+        Activity snorkeling = travelPackage.getItinerary().get(1).getActivities().get(0);
+        diving.signUp(new PremiumPassenger("Steve Smith", "P789"));
+
+        List<Activity> reef = engine.search(new ActivityQuery().withKeywords("REEF")).getActivities();
+        List<Activity> cheapReef = engine.search(new ActivityQuery().withKeywords("reef").costBetween(0, 50)).getActivities();
+        List<Activity> roomyBali = engine.search(new ActivityQuery().atDestination("bali").withFreeSeats(2)).getActivities();
+        List<Activity> byCost = engine.search(new ActivityQuery().costBetween(30, 100)).getActivities();
+        if (engine.size() == 4 && reef.equals(List.of(snorkeling, diving)) && cheapReef.equals(List.of(snorkeling)) &&
+                roomyBali.size() == 1 && roomyBali.get(0).getName().equals("Surfing") &&
+                byCost.size() == 3 && byCost.get(0) == snorkeling && byCost.get(2) == diving &&
+                engine.search(new ActivityQuery().withKeywords("reef volcano")).getActivities().isEmpty()) {
+            System.out.println("testCombinedQuery: Passed");
+        } else {
+            System.out.println("testCombinedQuery: Failed");
+        }
+    }
+
+    public static void testIndexesFollowChanges() {
+        TravelPackage travelPackage = samplePackage();
+        ActivityQueryEngine engine = travelPackage.getQueryEngine();
+        Destination bali = travelPackage.getItinerary().get(0);
+        Activity surfing = bali.getActivities().get(1);
+        surfing.setCost(5.0);
+        surfing.setDescription("Kitesurfing");
+        Activity yoga = new Activity("Yoga", "Beach yoga", 15.0, 10);
+        bali.addActivity(yoga);
+
+        boolean followsSetters = engine.search(new ActivityQuery().costBetween(0, 10)).getActivities().equals(List.of(surfing)) &&
+                engine.search(new ActivityQuery().withKeywords("kitesurfing")).getActivities().equals(List.of(surfing)) &&
+                engine.search(new ActivityQuery().withKeywords("lessons")).getActivities().isEmpty() &&
+                engine.search(new ActivityQuery().withKeywords("beach")).getActivities().equals(List.of(yoga));
+        travelPackage.removeDestination(bali);
+        boolean followsRemoval = engine.size() == 2 &&
+                engine.search(new ActivityQuery().atDestination("Bali")).getActivities().isEmpty();
+        if (followsSetters && followsRemoval) {
+            System.out.println("testIndexesFollowChanges: Passed");
+        } else {
+            System.out.println("testIndexesFollowChanges: Failed");
+        }
+    }
+
+    public static void testPaging() {
+        ActivityQueryEngine engine = new ActivityQueryEngine();
+        Destination hawaii = new Destination("Hawaii");
+        for (int i = 0; i < 25; i++) {
+            Activity activity = new Activity("Tour " + i, "Island tour", 10.0 * (i % 5), 10);
+            hawaii.addActivity(activity);
+            engine.add(hawaii, activity);
+        }
+        ActivityQuery query = new ActivityQuery().withKeywords("tour").page(0, 10);
+        List<Activity> seen = new ArrayList<>();
+        ActivityPage page;
+        int pages = 0;
+        do {
+            page = engine.search(query);
+            seen.addAll(page.getActivities());
+            query.nextPage();
+            pages++;
+        } while (page.hasMore());
+        boolean sorted = true;
+        for (int i = 1; i < seen.size(); i++) {
+            sorted &= seen.get(i - 1).getCost() <= seen.get(i).getCost();
+        }
+        if (pages == 3 && seen.size() == 25 && new HashSet<>(seen).size() == 25 && sorted &&
+                seen.get(0) == hawaii.getActivities().get(0) && seen.get(1) == hawaii.getActivities().get(5)) {
+            System.out.println("testPaging: Passed");
+        } else {
+            System.out.println("testPaging: Failed");
+        }
+    }
+}
+
+//21. booking event stream test class
+class BookingEventStreamTest {
+
+    public static void main(String[] args) {
+        testPackageChangesArePublished();
+        testConsumersSeeEveryEventInOrder();
+        testFileSink();
+        testFailuresReachTheHandler();
+    }
+
+    public static void testPackageChangesArePublished() {
+        BookingEventStream stream = new BookingEventStream(64);
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        stream.addConsumer("test", (event, endOfBatch) -> seen.add(event.getType() + " " +
+                event.getPassenger().getPassengerNumber() + " " + event.getAmount()));
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = new Activity("Diving", "Scuba diving", 100.0, 5);
+        bali.addActivity(diving);
+        travelPackage.addDestination(bali);
+        stream.register(travelPackage);
+        Passenger john = new StandardPassenger("John Doe", "S123", 500.0);
+        travelPackage.addPassenger(john);
+        john.signUpForActivity(diving);
+        diving.cancel(john);
+        travelPackage.removePassenger(john);
+        stream.close();
+        if (seen.equals(List.of("PASSENGER_ADDED S123 0", "SIGNED_UP S123 10000", "CANCELLED S123 10000",
+                "PASSENGER_REMOVED S123 0")) && stream.getSequence() == 3) {
+            System.out.println("testPackageChangesArePublished: Passed");
+        } else {
+            System.out.println("testPackageChangesArePublished: Failed");
+        }
+    }
+
+    // Two producers overrun a small ring many times over; both consumers must see every event exactly once.
+    public static void testConsumersSeeEveryEventInOrder() {
+        BookingEventStream stream = new BookingEventStream(8);
+        int perProducer = 20_000;
+        long[] sums = new long[2];
+        long[] counts = new long[2];
+        boolean[] ordered = {true, true};
+        for (int c = 0; c < 2; c++) {
+            int consumer = c;
+            long[] last = {-1};
+            stream.addConsumer("test-" + c, (event, endOfBatch) -> {
+                ordered[consumer] &= event.getSequence() == last[0] + 1;
+                last[0] = event.getSequence();
+                sums[consumer] += event.getAmount();
+                counts[consumer]++;
+            });
+        }
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            producers[p] = new Thread(() -> {
+                for (int i = 1; i <= perProducer; i++) {
+                    stream.publish(BookingEventType.SIGNED_UP, null, null, null, i);
+                }
+            });
+            producers[p].start();
+        }
+        try {
+            for (Thread producer : producers) {
+                producer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stream.close();
+        long expected = 2L * perProducer * (perProducer + 1) / 2;
+        if (ordered[0] && ordered[1] && counts[0] == 2L * perProducer && counts[1] == 2L * perProducer &&
+                sums[0] == expected && sums[1] == expected) {
+            System.out.println("testConsumersSeeEveryEventInOrder: Passed");
+        } else {
+            System.out.println("testConsumersSeeEveryEventInOrder: Failed");
+        }
+    }
+
+    // A handler that fails on one event is told which one, and still sees the events after it.
+    public static void testFailuresReachTheHandler() {
+        BookingEventStream stream = new BookingEventStream(8);
+        List<Long> handled = Collections.synchronizedList(new ArrayList<>());
+        List<Long> failed = Collections.synchronizedList(new ArrayList<>());
+        stream.addConsumer("test", new BookingEventHandler() {
+            @Override
+            public void onEvent(BookingEvent event, boolean endOfBatch) {
+                if (event.getAmount() == 2) {
+                    throw new IllegalStateException("Billing is down");
+                }
+                handled.add(event.getSequence());
+            }
+
+            @Override
+            public void onException(BookingEvent event, long sequence, Exception e) {
+                if (event.getSequence() == sequence && e instanceof IllegalStateException) {
+                    failed.add(sequence);
+                }
+            }
+        });
+        for (int i = 1; i <= 3; i++) {
+            stream.publish(BookingEventType.SIGNED_UP, null, null, null, i);
+        }
+        stream.close();
+        if (handled.equals(List.of(0L, 2L)) && failed.equals(List.of(1L))) {
+            System.out.println("testFailuresReachTheHandler: Passed");
+        } else {
+            System.out.println("testFailuresReachTheHandler: Failed");
+        }
+    }
+
+    public static void testFileSink() {
+        try {
+            Path file = Files.createTempFile("booking-events", ".csv");
+            BookingEventStream stream = new BookingEventStream(16);
+            try (BookingEventFileSink sink = new BookingEventFileSink(file)) {
+                stream.addConsumer("file", sink);
+                TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+                stream.register(travelPackage);
+                travelPackage.addPassenger(new GoldPassenger("Jane Smith", "G456", 500.0));
+                stream.close();
+            }
+            List<String> lines = Files.readAllLines(file);
+            Files.delete(file);
+            if (lines.size() == 1 && lines.get(0).startsWith("0,") &&
+                    lines.get(0).endsWith(",PASSENGER_ADDED,Summer Vacation,G456,,0")) {
+                System.out.println("testFileSink: Passed");
+            } else {
+                System.out.println("testFileSink: Failed");
+            }
+        } catch (IOException e) {
+            System.out.println("testFileSink: Failed");
+        }
+    }
+}
+
+//22. itinerary optimizer test class
+class ItineraryOptimizerTest {
+
+    public static void main(String[] args) {
+        testExactOrderOnALine();
+        testLocalSearchAroundACircle();
+        testHeuristicCloseToExact();
+        testPlannerFollowsItinerary();
+        testPlannerDefersMissingCosts();
+    }
+
+    // Destinations at the given x positions on a line, with distance as the travel cost.
+    private static List<Destination> onLine(TravelCostMatrix costs, double... positions) {
+        List<Destination> destinations = new ArrayList<>();
+        for (int i = 0; i < positions.length; i++) {
+            destinations.add(new Destination("Stop " + positions[i]));
+        }
+        for (int i = 0; i < positions.length; i++) {
+            for (int j = 0; j < positions.length; j++) {
+                costs.set(destinations.get(i), destinations.get(j), Math.abs(positions[i] - positions[j]));
+            }
+        }
+        return destinations;
+    }
+
+    public static void testExactOrderOnALine() {
+        TravelCostMatrix costs = new TravelCostMatrix();
+        List<Destination> destinations = onLine(costs, 0, 7, 3, 9, 1, 5, 2, 8);
+        ItineraryOptimizer optimizer = new ItineraryOptimizer(costs);
+        List<Destination> route = optimizer.optimize(destinations);
+        List<String> names = new ArrayList<>();
+        for (Destination destination : route) {
+            names.add(destination.getName());
+        }
+        if (names.equals(List.of("Stop 0.0", "Stop 1.0", "Stop 2.0", "Stop 3.0", "Stop 5.0", "Stop 7.0", "Stop 8.0", "Stop 9.0")) &&
+                optimizer.cost(route) == 9.0) {
+            System.out.println("testExactOrderOnALine: Passed");
+        } else {
+            System.out.println("testExactOrderOnALine: Failed");
+        }
+    }
+
+    // Points around a circle in shuffled order; the best open route walks around the circle.
+    public static void testLocalSearchAroundACircle() {
+        int n = 80;
+        TravelCostMatrix costs = new TravelCostMatrix();
+        List<Destination> destinations = new ArrayList<>();
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            destinations.add(new Destination("Point " + i));
+            points[i] = new double[]{Math.cos(2 * Math.PI * i / n), Math.sin(2 * Math.PI * i / n)};
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                costs.set(destinations.get(i), destinations.get(j), Math.hypot(points[i][0] - points[j][0], points[i][1] - points[j][1]));
+            }
+        }
+        List<Destination> shuffled = new ArrayList<>(destinations.subList(1, n));
+        Collections.shuffle(shuffled, new Random(42));
+        shuffled.add(0, destinations.get(0));
+        ItineraryOptimizer optimizer = new ItineraryOptimizer(costs);
+        List<Destination> route = optimizer.optimize(shuffled);
+        double best = (n - 1) * 2 * Math.sin(Math.PI / n);
+        if (route.size() == n && new HashSet<>(route).size() == n && route.get(0) == destinations.get(0) &&
+                optimizer.cost(route) < best * 1.01) {
+            System.out.println("testLocalSearchAroundACircle: Passed");
+        } else {
+            System.out.println("testLocalSearchAroundACircle: Failed");
+        }
+    }
+
+    // With costs that differ by direction, local search should land close to the exact optimum.
+    public static void testHeuristicCloseToExact() {
+        Random random = new Random(7);
+        TravelCostMatrix costs = new TravelCostMatrix();
+        List<Destination> destinations = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            destinations.add(new Destination("Destination " + i));
+        }
+        for (Destination from : destinations) {
+            for (Destination to : destinations) {
+                costs.set(from, to, 1 + random.nextInt(100));
+            }
+        }
+        double exact = new ItineraryOptimizer(costs).cost(new ItineraryOptimizer(costs).optimize(destinations));
+        ItineraryOptimizer heuristic = new ItineraryOptimizer(costs, ForkJoinPool.commonPool(), 1);
+        List<Destination> route = heuristic.optimize(destinations);
+        if (route.get(0) == destinations.get(0) && new HashSet<>(route).size() == 10 &&
+                heuristic.cost(route) >= exact && heuristic.cost(route) <= exact * 1.5) {
+            System.out.println("testHeuristicCloseToExact: Passed");
+        } else {
+            System.out.println("testHeuristicCloseToExact: Failed");
+        }
+    }
+
+    public static void testPlannerFollowsItinerary() {
+        TravelCostMatrix costs = new TravelCostMatrix();
+        List<Destination> destinations = onLine(costs, 0, 40, 10, 30, 20, 25);
+        TravelPackage travelPackage = new TravelPackage("Road Trip", 10);
+        for (Destination destination : destinations.subList(0, 5)) {
+            travelPackage.addDestination(destination);
+        }
+        ItineraryPlanner planner = new ItineraryPlanner(travelPackage, new ItineraryOptimizer(costs, ForkJoinPool.commonPool(), 3));
+        boolean planned = planner.getRoute().equals(List.of(destinations.get(0), destinations.get(2), destinations.get(4),
+                destinations.get(3), destinations.get(1))) && planner.getCost() == 40.0;
+        travelPackage.addDestination(destinations.get(5));
+        boolean inserted = planner.getRoute().equals(List.of(destinations.get(0), destinations.get(2), destinations.get(4),
+                destinations.get(5), destinations.get(3), destinations.get(1)));
+        travelPackage.removeDestination(destinations.get(1));
+        boolean removed = planner.getRoute().equals(List.of(destinations.get(0), destinations.get(2), destinations.get(4),
+                destinations.get(5), destinations.get(3))) && planner.getCost() == 30.0;
+        boolean bookedOrderKept = travelPackage.getItinerary().equals(List.of(destinations.get(0), destinations.get(2),
+                destinations.get(3), destinations.get(4), destinations.get(5)));
+        if (planned && inserted && removed && bookedOrderKept) {
+            System.out.println("testPlannerFollowsItinerary: Passed");
+        } else {
+            System.out.println("testPlannerFollowsItinerary: Failed");
+        }
+    }
+
+    // A destination with no travel costs yet is appended unplanned instead of failing the package update.
+    public static void testPlannerDefersMissingCosts() {
+        TravelCostMatrix costs = new TravelCostMatrix();
+        List<Destination> destinations = onLine(costs, 0, 20, 10);
+        TravelPackage travelPackage = new TravelPackage("Road Trip", 10);
+        travelPackage.addDestination(destinations.get(0));
+        travelPackage.addDestination(destinations.get(1));
+        ItineraryPlanner planner = new ItineraryPlanner(travelPackage, new ItineraryOptimizer(costs));
+        Destination island = new Destination("Island");
+        travelPackage.addDestination(island);
+        boolean appended = planner.getRoute().equals(List.of(destinations.get(0), destinations.get(1), island)) &&
+                !planner.isPlanned() && travelPackage.getItinerary().contains(island);
+        travelPackage.addDestination(destinations.get(2));
+        boolean stillDeferred = planner.getRoute().size() == 4 && !planner.isPlanned();
+        for (Destination destination : destinations) {
+            costs.setBoth(destination, island, 100);
+        }
+        boolean replanned = planner.replan() && planner.getRoute().equals(List.of(destinations.get(0),
+                destinations.get(2), destinations.get(1), island)) && planner.getCost() == 120.0;
+        if (appended && stillDeferred && replanned) {
+            System.out.println("testPlannerDefersMissingCosts: Passed");
+        } else {
+            System.out.println("testPlannerDefersMissingCosts: Failed");
+        }
+    }
+}
+
+//23. time slot scheduling test class
+class SchedulingTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2025, 7, 1, 0, 0);
+
+    public static void main(String[] args) {
+        testOverlappingSignUpRejected();
+        testCancelFreesSlot();
+        testBatchReportsScheduleConflict();
+        testWaitlistSkipsConflictingPassenger();
+        testConflictFreeActivities();
+        testRescheduleWithBookingsRejected();
+    }
+
+    private static Activity scheduled(String name, int startHour, int hours, int capacity) {
+        Activity activity = new Activity(name, name, 10.0, capacity);
+        activity.setTimeSlot(TimeSlot.of(DAY.plusHours(startHour), Duration.ofHours(hours)));
+        return activity;
+    }
+
+    public static void testOverlappingSignUpRejected() {
+        Activity diving = scheduled("Diving", 9, 3, 5);
+        Activity surfing = scheduled("Surfing", 11, 2, 5);
+        Activity lunch = scheduled("Lunch", 12, 1, 5);
+        Activity unscheduled = new Activity("Souvenirs", "Shopping", 10.0, 5);
+        StandardPassenger john = new StandardPassenger("John Doe", "S123", 100.0);
+        boolean booked = john.signUpForActivity(diving);
+        boolean clash = john.signUpForActivity(surfing);
+        boolean backToBack = john.signUpForActivity(lunch);
+        boolean anytime = john.signUpForActivity(unscheduled);
+        if (booked && !clash && backToBack && anytime && john.getBalance() == 70.0 &&
+                surfing.getCurrentCount() == 0 && surfing.getSignedUpPassengers().isEmpty() &&
+                john.getSchedule().getActivities().equals(List.of(diving, lunch)) &&
+                john.getSchedule().findConflict(surfing.getTimeSlot()) == diving) {
+            System.out.println("testOverlappingSignUpRejected: Passed");
+        } else {
+            System.out.println("testOverlappingSignUpRejected: Failed");
+        }
+    }
+
+    public static void testCancelFreesSlot() {
+        Activity diving = scheduled("Diving", 9, 3, 5);
+        Activity surfing = scheduled("Surfing", 10, 2, 5);
+        GoldPassenger jane = new GoldPassenger("Jane Smith", "G456", 100.0);
+        jane.signUpForActivity(diving);
+        jane.cancelActivity(diving);
+        if (jane.signUpForActivity(surfing) && jane.getSchedule().getActivities().equals(List.of(surfing))) {
+            System.out.println("testCancelFreesSlot: Passed");
+        } else {
+            System.out.println("testCancelFreesSlot: Failed");
+        }
+    }
+
+    public static void testBatchReportsScheduleConflict() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = scheduled("Diving", 9, 3, 5);
+        Activity surfing = scheduled("Surfing", 10, 2, 5);
+        bali.addActivity(diving);
+        bali.addActivity(surfing);
+        travelPackage.addDestination(bali);
+        StandardPassenger john = new StandardPassenger("John Doe", "S123", 100.0);
+        travelPackage.addPassenger(john);
+        List<SignupResult> results = travelPackage.signUpAll(List.of(new SignupRequest(john, diving), new SignupRequest(john, surfing)));
+        if (results.get(0).getStatus() == SignupStatus.CONFIRMED && results.get(1).getStatus() == SignupStatus.SCHEDULE_CONFLICT &&
+                john.getBalance() == 90.0 && surfing.getCurrentCount() == 0) {
+            System.out.println("testBatchReportsScheduleConflict: Passed");
+        } else {
+            System.out.println("testBatchReportsScheduleConflict: Failed");
+        }
+    }
+
+    public static void testWaitlistSkipsConflictingPassenger() {
+        Activity diving = scheduled("Diving", 9, 3, 1);
+        Activity surfing = scheduled("Surfing", 10, 2, 5);
+        StandardPassenger john = new StandardPassenger("John Doe", "S123", 100.0);
+        StandardPassenger jane = new StandardPassenger("Jane Smith", "S456", 100.0);
+        StandardPassenger steve = new StandardPassenger("Steve Smith", "S789", 100.0);
+        john.signUpForActivity(diving);
+        diving.joinWaitlist(jane);
+        diving.joinWaitlist(steve);
+        jane.signUpForActivity(surfing);  // Jane books something else at the same time while waiting.
+        john.cancelActivity(diving);
+        if (diving.getSignedUpPassengers().equals(List.of(steve)) && jane.getBooking(diving) == null &&
+                jane.getBalance() == 90.0 && steve.getBalance() == 90.0) {
+            System.out.println("testWaitlistSkipsConflictingPassenger: Passed");
+        } else {
+            System.out.println("testWaitlistSkipsConflictingPassenger: Failed");
+        }
+    }
+
+    public static void testConflictFreeActivities() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Destination bali = new Destination("Bali");
+        Activity diving = scheduled("Diving", 10, 2, 5);
+        Activity breakfast = scheduled("Breakfast", 8, 1, 5);
+        Activity snorkeling = scheduled("Snorkeling", 11, 2, 5);
+        Activity surfing = scheduled("Surfing", 14, 2, 5);
+        Activity fullTour = scheduled("Tour", 16, 1, 1);
+        Activity night = scheduled("Night Dive", 20, 2, 5);
+        Activity unscheduled = new Activity("Souvenirs", "Shopping", 10.0, 5);
+        for (Activity activity : List.of(diving, surfing, breakfast, snorkeling, fullTour, night, unscheduled)) {
+            bali.addActivity(activity);
+        }
+        travelPackage.addDestination(bali);
+        StandardPassenger john = new StandardPassenger("John Doe", "S123", 100.0);
+        john.signUpForActivity(diving);
+        new PremiumPassenger("Steve Smith", "P789").signUpForActivity(fullTour);
+        TimeSlot window = new TimeSlot(DAY.plusHours(7), DAY.plusHours(18));
+        if (travelPackage.getConflictFreeActivities(john, window).equals(List.of(breakfast, surfing))) {
+            System.out.println("testConflictFreeActivities: Passed");
+        } else {
+            System.out.println("testConflictFreeActivities: Failed");
+        }
+    }
+
+    public static void testRescheduleWithBookingsRejected() {
+        Activity diving = scheduled("Diving", 9, 3, 5);
+        new StandardPassenger("John Doe", "S123", 100.0).signUpForActivity(diving);
+        try {
+            diving.setTimeSlot(TimeSlot.of(DAY.plusHours(13), Duration.ofHours(1)));
+            System.out.println("testRescheduleWithBookingsRejected: Failed");
+        } catch (IllegalStateException e) {
+            System.out.println("testRescheduleWithBookingsRejected: Passed");
+        }
+    }
+}
+
+//24. assignment solver test class
+class AssignmentSolverTest {
+
+    public static void main(String[] args) {
+        testBeatsGreedyPlacement();
+        testBudgetRespected();
+        testMinimizesRank();
+        testIndependentDestinations();
+        testUnreachedNodeKeepsFeasiblePotentials();
+    }
+
+    public static void testBeatsGreedyPlacement() {
+        Activity snorkeling = new Activity("Snorkeling", "Reef", 10.0, 1);
+        Activity hiking = new Activity("Hiking", "Volcano", 10.0, 1);
+        StandardPassenger john = new StandardPassenger("John Doe", "S123", 100.0);
+        StandardPassenger jane = new StandardPassenger("Jane Smith", "S456", 100.0);
+        Map<Passenger, List<Activity>> preferences = new LinkedHashMap<>();
+        preferences.put(john, List.of(snorkeling, hiking));
+        preferences.put(jane, List.of(snorkeling));
+        // Giving John his first choice would leave Jane with nothing.
+        GroupAssignment assignment = new AssignmentSolver().solve(preferences);
+        if (assignment.getPlacedCount() == 2 && assignment.getActivity(john) == hiking &&
+                assignment.getActivity(jane) == snorkeling && assignment.getRank(john) == 1 &&
+                assignment.getRank(jane) == 0 && assignment.getUnplaced().isEmpty()) {
+            System.out.println("testBeatsGreedyPlacement: Passed");
+        } else {
+            System.out.println("testBeatsGreedyPlacement: Failed");
+        }
+    }
+
+    public static void testBudgetRespected() {
+        Activity cruise = new Activity("Cruise", "Sunset", 50.0, 5);
+        Activity market = new Activity("Market", "Night market", 10.0, 5);
+        StandardPassenger john = new StandardPassenger("John Doe", "S123", 20.0);
+        GoldPassenger jane = new GoldPassenger("Jane Smith", "G456", 45.0);
+        PremiumPassenger alice = new PremiumPassenger("Alice Johnson", "P789");
+        StandardPassenger bob = new StandardPassenger("Bob Brown", "S321", 5.0);
+        Map<Passenger, List<Activity>> preferences = new LinkedHashMap<>();
+        preferences.put(john, List.of(cruise, market));
+        preferences.put(jane, List.of(cruise, market));
+        preferences.put(alice, List.of(cruise));
+        preferences.put(bob, List.of(market));
+        GroupAssignment assignment = new AssignmentSolver().solve(preferences);
+        if (assignment.getActivity(john) == market && assignment.getActivity(jane) == cruise &&
+                assignment.getActivity(alice) == cruise && assignment.getUnplaced().equals(List.of(bob)) &&
+                assignment.getRank(bob) == -1 && assignment.getFirstChoiceCount() == 2) {
+            System.out.println("testBudgetRespected: Passed");
+        } else {
+            System.out.println("testBudgetRespected: Failed");
+        }
+    }
+
+    public static void testMinimizesRank() {
+        Activity first = new Activity("Diving", "Reef", 10.0, 2);
+        Activity second = new Activity("Surfing", "Beach", 10.0, 2);
+        Activity third = new Activity("Yoga", "Retreat", 10.0, 2);
+        Map<Passenger, List<Activity>> preferences = new LinkedHashMap<>();
+        for (int i = 0; i < 6; i++) {
+            preferences.put(new PremiumPassenger("Passenger " + i, "P" + i),
+                    i < 3 ? List.of(first, second, third) : List.of(first, third, second));
+        }
+        GroupAssignment assignment = new AssignmentSolver().solve(preferences);
+        int totalRank = 0;
+        for (Passenger passenger : preferences.keySet()) {
+            totalRank += assignment.getRank(passenger);
+        }
+        // Two first choices, then the remaining four all get their second choice.
+        if (assignment.getPlacedCount() == 6 && totalRank == 4 && assignment.getFirstChoiceCount() == 2) {
+            System.out.println("testMinimizesRank: Passed");
+        } else {
+            System.out.println("testMinimizesRank: Failed");
+        }
+    }
+
+    public static void testIndependentDestinations() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 20);
+        Map<Passenger, List<Activity>> preferences = new LinkedHashMap<>();
+        List<Activity> activities = new ArrayList<>();
+        for (int d = 0; d < 4; d++) {
+            Destination destination = new Destination("Destination " + d);
+            Activity busy = new Activity("Busy " + d, "Popular", 10.0, 1);
+            Activity quiet = new Activity("Quiet " + d, "Fallback", 10.0, 3);
+            destination.addActivity(busy);
+            destination.addActivity(quiet);
+            travelPackage.addDestination(destination);
+            activities.add(busy);
+            activities.add(quiet);
+            for (int p = 0; p < 3; p++) {
+                StandardPassenger passenger = new StandardPassenger("Passenger " + d + p, "S" + d + p, 100.0);
+                travelPackage.addPassenger(passenger);
+                preferences.put(passenger, List.of(busy, quiet));
+            }
+        }
+        GroupAssignment assignment = new AssignmentSolver(new ForkJoinPool(2)).solve(preferences);
+        List<SignupResult> results = travelPackage.signUpAll(assignment.toRequests());
+        boolean confirmed = results.size() == 12 && results.stream().allMatch(SignupResult::isConfirmed);
+        boolean filled = true;
+        for (int i = 0; i < activities.size(); i += 2) {
+            filled &= activities.get(i).getCurrentCount() == 1 && activities.get(i + 1).getCurrentCount() == 2;
+        }
+        if (confirmed && filled && assignment.getFirstChoiceCount() == 4) {
+            System.out.println("testIndependentDestinations: Passed");
+        } else {
+            System.out.println("testIndependentDestinations: Failed");
+        }
+    }
+
+    // Node 4 is never reached from the source, but it has edges into both augmenting paths. Once those paths'
+    // potentials rise, its edges must not turn negative.
+    public static void testUnreachedNodeKeepsFeasiblePotentials() {
+        AssignmentSolver.FlowNetwork network = new AssignmentSolver.FlowNetwork(5, 7);
+        int cheap = network.addEdge(0, 2, 1, 1);
+        network.addEdge(2, 1, 1, 0);
+        int dear = network.addEdge(0, 3, 1, 5);
+        network.addEdge(3, 1, 1, 0);
+        network.addEdge(4, 2, 1, 0);
+        network.addEdge(4, 3, 1, 0);
+        network.minCostMaxFlow(0, 1);
+        if (network.flow(cheap) == 1 && network.flow(dear) == 1 && network.hasFeasiblePotentials()) {
+            System.out.println("testUnreachedNodeKeepsFeasiblePotentials: Passed");
+        } else {
+            System.out.println("testUnreachedNodeKeepsFeasiblePotentials: Failed");
+        }
+    }
+}
+
+//25. entity id test class
+class EntityIdTest {
+
+    public static void main(String[] args) {
+        testInternIsStableAndDense();
+        testReleasedHandleIsStale();
+        testExhaustedSlotIsRetired();
+        testIntSet();
+        testPassengerIdentity();
+        testDestinationIdentity();
+        testPackageMemberIds();
+    }
+
+    public static void testInternIsStableAndDense() {
+        IdRegistry<String> registry = new IdRegistry<>();
+        int bali = registry.intern("Bali");
+        int paris = registry.intern("Paris");
+        if (registry.intern("Bali") == bali && IdRegistry.index(bali) == 0 && IdRegistry.index(paris) == 1 &&
+                registry.find("Paris") == paris && registry.find("Rome") == IdRegistry.NO_ID &&
+                "Paris".equals(registry.key(paris)) && registry.size() == 2 && registry.capacity() == 2) {
+            System.out.println("testInternIsStableAndDense: Passed");
+        } else {
+            System.out.println("testInternIsStableAndDense: Failed");
+        }
+    }
+
+    public static void testReleasedHandleIsStale() {
+        IdRegistry<String> registry = new IdRegistry<>();
+        int bali = registry.intern("Bali");
+        boolean released = registry.release(bali);
+        int rome = registry.intern("Rome");
+        // Rome reuses Bali's slot, but the old handle must not name it.
+        if (released && !registry.release(bali) && !registry.isLive(bali) && registry.key(bali) == null &&
+                IdRegistry.index(rome) == IdRegistry.index(bali) &&
+                IdRegistry.generation(rome) == IdRegistry.generation(bali) + 1 &&
+                "Rome".equals(registry.key(rome)) && registry.find("Bali") == IdRegistry.NO_ID &&
+                registry.intern("Bali") != bali && registry.capacity() == 2) {
+            System.out.println("testReleasedHandleIsStale: Passed");
+        } else {
+            System.out.println("testReleasedHandleIsStale: Failed");
+        }
+    }
+
+    // Once a slot has used every generation it is not reused, so no old handle can come back to life.
+    public static void testExhaustedSlotIsRetired() {
+        IdRegistry<String> registry = new IdRegistry<>();
+        int first = registry.intern("Bali");
+        int handle = first;
+        for (int i = 0; i < 200; i++) {
+            registry.release(handle);
+            handle = registry.intern("Bali");
+        }
+        if (IdRegistry.index(handle) != IdRegistry.index(first) && !registry.isLive(first) &&
+                "Bali".equals(registry.key(handle)) && registry.size() == 1) {
+            System.out.println("testExhaustedSlotIsRetired: Passed");
+        } else {
+            System.out.println("testExhaustedSlotIsRetired: Failed");
+        }
+    }
+
+    public static void testIntSet() {
+        IntSet set = new IntSet(4);
+        boolean added = set.add(3) && set.add(200) && set.add(64) && !set.add(3);
+        boolean removed = set.remove(64) && !set.remove(64) && !set.remove(5000);
+        boolean rejected = false;
+        try {
+            set.add(-1);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        if (added && removed && rejected && set.contains(200) && !set.contains(-1) && !set.contains(5000) &&
+                set.size() == 2 && Arrays.equals(set.toArray(), new int[]{3, 200})) {
+            set.clear();
+            if (set.isEmpty() && !set.contains(3)) {
+                System.out.println("testIntSet: Passed");
+                return;
+            }
+        }
+        System.out.println("testIntSet: Failed");
+    }
+
+    public static void testPassengerIdentity() {
+        StandardPassenger john = new StandardPassenger("John Doe", "ID-S123", 100.0);
+        StandardPassenger copy = new StandardPassenger("Johnny", "ID-S123", 50.0);
+        GoldPassenger gold = new GoldPassenger("John Doe", "ID-S123", 100.0);
+        StandardPassenger other = new StandardPassenger("Jane Smith", "ID-S456", 100.0);
+        boolean sameNumber = john.equals(copy) && john.hashCode() == copy.hashCode();
+        boolean distinct = !john.equals(gold) && !john.equals(other);
+        other.setPassengerNumber("ID-S123");
+        if (sameNumber && distinct && other.equals(john) && new HashSet<>(List.of(john, copy, other)).size() == 1) {
+            System.out.println("testPassengerIdentity: Passed");
+        } else {
+            System.out.println("testPassengerIdentity: Failed");
+        }
+    }
+
+    public static void testDestinationIdentity() {
+        Destination bali = new Destination("ID-Bali");
+        Destination renamed = new Destination("ID-Paris");
+        Destination unnamed = new Destination(null);
+        boolean differ = !bali.equals(renamed);
+        renamed.setName("ID-Bali");
+        if (differ && bali.equals(renamed) && bali.hashCode() == renamed.hashCode() &&
+                new HashSet<>(List.of(bali, renamed)).size() == 1 && unnamed.equals(new Destination(null)) &&
+                !unnamed.equals(bali) && unnamed.hashCode() == 0) {
+            System.out.println("testDestinationIdentity: Passed");
+        } else {
+            System.out.println("testDestinationIdentity: Failed");
+        }
+    }
+
+    // Member ids are dense while passengers are in the package and released when they leave.
+    public static void testPackageMemberIds() {
+        TravelPackage travelPackage = new TravelPackage("Summer Vacation", 10);
+        Passenger john = new StandardPassenger("John Doe", "S123", 500.0);
+        Passenger jane = new GoldPassenger("Jane Smith", "G456", 500.0);
+        Passenger steve = new PremiumPassenger("Steve Smith", "P789");
+        travelPackage.addPassenger(john);
+        travelPackage.addPassenger(jane);
+        int johnId = travelPackage.getMemberId(john);
+        boolean dense = IdRegistry.index(johnId) == 0 && IdRegistry.index(travelPackage.getMemberId(jane)) == 1 &&
+                travelPackage.getMemberId(steve) == IdRegistry.NO_ID;
+        travelPackage.removePassenger(john);
+        travelPackage.addPassenger(steve);
+        int steveId = travelPackage.getMemberId(steve);
+        if (dense && travelPackage.getMemberId(john) == IdRegistry.NO_ID && steveId != johnId &&
+                IdRegistry.index(steveId) == IdRegistry.index(johnId)) {
+            System.out.println("testPackageMemberIds: Passed");
+        } else {
+            System.out.println("testPackageMemberIds: Failed");
+        }
+    }
+}
+
+
+//benchmarks
+
+//activity sign-up cost as the roster grows
+class ActivitySignUpBenchmark {
+    private static final int MEASURED_SIGNUPS = 1_000;
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        int[] rosterSizes = {10, 100, 1_000, 10_000, 100_000};
+        for (int round = 0; round < 3; round++) {  // warm-up
+            for (int size : rosterSizes) {
+                measure(size);
+            }
+        }
+        for (int size : rosterSizes) {
+            System.out.println("Roster size " + size + ": " + measure(size) + " ns per signUp");
+        }
+    }
+
+    // Fills an activity with rosterSize passengers, then times MEASURED_SIGNUPS further sign-ups.
+    private static long measure(int rosterSize) {
+        Passenger[] passengers = new Passenger[rosterSize + MEASURED_SIGNUPS];
+        for (int i = 0; i < passengers.length; i++) {
+            passengers[i] = new PremiumPassenger("Passenger " + i, "P" + i);
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            Activity activity = new Activity("Diving", "Scuba diving", 100.0, passengers.length);
+            for (int i = 0; i < rosterSize; i++) {
+                activity.signUp(passengers[i]);
+            }
+            long start = System.nanoTime();
+            for (int i = rosterSize; i < passengers.length; i++) {
+                activity.signUp(passengers[i]);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / MEASURED_SIGNUPS;
+    }
+}
+
+
+//50k-passenger manifest: console-style println against ReportWriter
+class ReportWriterBenchmark {
+    private static final int PASSENGERS = 50_000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        TravelPackage travelPackage = new TravelPackage("Cruise", PASSENGERS);
+        for (int i = 0; i < PASSENGERS; i++) {
+            travelPackage.addPassenger(new StandardPassenger("Passenger " + i, "P" + i, 100.0 + i));
+        }
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));  // Keep the timed output off the terminal.
+        long println = Long.MAX_VALUE;
+        long text = Long.MAX_VALUE;
+        long csv = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                printlnPassengerList(travelPackage);
+                println = Math.min(println, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                travelPackage.printPassengerList();
+                text = Math.min(text, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                ReportWriter writer = new ReportWriter(Writer.nullWriter(), ReportFormat.CSV);
+                writer.passengerList(travelPackage);
+                writer.flush();
+                csv = Math.min(csv, System.nanoTime() - start);
+            }
+        } finally {
+            System.setOut(console);
+        }
+        System.out.println("System.out.println passenger list: " + println / 1_000 + " us");
+        System.out.println("ReportWriter text to System.out:   " + text / 1_000 + " us");
+        System.out.println("ReportWriter CSV to a Writer:      " + csv / 1_000 + " us");
+    }
+
+    // The passenger list as it used to be printed, one println per line.
+    private static void printlnPassengerList(TravelPackage travelPackage) {
+        System.out.println("Travel Package Name: " + travelPackage.getName());
+        System.out.println("Passenger Capacity: " + travelPackage.getCapacity());
+        System.out.println("Number of Passengers: " + travelPackage.getPassengers().size());
+        for (Passenger passenger : travelPackage.getPassengers()) {
+            System.out.println("Name: " + passenger.getName() + ", Passenger Number: " + passenger.getPassengerNumber());
+        }
+    }
+}
+
+// Load generator for BookingService: client threads sign passengers up across many packages as fast as they can,
+// and the latency of each sign-up is measured from submission to completion of its future.
+class BookingServiceBenchmark {
+    private static final int PACKAGES = 2_000;
+    private static final int PASSENGERS_PER_PACKAGE = 100;
+    private static final int CLIENTS = 4;
+    private static final int IN_FLIGHT_PER_CLIENT = 256;  // Requests a client keeps outstanding before waiting.
+
+    public static void main(String[] args) throws Exception {
+        int lanes = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        for (int round = 0; round < 2; round++) {  // warm-up
+            run(lanes, false);
+        }
+        run(lanes, true);
+    }
+
+    private static void run(int laneCount, boolean report) throws Exception {
+        try (BookingService service = new BookingService(laneCount)) {
+            List<TravelPackage> travelPackages = new ArrayList<>(PACKAGES);
+            for (int i = 0; i < PACKAGES; i++) {
+                TravelPackage travelPackage = new TravelPackage("Package " + i, PASSENGERS_PER_PACKAGE);
+                Destination destination = new Destination("Destination " + i);
+                destination.addActivity(new Activity("Activity", "Description", 10.0, PASSENGERS_PER_PACKAGE));
+                travelPackage.addDestination(destination);
+                for (int j = 0; j < PASSENGERS_PER_PACKAGE; j++) {
+                    travelPackage.addPassenger(new StandardPassenger("Passenger", "P" + j, 1_000.0));
+                }
+                travelPackages.add(travelPackage);
+                service.addPackage(travelPackage);
+            }
+            int total = PACKAGES * PASSENGERS_PER_PACKAGE;
+            long[] latencies = new long[total];
+            Thread[] clients = new Thread[CLIENTS];
+            long start = System.nanoTime();
+            for (int c = 0; c < CLIENTS; c++) {
+                int client = c;
+                clients[c] = new Thread(() -> {
+                    List<CompletableFuture<SignupResult>> inFlight = new ArrayList<>(IN_FLIGHT_PER_CLIENT);
+                    for (int i = client; i < total; i += CLIENTS) {
+                        TravelPackage travelPackage = travelPackages.get(i % PACKAGES);
+                        Passenger passenger = travelPackage.findPassenger("P" + (i / PACKAGES));
+                        Activity activity = travelPackage.getItinerary().get(0).getActivities().get(0);
+                        int request = i;
+                        long submitted = System.nanoTime();
+                        inFlight.add(service.signUp(travelPackage.getName(), passenger, activity)
+                                .whenComplete((result, error) -> latencies[request] = System.nanoTime() - submitted));
+                        if (inFlight.size() == IN_FLIGHT_PER_CLIENT) {
+                            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+                            inFlight.clear();
+                        }
+                    }
+                    CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+                });
+                clients[c].start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            if (report) {
+                Arrays.sort(latencies);
+                System.out.println(laneCount + " lanes, " + CLIENTS + " clients, " + total + " sign-ups: " +
+                        (total * 1_000_000_000L / elapsed) + " sign-ups per second");
+                System.out.println("p50 latency: " + latencies[total / 2] / 1_000 + " us");
+                System.out.println("p99 latency: " + latencies[(int) (total * 0.99)] / 1_000 + " us");
+            }
+        }
+    }
+}
+
+// Load test for BookingServer: opens the given number of concurrent clients (10,000 by default), each of which
+// signs one passenger up and then reads the available activities, all in flight at the same time.
+class BookingServerLoadTest {
+    private static final int PACKAGES = 100;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int perPackage = (clients + PACKAGES - 1) / PACKAGES;
+        try (BookingService service = new BookingService()) {
+            for (int i = 0; i < PACKAGES; i++) {
+                TravelPackage travelPackage = new TravelPackage("Package" + i, perPackage);
+                Destination destination = new Destination("Beach");
+                destination.addActivity(new Activity("Surfing", "Surfing lessons", 10.0, perPackage));
+                travelPackage.addDestination(destination);
+                for (int j = 0; j < perPackage; j++) {
+                    travelPackage.addPassenger(new StandardPassenger("Passenger", "P" + j, 100.0));
+                }
+                service.addPackage(travelPackage);
+            }
+            BookingServer server = BookingServer.start(service, 0);
+            HttpClient client = HttpClient.newBuilder().build();
+            String base = "http://localhost:" + server.getPort() + "/packages/Package";
+            long[] latencies = new long[clients];
+            AtomicInteger confirmed = new AtomicInteger();
+            AtomicInteger errors = new AtomicInteger();
+            CompletableFuture<?>[] done = new CompletableFuture<?>[clients];
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                int request = i;
+                String packageUri = base + (i % PACKAGES);
+                HttpRequest signUp = HttpRequest.newBuilder(URI.create(packageUri + "/signups?passenger=P" + (i / PACKAGES) +
+                        "&destination=Beach&activity=Surfing")).POST(HttpRequest.BodyPublishers.noBody()).build();
+                HttpRequest available = HttpRequest.newBuilder(URI.create(packageUri + "/available")).GET().build();
+                long submitted = System.nanoTime();
+                done[i] = client.sendAsync(signUp, HttpResponse.BodyHandlers.ofString())
+                        .thenCompose(response -> {
+                            if (response.statusCode() == 200) {
+                                confirmed.incrementAndGet();
+                            }
+                            return client.sendAsync(available, HttpResponse.BodyHandlers.discarding());
+                        })
+                        .whenComplete((response, error) -> {
+                            latencies[request] = System.nanoTime() - submitted;
+                            if (error != null || response.statusCode() != 200) {
+                                errors.incrementAndGet();
+                            }
+                        });
+            }
+            CompletableFuture.allOf(done).exceptionally(error -> null).join();
+            long elapsed = System.nanoTime() - start;
+            server.close();
+            Arrays.sort(latencies);
+            System.out.println(clients + " concurrent clients: " + confirmed.get() + " sign-ups confirmed, " +
+                    errors.get() + " errors, " + (clients * 2L * 1_000_000_000L / elapsed) + " requests per second");
+            System.out.println("p50 latency: " + latencies[clients / 2] / 1_000_000 + " ms");
+            System.out.println("p99 latency: " + latencies[(int) (clients * 0.99)] / 1_000_000 + " ms");
+        }
+    }
+}
+
+// Compares scanning activities through their objects with scanning ActivityColumns, for an availability and
+// price-range filter over many activities.
+class ActivityScanBenchmark {
+    private static final int ACTIVITIES = 200_000;
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        Destination destination = new Destination("Everywhere");
+        Random random = new Random(42);
+        for (int i = 0; i < ACTIVITIES; i++) {
+            Activity activity = new Activity("Activity " + i, "Description " + i, random.nextInt(500), 1 + random.nextInt(20));
+            activity.setCurrentCount(random.nextInt(activity.getCapacity() + 1));
+            destination.addActivity(activity);
+        }
+        ActivityColumns columns = destination.getActivityColumns();
+        long objects = Long.MAX_VALUE;
+        long columnar = Long.MAX_VALUE;
+        int objectMatches = 0;
+        int columnMatches = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            objectMatches = 0;
+            for (Activity activity : destination.getActivities()) {
+                if (activity.isAvailable() && activity.getCost() >= 100 && activity.getCost() <= 200) {
+                    objectMatches++;
+                }
+            }
+            objects = Math.min(objects, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            columnMatches = columns.availableInPriceRange(10_000, 20_000).length;
+            columnar = Math.min(columnar, System.nanoTime() - start);
+        }
+        System.out.println("Activity objects: " + objects / 1_000 + " us (" + objectMatches + " matches)");
+        System.out.println("ActivityColumns:  " + columnar / 1_000 + " us (" + columnMatches + " matches)");
+    }
+}
+
+// Compares heap use and full-GC time for a million passengers kept as objects in a map with the same passengers
+// in an OffHeapPassengerRegistry.
+class OffHeapPassengerRegistryBenchmark {
+    private static final int PASSENGERS = 1_000_000;
+
+    public static void main(String[] args) {
+        long baseline = usedHeap();
+        Map<String, Passenger> onHeap = new HashMap<>();
+        for (int i = 0; i < PASSENGERS; i++) {
+            onHeap.put("P" + i, new StandardPassenger("Passenger " + i, "P" + i, 100.0));
+        }
+        long onHeapBytes = usedHeap() - baseline;
+        long onHeapGc = timeGc();
+        System.out.println("Objects:  " + onHeapBytes / (1 << 20) + " MB heap, full GC " + onHeapGc + " ms, " + onHeap.size() + " passengers");
+        onHeap = null;
+
+        baseline = usedHeap();
+        OffHeapPassengerRegistry registry = new OffHeapPassengerRegistry();
+        for (int i = 0; i < PASSENGERS; i++) {
+            registry.add(PassengerTier.STANDARD, "Passenger " + i, "P" + i, 10_000);
+        }
+        long registryBytes = usedHeap() - baseline;
+        long registryGc = timeGc();
+        System.out.println("Registry: " + registryBytes / (1 << 20) + " MB heap, " + registry.getOffHeapBytes() / (1 << 20) +
+                " MB off-heap, full GC " + registryGc + " ms, " + registry.size() + " passengers");
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long timeGc() {
+        long start = System.nanoTime();
+        System.gc();
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
+
+// Measures what the metrics add to a sign-up and cancel round trip, with recording off and on.
+class MetricsOverheadBenchmark {
+    private static final int OPERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        Activity diving = new Activity("Diving", "Scuba diving", 0.0, 1);
+        Passenger steve = new PremiumPassenger("Steve Smith", "P789");
+        for (int round = 0; round < 5; round++) {
+            BookingMetrics.setEnabled(false);
+            long disabled = time(diving, steve);
+            BookingMetrics.setEnabled(true);
+            long enabled = time(diving, steve);
+            System.out.println("Round " + round + ": disabled " + disabled + " ns/op, enabled " + enabled + " ns/op");
+        }
+        BookingMetrics.setEnabled(false);
+        System.out.print(BookingMetrics.snapshot());
+    }
+
+    private static long time(Activity activity, Passenger passenger) {
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            activity.signUp(passenger);
+            activity.cancel(passenger);
+        }
+        return (System.nanoTime() - start) / OPERATIONS;
+    }
+}
+
+// Compares a keyword and cost search done by walking the itinerary with the same search on ActivityQueryEngine.
+class ActivityQueryBenchmark {
+    private static final int DESTINATIONS = 200;
+    private static final int ACTIVITIES_PER_DESTINATION = 500;
+
+    public static void main(String[] args) {
+        String[] kinds = {"Diving", "Surfing", "Hiking", "Kayaking", "Cycling", "Cooking", "Sailing", "Climbing"};
+        TravelPackage travelPackage = new TravelPackage("Benchmark", 1);
+        for (int d = 0; d < DESTINATIONS; d++) {
+            Destination destination = new Destination("Destination " + d);
+            for (int i = 0; i < ACTIVITIES_PER_DESTINATION; i++) {
+                String kind = kinds[(d * 7 + i) % kinds.length];
+                destination.addActivity(new Activity(kind + " " + i, kind + " with a local guide", (i * 37) % 500, 10));
+            }
+            travelPackage.addDestination(destination);
+        }
+        ActivityQueryEngine engine = travelPackage.getQueryEngine();
+        ActivityQuery query = new ActivityQuery().withKeywords("kayaking").costBetween(100, 120).withFreeSeats(1);
+
+        long loop = Long.MAX_VALUE;
+        long indexed = Long.MAX_VALUE;
+        int loopMatches = 0;
+        int indexedMatches = 0;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            loopMatches = 0;
+            for (Destination destination : travelPackage.getItinerary()) {
+                for (Activity activity : destination.getActivities()) {
+                    if (activity.getCost() >= 100 && activity.getCost() <= 120 && activity.isAvailable() &&
+                            ActivityQueryEngine.tokens(activity.getName() + " " + activity.getDescription()).contains("kayaking")) {
+                        loopMatches++;
+                    }
+                }
+            }
+            loop = Math.min(loop, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            indexedMatches = engine.search(query).getActivities().size();
+            indexed = Math.min(indexed, System.nanoTime() - start);
+        }
+        System.out.println("Itinerary loop: " + loop / 1_000 + " us (" + loopMatches + " matches)");
+        System.out.println("Query engine:   " + indexed / 1_000 + " us (" + indexedMatches + " matches)");
+    }
+}
+
+// Measures BookingEventStream throughput: one producer publishing into the ring while one, then two, consumers
+// handle the events, and the same through the TravelPackage listener path.
+class BookingEventStreamBenchmark {
+    private static final int EVENTS = 20_000_000;
+
+    public static void main(String[] args) {
+        for (int consumers = 1; consumers <= 2; consumers++) {
+            for (int round = 0; round < 3; round++) {
+                BookingEventStream stream = new BookingEventStream(1 << 16);
+                LongAdder handled = new LongAdder();
+                for (int c = 0; c < consumers; c++) {
+                    long[] local = new long[1];
+                    stream.addConsumer("benchmark-" + c, (event, endOfBatch) -> {
+                        local[0]++;
+                        if (endOfBatch) {
+                            handled.add(local[0]);
+                            local[0] = 0;
+                        }
+                    });
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < EVENTS; i++) {
+                    stream.publish(BookingEventType.SIGNED_UP, null, null, null, i);
+                }
+                stream.close();
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("%d consumer(s): %.1f million events/s (%d handled)%n", consumers,
+                        EVENTS * 1_000.0 / elapsed, handled.sum());
+            }
+        }
+
+        BookingEventStream stream = new BookingEventStream(1 << 16);
+        stream.addConsumer("benchmark", (event, endOfBatch) -> {
+        });
+        TravelPackage travelPackage = new TravelPackage("Benchmark", Integer.MAX_VALUE);
+        stream.register(travelPackage);
+        int passengers = 1_000_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < passengers; i++) {
+            Passenger passenger = new PremiumPassenger("Passenger " + i, "P" + i);
+            travelPackage.addPassenger(passenger);
+            travelPackage.removePassenger(passenger);
+        }
+        stream.close();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("Package changes: %.1f million events/s%n", 2 * passengers * 1_000.0 / elapsed);
+    }
+}
+
+// Times ItineraryOptimizer on random points: a full optimization, then adding one destination incrementally
+// compared with re-optimizing from scratch.
+class ItineraryOptimizerBenchmark {
+
+    public static void main(String[] args) {
+        for (int n : new int[]{100, 300}) {
+            Random random = new Random(n);
+            TravelCostMatrix costs = new TravelCostMatrix();
+            List<Destination> destinations = new ArrayList<>();
+            double[][] points = new double[n + 1][];
+            for (int i = 0; i <= n; i++) {
+                destinations.add(new Destination("Destination " + i));
+                points[i] = new double[]{random.nextDouble() * 1_000, random.nextDouble() * 1_000};
+            }
+            for (int i = 0; i <= n; i++) {
+                for (int j = 0; j <= n; j++) {
+                    costs.set(destinations.get(i), destinations.get(j), Math.hypot(points[i][0] - points[j][0], points[i][1] - points[j][1]));
+                }
+            }
+            ItineraryOptimizer optimizer = new ItineraryOptimizer(costs);
+            List<Destination> initial = destinations.subList(0, n);
+            double booked = optimizer.cost(initial);
+
+            long start = System.nanoTime();
+            List<Destination> route = optimizer.optimize(initial);
+            long full = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Destination> extended = optimizer.insert(route, destinations.get(n));
+            long incremental = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<Destination> resolved = optimizer.optimize(destinations);
+            long fromScratch = System.nanoTime() - start;
+
+            System.out.printf("%d destinations: booked order %.0f, optimized %.0f in %d ms%n", n, booked, optimizer.cost(route), full / 1_000_000);
+            System.out.printf("  add one: incremental %.0f in %d ms, from scratch %.0f in %d ms%n",
+                    optimizer.cost(extended), incremental / 1_000_000, optimizer.cost(resolved), fromScratch / 1_000_000);
+        }
+    }
+}
+
+// Places 10,000 passengers on 1,000 activities spread over independent destinations, comparing the solver with
+// first-come first-served placement in ranking order.
+class AssignmentSolverBenchmark {
+
+    public static void main(String[] args) {
+        int passengers = 10_000;
+        int destinations = 20;
+        int activitiesPerDestination = 50;
+        int choices = 5;
+        for (int round = 0; round < 3; round++) {
+            Random random = new Random(round);
+            List<List<Activity>> byDestination = new ArrayList<>();
+            for (int d = 0; d < destinations; d++) {
+                List<Activity> activities = new ArrayList<>();
+                for (int a = 0; a < activitiesPerDestination; a++) {
+                    activities.add(new Activity("Activity " + d + "-" + a, "Benchmark", 5.0 + random.nextInt(20), 4 + random.nextInt(12)));
+                }
+                byDestination.add(activities);
+            }
+            Map<Passenger, List<Activity>> preferences = new LinkedHashMap<>();
+            for (int p = 0; p < passengers; p++) {
+                List<Activity> activities = byDestination.get(random.nextInt(destinations));
+                Set<Activity> ranked = new LinkedHashSet<>();
+                while (ranked.size() < choices) {
+                    // Skewed so the first few activities of each destination are the popular ones.
+                    ranked.add(activities.get((int) (activitiesPerDestination * Math.pow(random.nextDouble(), 2))));
+                }
+                preferences.put(new StandardPassenger("Passenger " + p, "S" + p, 10.0 + random.nextInt(30)), new ArrayList<>(ranked));
+            }
+
+            Map<Activity, Integer> seats = new HashMap<>();
+            int greedyPlaced = 0;
+            long greedyRank = 0;
+            for (Map.Entry<Passenger, List<Activity>> entry : preferences.entrySet()) {
+                List<Activity> ranked = entry.getValue();
+                for (int rank = 0; rank < ranked.size(); rank++) {
+                    Activity activity = ranked.get(rank);
+                    int taken = seats.getOrDefault(activity, 0);
+                    if (taken < activity.getCapacity() && entry.getKey().canAfford(entry.getKey().priceFor(activity))) {
+                        seats.put(activity, taken + 1);
+                        greedyPlaced++;
+                        greedyRank += rank;
+                        break;
+                    }
+                }
+            }
+
+            long start = System.nanoTime();
+            GroupAssignment assignment = new AssignmentSolver().solve(preferences);
+            long elapsed = System.nanoTime() - start;
+            long solverRank = 0;
+            for (Passenger passenger : assignment.getAssignments().keySet()) {
+                solverRank += assignment.getRank(passenger);
+            }
+            System.out.printf("greedy placed %d (avg rank %.2f), solver placed %d (avg rank %.2f) in %d ms%n",
+                    greedyPlaced, (double) greedyRank / greedyPlaced, assignment.getPlacedCount(),
+                    (double) solverRank / assignment.getPlacedCount(), elapsed / 1_000_000);
+        }
+    }
+}
+
+// Membership checks for 100,000 passengers: string-keyed hashing, hashing passengers by number, and an IntSet over
+// the package's member id indexes.
+class EntityIdBenchmark {
+
+    public static void main(String[] args) {
+        int count = 100_000;
+        TravelPackage travelPackage = new TravelPackage("Benchmark", count);
+        List<Passenger> passengers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            passengers.add(new StandardPassenger("Passenger " + i, "B" + i, 100.0));
+            travelPackage.addPassenger(passengers.get(i));
+        }
+        // Fresh objects, so lookups cannot short-cut on reference equality.
+        List<Passenger> probes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            probes.add(new StandardPassenger("Passenger " + i, "B" + (i * 2), 100.0));
+        }
+        Set<String> byNumber = new HashSet<>();
+        Set<Passenger> byPassenger = new HashSet<>();
+        IntSet byIndex = new IntSet(count);
+        for (Passenger passenger : passengers) {
+            byNumber.add(passenger.getPassengerNumber());
+            byPassenger.add(passenger);
+            byIndex.add(IdRegistry.index(travelPackage.getMemberId(passenger)));
+        }
+        // Member ids are resolved up front, as signUpAll does once per request.
+        int[] probeIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            probeIds[i] = travelPackage.getMemberId(probes.get(i));
+        }
+        for (int round = 0; round < 5; round++) {
+            int hits = 0;
+            long start = System.nanoTime();
+            for (Passenger probe : probes) {
+                hits += byNumber.contains(probe.getPassengerNumber()) ? 1 : 0;
+            }
+            long strings = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Passenger probe : probes) {
+                hits += byPassenger.contains(probe) ? 1 : 0;
+            }
+            long ids = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int probeId : probeIds) {
+                hits += probeId != IdRegistry.NO_ID && byIndex.contains(IdRegistry.index(probeId)) ? 1 : 0;
+            }
+            long bitmap = System.nanoTime() - start;
+            System.out.printf("lookup by number %.1f ns, by passenger %.1f ns, IntSet %.1f ns (%d hits)%n",
+                    (double) strings / count, (double) ids / count, (double) bitmap / count, hits);
+        }
+    }
+}